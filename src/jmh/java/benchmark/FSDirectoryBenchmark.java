@@ -0,0 +1,72 @@
+package benchmark;
+
+import FS.FSDirectory;
+import FS.INode;
+import FS.INodeDirectory;
+import index.InvertIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 命名空间热点路径：带索引维护的createFile，以及宽目录上的findChild线性查找
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FSDirectoryBenchmark {
+
+    // createFile：每次迭代使用新的命名空间，文件分散到固定数量的目录中，避免单个目录无限变宽
+    @State(Scope.Thread)
+    public static class CreateState {
+        static final int DIRS = 1000;
+        FSDirectory directory;
+        InvertIndex index;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            directory = new FSDirectory();
+            index = new InvertIndex();
+            for (int i = 0; i < DIRS; i++) {
+                directory.createDirectory("/dir" + i, "owner1", 755);
+            }
+            next = 0;
+        }
+    }
+
+    // 宽目录：width个子节点，查找命中位置均匀分布
+    @State(Scope.Benchmark)
+    public static class WideDirectoryState {
+        @Param({"100", "10000"})
+        public int width;
+
+        INodeDirectory dir;
+        String[] names;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            FSDirectory directory = new FSDirectory();
+            directory.createDirectory("/wide", "owner1", 755);
+            names = new String[width];
+            for (int i = 0; i < width; i++) {
+                names[i] = "file" + i + ".txt";
+                directory.createFile("/wide/" + names[i], "owner1", 644, "file" + i, "txt", i, new long[0]);
+            }
+            dir = directory.getDirectory("/wide");
+        }
+    }
+
+    @Benchmark
+    public boolean createFile(CreateState state) {
+        int i = state.next++;
+        return state.directory.createFile("/dir" + (i % CreateState.DIRS) + "/file" + i + ".txt", "owner1", 644, "file" + i, "txt", 100 + i % 10000, new long[]{i}, state.index);
+    }
+
+    @Benchmark
+    public INode findChild(WideDirectoryState state) {
+        String name = state.names[state.next++ % state.width];
+        return state.dir.findChild(name);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import FS.INodeFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 倒排索引热点路径以及与目录树DFS的对比，命名空间规模和分布由NamespaceState参数化
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvertIndexBenchmark {
+
+    @State(Scope.Thread)
+    public static class FileState {
+        INodeFile file;
+
+        @Setup(Level.Trial)
+        public void setUp(NamespaceState namespace) {
+            // 不挂到目录树上的文件，只用于索引的加入与删除；依赖NamespaceState保证在命名空间生成之后创建，
+            // id大于已有文件，倒排链尾部追加
+            file = new INodeFile("bench.txt", "owner1", 644, System.currentTimeMillis(), System.currentTimeMillis(), null, "bench", "txt", 4096, null);
+        }
+    }
+
+    @Benchmark
+    public List<Integer> searchExact(NamespaceState state) {
+        return state.index.search("ext", "txt");
+    }
+
+    @Benchmark
+    public List<Integer> searchByRange(NamespaceState state) {
+        return state.index.searchByRange("size", 600, 8000);
+    }
+
+    @Benchmark
+    public List<Integer> searchNarrowRange(NamespaceState state) {
+        return state.index.searchByRange("size", 3000, 3100);
+    }
+
+    @Benchmark
+    public List<Integer> treeSearchExact(NamespaceState state) {
+        return state.directory.searchInTree("ext", "txt");
+    }
+
+    @Benchmark
+    public List<Integer> treeSearchByRange(NamespaceState state) {
+        return state.directory.searchInTreeRange("size", 600, 8000);
+    }
+
+    // 加入后立即删除，索引规模保持不变
+    @Benchmark
+    public void addAndRemove(NamespaceState state, FileState fileState) throws Exception {
+        state.index.addToIndex(fileState.file);
+        state.index.removeFromIndex(fileState.file);
+    }
+}
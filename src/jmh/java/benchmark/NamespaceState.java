@@ -0,0 +1,88 @@
+package benchmark;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// 基准测试共用的命名空间：按文件数和取值分布生成目录树并建立倒排索引，每个trial生成一次
+// uniform：扩展名、属主均匀分布，大小均匀分布；skewed：扩展名和属主按Zipf分布，大小按对数正态分布
+@State(Scope.Benchmark)
+public class NamespaceState {
+    static final String[] EXTENSIONS = {"txt", "jpg", "png", "doc", "pdf", "log", "dat", "xml"};
+    static final String[] OWNERS = {"owner1", "owner2", "owner3", "owner4", "owner5"};
+    static final int FILES_PER_DIR = 10;
+
+    @Param({"10000", "100000"})
+    public int files;
+
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    public FSDirectory directory;
+    public InvertIndex index;
+    public List<String> dirPaths;
+    public Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new Random(42);
+        directory = new FSDirectory();
+        index = new InvertIndex();
+        dirPaths = new ArrayList<>();
+        dirPaths.add("");
+        int numDirs = files / FILES_PER_DIR;
+        for (int i = 0; i < numDirs; i++) {
+            String parent = dirPaths.get(random.nextInt(dirPaths.size()));
+            String path = parent + "/dir" + i;
+            directory.createDirectory(path, "owner1", 755);
+            dirPaths.add(path);
+        }
+        for (int i = 0; i < files; i++) {
+            String dir = dirPaths.get(1 + random.nextInt(numDirs));
+            String extension = nextExtension();
+            directory.createFile(dir + "/file" + i + "." + extension, nextOwner(), 644, "file" + i, extension, nextSize(), new long[]{i}, index);
+        }
+    }
+
+    String nextExtension() {
+        return EXTENSIONS[nextRank(EXTENSIONS.length)];
+    }
+
+    String nextOwner() {
+        return OWNERS[nextRank(OWNERS.length)];
+    }
+
+    long nextSize() {
+        if ("skewed".equals(distribution)) {
+            return Math.max(1, (long) Math.exp(8 + 2 * random.nextGaussian())); // 中位数约3KB，长尾
+        }
+        return 100 + random.nextInt(10000);
+    }
+
+    // uniform时均匀取下标；skewed时近似Zipf(1)，第k个取值的概率与1/(k+1)成正比
+    private int nextRank(int n) {
+        if (!"skewed".equals(distribution)) {
+            return random.nextInt(n);
+        }
+        double harmonic = 0;
+        for (int k = 1; k <= n; k++) {
+            harmonic += 1.0 / k;
+        }
+        double u = random.nextDouble() * harmonic;
+        for (int k = 1; k <= n; k++) {
+            u -= 1.0 / k;
+            if (u <= 0) {
+                return k - 1;
+            }
+        }
+        return n - 1;
+    }
+}
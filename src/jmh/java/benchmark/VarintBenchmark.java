@@ -0,0 +1,60 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import utils.Varint;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Varint编码与解码吞吐量，bits控制取值范围，即每个值编码后的字节数
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VarintBenchmark {
+    private static final int COUNT = 4096;
+
+    @Param({"7", "14", "28"})
+    public int bits;
+
+    private int[] values;
+    private byte[] encoded;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        values = new int[COUNT];
+        buffer = new byte[COUNT * 5];
+        int pos = 0;
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = random.nextInt(1 << bits);
+            pos = Varint.writeUnsignedVarInt(values[i], buffer, pos);
+        }
+        encoded = new byte[pos];
+        System.arraycopy(buffer, 0, encoded, 0, pos);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int encode() {
+        int pos = 0;
+        for (int value : values) {
+            pos = Varint.writeUnsignedVarInt(value, buffer, pos);
+        }
+        return pos;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int decode() {
+        int[] offset = {0};
+        int sum = 0;
+        while (offset[0] < encoded.length) {
+            sum += Varint.readUnsignedVarInt(encoded, offset);
+        }
+        return sum;
+    }
+}
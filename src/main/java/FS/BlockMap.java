@@ -0,0 +1,150 @@
+package FS;
+
+import java.util.Arrays;
+
+// 块ID到所属文件的反向索引：开放寻址（线性探测）哈希表，键存在long[]中，值为文件inode，不装箱、没有链表节点
+// 槽位的值为null表示空槽，块ID可以取任意long值；删除时把后续同一探测链上的元素前移（backward shift），不留墓碑
+// 负载因子不超过0.75，每个槽位12字节（压缩指针下），每个块平均16~32字节；不加锁，由FSDirectory在命名空间锁内读写
+public class BlockMap {
+    private static final int MIN_CAPACITY = 16;
+    private long[] keys;
+    private INodeFile[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public BlockMap() {
+        this(MIN_CAPACITY);
+    }
+
+    // expectedBlocks为预计的块数，提前分配避免扩容时的重新散列
+    public BlockMap(int expectedBlocks) {
+        allocate(capacityFor(expectedBlocks));
+    }
+
+    public INodeFile get(long blockId) {
+        int i = slot(blockId);
+        INodeFile value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == blockId) {
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    // 插入或覆盖，返回原来的值
+    public INodeFile put(long blockId, INodeFile file) {
+        if (file == null) {
+            throw new IllegalArgumentException("Block owner must not be null: " + blockId);
+        }
+        int i = slot(blockId);
+        INodeFile value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == blockId) {
+                values[i] = file;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = blockId;
+        values[i] = file;
+        if (++size > resizeThreshold) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    // 只在块仍属于file时删除，返回是否删除
+    public boolean remove(long blockId, INodeFile file) {
+        int i = slot(blockId);
+        INodeFile value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == blockId) {
+                if (value != file) {
+                    return false;
+                }
+                shiftBack(i);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    // 两个数组的字节数（压缩指针下引用为4字节）
+    public long sizeInBytes() {
+        return 2L * 16 + keys.length * 8L + values.length * 4L;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // 空出槽位i后，把探测链上后续的元素移到离其理想槽位更近的空位，保证查找遇到空槽即可停止
+    private void shiftBack(int i) {
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+            int home = slot(keys[j]);
+            // home不在(hole, j]内时，元素j可以移到hole
+            if (hole <= j ? (home <= hole || home > j) : (home <= hole && home > j)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private int slot(long blockId) {
+        long h = blockId * 0x9E3779B97F4A7C15L; // 斐波那契散列，连续的块ID也能均匀分布
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int newCapacity) {
+        long[] oldKeys = keys;
+        INodeFile[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new INodeFile[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * 3L / 4);
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = Math.max(MIN_CAPACITY, (long) Math.ceil(expected / 0.75));
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("Too many blocks: " + expected);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
@@ -1,24 +1,113 @@
 package FS;
 
+import index.IndexBuild;
+import index.IndexField;
 import index.InvertIndex;
+import index.Query;
+import index.Subscription;
+import utils.InstrumentedReadWriteLock;
+import utils.LatencyHistogram;
+import utils.LockMetrics;
+import utils.MetricsRegistry;
 import utils.TimeRecorder;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
 
 public class FSDirectory {
     public INodeDirectory rootDir;
-    private final ReadWriteLock lock; // 读写锁
+    private static final int BACKFILL_BATCH_SIZE = 1024; // 回填时每次持有索引写锁处理的文件数
+    private static final int CATCH_UP_THRESHOLD = 64; // 在线构建的旁路日志积压不超过此数时，进入写锁完成最后的重放和切换
+    private static final int MAX_CATCH_UP_ROUNDS = 16; // 写入持续快于重放时，追赶若干轮后直接进入写锁
+    private final ReadWriteLock lock; // 读写锁，记录等待与持有时间
+    private final MetricsRegistry metrics; // 各公开操作的延迟直方图与命名空间锁指标，可通过JMX查看
+    private final LatencyHistogram createFileLatency;
+    private final LatencyHistogram createDirectoryLatency;
+    private final LatencyHistogram deleteLatency;
+    private final LatencyHistogram updateLatency;
+    private final LatencyHistogram listLatency;
+    private final LatencyHistogram showInfoLatency;
+    private final LatencyHistogram treeSearchLatency;
+    private final LatencyHistogram treeRangeSearchLatency;
+    private final LatencyHistogram searchLatency;
+    private final LatencyHistogram rangeSearchLatency;
+    private final LatencyHistogram registerFieldLatency;
+    private final LatencyHistogram buildIndexLatency;
+    private final LatencyHistogram projectLatency;
+    private final LatencyHistogram onlineBuildLatency;
+    private final LatencyHistogram buildSwitchLatency; // 在线构建持有写锁的时间
+    private volatile LongSupplier clock; // inode创建/修改时间的来源，负载生成和轨迹重放时替换为虚拟时钟
+    private volatile NamespaceListener listener; // 操作轨迹录制
+    private final AtomicLong listenerFailures = new AtomicLong(); // 监听器抛出的异常数，异常不影响操作本身
+    private volatile MutationListener mutationListener; // 变更流，在写锁内按生效顺序回调
+    private final BlockMap blockMap; // 块ID到所属文件，与目录树一起在命名空间锁内维护
+    private final INodeMap inodeMap; // 文件id到文件节点，投影时由查询结果的id取出节点
 
     public FSDirectory() {
         rootDir = new INodeDirectory("/", "root", 755, System.currentTimeMillis(), System.currentTimeMillis(), null);
-        lock = new ReentrantReadWriteLock(); //读写锁
+        metrics = new MetricsRegistry();
+        lock = new InstrumentedReadWriteLock(new LockMetrics(metrics, "lock.namespace")); //读写锁
+        createFileLatency = metrics.histogram("createFile");
+        createDirectoryLatency = metrics.histogram("createDirectory");
+        deleteLatency = metrics.histogram("deleteNode");
+        updateLatency = metrics.histogram("updateFile");
+        listLatency = metrics.histogram("listFiles");
+        showInfoLatency = metrics.histogram("showFileInfo");
+        treeSearchLatency = metrics.histogram("searchInTree");
+        treeRangeSearchLatency = metrics.histogram("searchInTreeRange");
+        searchLatency = metrics.histogram("search");
+        rangeSearchLatency = metrics.histogram("searchRange");
+        registerFieldLatency = metrics.histogram("registerIndexField");
+        buildIndexLatency = metrics.histogram("buildInvertedIndex");
+        projectLatency = metrics.histogram("project");
+        onlineBuildLatency = metrics.histogram("buildIndexOnline");
+        buildSwitchLatency = metrics.histogram("buildIndexOnline.switch");
+        blockMap = new BlockMap();
+        inodeMap = new INodeMap();
+        metrics.gauge("blocks", this::getBlockCount);
+        metrics.gauge("listener.failed", listenerFailures::get);
+        clock = System::currentTimeMillis;
     }
 
-    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, List<String> blocks, InvertIndex invertedIndex) {
+    public void setClock(LongSupplier clock) {
+        this.clock = clock == null ? System::currentTimeMillis : clock;
+    }
+
+    public void setListener(NamespaceListener listener) {
+        this.listener = listener;
+    }
+
+    public void setMutationListener(MutationListener mutationListener) {
+        this.mutationListener = mutationListener;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, InvertIndex invertedIndex) {
+        return createFile(0, clock.getAsLong(), path, owner, permission, fileName, fileExtension, fileSize, blocks, invertedIndex);
+    }
+
+    // 副本应用主节点的变更：使用主节点分配的inode编号和时间，查询结果与主节点一致
+    public boolean replicateCreateFile(int id, long time, String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, InvertIndex invertedIndex) {
+        return createFile(id, time, path, owner, permission, fileName, fileExtension, fileSize, blocks, invertedIndex);
+    }
+
+    // id为0时使用新分配的编号
+    private boolean createFile(int id, long now, String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
         lock.writeLock().lock();
         try {
             String[] parts = path.split("/"); // 分割路径
@@ -30,10 +119,18 @@ public class FSDirectory {
                 }
             }
             String fileFullName = parts[parts.length - 1];    // 文件名
-            if (parent != null && parent.findChild(fileFullName) == null) {
-                INodeFile file = new INodeFile(fileFullName, owner, permission, System.currentTimeMillis(), System.currentTimeMillis(), parent, fileName, fileExtension, fileSize, blocks);
+            if (parent != null && parent.findChild(fileFullName) == null && blocksAvailable(blocks, null)) {
+                INodeFile file = new INodeFile(fileFullName, owner, permission, now, now, parent, fileName, fileExtension, fileSize, blocks);
+                if (id != 0) {
+                    file.id = id;
+                }
                 if (parent.addChild(file)) {
+                    addFile(file);
                     invertedIndex.addToIndex(file); // 添加到倒排索引
+                    MutationListener mutations = mutationListener;
+                    if (mutations != null) {
+                        mutations.onCreateFile(file.id, path, owner, permission, fileName, fileExtension, fileSize, blocks, now);
+                    }
                     return true;
                 }
             }
@@ -41,12 +138,23 @@ public class FSDirectory {
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
+            NamespaceListener current = listener; // 在写锁内回调，轨迹中写操作的顺序与生效顺序一致
+            if (current != null) {
+                try {
+                    current.onCreateFile(path, owner, permission, fileName, fileExtension, fileSize, blocks, now);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
             lock.writeLock().unlock();
+            createFileLatency.recordSince(start);
         }
     }
 
     // 插入时记录时间
-    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, List<String> blocks, InvertIndex invertedIndex, TimeRecorder timeRecorder) {
+    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, InvertIndex invertedIndex, TimeRecorder timeRecorder) {
+        long start = System.nanoTime();
+        long now = clock.getAsLong();
         lock.writeLock().lock();
         try {
             String[] parts = path.split("/");
@@ -59,8 +167,8 @@ public class FSDirectory {
                 }
             }
             String fileFullName = parts[parts.length - 1];
-            if (parent != null && parent.findChild(fileFullName) == null) {
-                INodeFile file = new INodeFile(fileFullName, owner, permission, System.currentTimeMillis(), System.currentTimeMillis(), parent, fileName, fileExtension, fileSize, blocks);
+            if (parent != null && parent.findChild(fileFullName) == null && blocksAvailable(blocks, null)) {
+                INodeFile file = new INodeFile(fileFullName, owner, permission, now, now, parent, fileName, fileExtension, fileSize, blocks);
 
                 // 记录插入目录树的时间
                 long startTime = System.nanoTime();
@@ -68,11 +176,16 @@ public class FSDirectory {
                 long endTime = System.nanoTime();
                 timeRecorder.directoryTreeTime = endTime - startTime;
                 if (success) {
+                    addFile(file);
                     // 记录插入倒排索引的时间
                     startTime = System.nanoTime();
                     invertedIndex.addToIndex(file);
                     endTime = System.nanoTime();
                     timeRecorder.invertedIndexTime = endTime - startTime;
+                    MutationListener mutations = mutationListener;
+                    if (mutations != null) {
+                        mutations.onCreateFile(file.id, path, owner, permission, fileName, fileExtension, fileSize, blocks, now);
+                    }
                 }
                 return success;
             }
@@ -80,12 +193,23 @@ public class FSDirectory {
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onCreateFile(path, owner, permission, fileName, fileExtension, fileSize, blocks, now);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
             lock.writeLock().unlock();
+            createFileLatency.recordSince(start);
         }
     }
 
     // 插入时不更新索引
-    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, List<String> blocks) {
+    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks) {
+        long start = System.nanoTime();
+        long now = clock.getAsLong();
         lock.writeLock().lock();
         try {
             String[] parts = path.split("/");
@@ -98,19 +222,42 @@ public class FSDirectory {
                 }
             }
             String fileFullName = parts[parts.length - 1];
-            if (parent != null && parent.findChild(fileFullName) == null) {
-                INodeFile file = new INodeFile(fileFullName, owner, permission, System.currentTimeMillis(), System.currentTimeMillis(), parent, fileName, fileExtension, fileSize, blocks);
+            if (parent != null && parent.findChild(fileFullName) == null && blocksAvailable(blocks, null)) {
+                INodeFile file = new INodeFile(fileFullName, owner, permission, now, now, parent, fileName, fileExtension, fileSize, blocks);
                 if (parent.addChild(file)) {
+                    addFile(file);
+                    MutationListener mutations = mutationListener;
+                    if (mutations != null) {
+                        mutations.onCreateFile(file.id, path, owner, permission, fileName, fileExtension, fileSize, blocks, now);
+                    }
                     return true;
                 }
             }
             return false;
         } finally {
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onCreateFile(path, owner, permission, fileName, fileExtension, fileSize, blocks, now);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
             lock.writeLock().unlock();
+            createFileLatency.recordSince(start);
         }
     }
 
     public boolean createDirectory(String path, String owner, int permission) {
+        return createDirectory(0, clock.getAsLong(), path, owner, permission);
+    }
+
+    public boolean replicateCreateDirectory(int id, long time, String path, String owner, int permission) {
+        return createDirectory(id, time, path, owner, permission);
+    }
+
+    private boolean createDirectory(int id, long now, String path, String owner, int permission) {
+        long start = System.nanoTime();
         lock.writeLock().lock();
         try {
             String[] parts = path.split("/"); // 分割路径
@@ -124,17 +271,36 @@ public class FSDirectory {
             }
             String dirName = parts[parts.length - 1];
             if (parent != null && parent.findChild(dirName) == null) {
-                INodeDirectory dir = new INodeDirectory(dirName, owner, permission, System.currentTimeMillis(), System.currentTimeMillis(), parent);
-                return parent.addChild(dir);
+                INodeDirectory dir = new INodeDirectory(dirName, owner, permission, now, now, parent);
+                if (id != 0) {
+                    dir.id = id;
+                }
+                if (parent.addChild(dir)) {
+                    MutationListener mutations = mutationListener;
+                    if (mutations != null) {
+                        mutations.onCreateDirectory(dir.id, path, owner, permission, now);
+                    }
+                    return true;
+                }
             }
             return false;
         } finally {
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onCreateDirectory(path, owner, permission, now);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
             lock.writeLock().unlock();
+            createDirectoryLatency.recordSince(start);
         }
     }
 
     // 删除结点
     public boolean deleteNode(String path, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
         lock.writeLock().lock();
         try {
             String[] parts = path.split("/");
@@ -152,16 +318,41 @@ public class FSDirectory {
                 if (node instanceof INodeFile) {
                     invertedIndex.removeFromIndex((INodeFile) node);
                 }
-                return parent.removeChild(nodeName);
+                if (parent.removeChild(nodeName)) {
+                    removeFiles(node);
+                    MutationListener mutations = mutationListener;
+                    if (mutations != null) {
+                        mutations.onDelete(path);
+                    }
+                    return true;
+                }
             }
             return false;
         } finally {
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onDelete(path);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
             lock.writeLock().unlock();
+            deleteLatency.recordSince(start);
         }
     }
 
     // 更新文件
-    public boolean updateFile(String path, String newFileName, String newFileExtension, long newFileSize, List<String> newBlocks, InvertIndex invertedIndex) {
+    public boolean updateFile(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, InvertIndex invertedIndex) {
+        return updateFile(clock.getAsLong(), path, newFileName, newFileExtension, newFileSize, newBlocks, invertedIndex);
+    }
+
+    public boolean replicateUpdateFile(long time, String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, InvertIndex invertedIndex) {
+        return updateFile(time, path, newFileName, newFileExtension, newFileSize, newBlocks, invertedIndex);
+    }
+
+    private boolean updateFile(long now, String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
         lock.writeLock().lock();
         try {
             String[] parts = path.split("/");
@@ -175,27 +366,42 @@ public class FSDirectory {
             }
             String fileFullName = parts[parts.length - 1];
             INode node = parent.findChild(fileFullName);
-            if (node instanceof INodeFile) {
+            if (node instanceof INodeFile && blocksAvailable(newBlocks, (INodeFile) node)) {
                 INodeFile file = (INodeFile) node;
+                removeBlocks(file);
                 //更新目录树和索引
-                invertedIndex.removeFromIndex(file);
-                file.fileName = newFileName;
-                file.fileExtension = newFileExtension;
-                file.fileSize = newFileSize;
-                file.blocks = newBlocks;
-                invertedIndex.addToIndex(file);
+                invertedIndex.updateIndex(file, () -> {
+                    file.fileName = newFileName;
+                    file.fileExtension = newFileExtension;
+                    file.fileSize = newFileSize;
+                    file.blocks = newBlocks;
+                    file.modificationTime = now;
+                });
+                addBlocks(file);
+                MutationListener mutations = mutationListener;
+                if (mutations != null) {
+                    mutations.onUpdate(path, newFileName, newFileExtension, newFileSize, newBlocks, now);
+                }
                 return true;
             }
             return false;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         } finally {
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onUpdate(path, newFileName, newFileExtension, newFileSize, newBlocks, now);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
             lock.writeLock().unlock();
+            updateLatency.recordSince(start);
         }
     }
 
     // 列出目录下的文件
     public void listFiles(String path) {
+        long start = System.nanoTime();
         lock.readLock().lock();
         try {
             INodeDirectory dir = getDirectory(path);
@@ -210,6 +416,7 @@ public class FSDirectory {
             }
         } finally {
             lock.readLock().unlock();
+            listLatency.recordSince(start);
         }
     }
 
@@ -238,6 +445,7 @@ public class FSDirectory {
 
     // 显示文件信息
     public void showFileInfo(String path) {
+        long start = System.nanoTime();
         lock.readLock().lock();
         try {
             INode node = getNode(path);
@@ -256,17 +464,182 @@ public class FSDirectory {
                     System.out.println("File Name: " + file.fileName);
                     System.out.println("File Extension: " + file.fileExtension);
                     System.out.println("File Size: " + file.fileSize + " bytes");
-                    System.out.println("Blocks: " + file.blocks);
+                    System.out.println("Blocks: " + Arrays.toString(file.blocks));
                 }
                 if (node.parent != null) {
                     System.out.println("Parent Directory: " + node.parent.name);
                 }
             }
+        } finally {
+            lock.readLock().unlock();
+            showInfoLatency.recordSince(start);
+        }
+    }
+
+    // 块所属的文件，不存在返回null；用于块汇报和修复时由块定位文件
+    public INodeFile getBlockOwner(long blockId) {
+        lock.readLock().lock();
+        try {
+            return blockMap.get(blockId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getBlockCount() {
+        lock.readLock().lock();
+        try {
+            return blockMap.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 块都未被占用，或已属于self（更新时保留原有的块）
+    private boolean blocksAvailable(long[] blocks, INodeFile self) {
+        if (blocks != null) {
+            for (long block : blocks) {
+                INodeFile owner = blockMap.get(block);
+                if (owner != null && owner != self) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void addBlocks(INodeFile file) {
+        if (file.blocks != null) {
+            for (long block : file.blocks) {
+                blockMap.put(block, file);
+            }
+        }
+    }
+
+    private void removeBlocks(INodeFile file) {
+        if (file.blocks != null) {
+            for (long block : file.blocks) {
+                blockMap.remove(block, file);
+            }
+        }
+    }
+
+    private void addFile(INodeFile file) {
+        inodeMap.put(file);
+        addBlocks(file);
+    }
+
+    // 删除文件的id映射和块；删除目录时遍历子树中的所有文件
+    private void removeFiles(INode node) {
+        if (node instanceof INodeFile) {
+            inodeMap.remove((INodeFile) node);
+            removeBlocks((INodeFile) node);
+        } else if (node instanceof INodeDirectory) {
+            for (INode child : ((INodeDirectory) node).getChildren()) {
+                removeFiles(child);
+            }
+        }
+    }
+
+    // 按id取文件节点，不存在或已删除返回null
+    public INodeFile getFile(int id) {
+        lock.readLock().lock();
+        try {
+            return inodeMap.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 投影：在一次读锁内取出ids中每个文件的路径（withPaths为true时）和columns各字段，按列返回
+    // 已删除的id被跳过；路径由父指针向上拼接，同一次调用内目录前缀只拼接一次
+    public ProjectionResult project(List<Integer> ids, boolean withPaths, IndexField... columns) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            INodeFile[] files = new INodeFile[ids.size()];
+            int count = 0;
+            for (int i = 0; i < files.length; i++) {
+                INodeFile file = inodeMap.get(ids.get(i));
+                if (file != null) {
+                    files[count++] = file;
+                }
+            }
+            int[] resultIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                resultIds[i] = files[i].id;
+            }
+            String[] paths = null;
+            if (withPaths) {
+                paths = new String[count];
+                Map<INodeDirectory, String> prefixes = new IdentityHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    paths[i] = directoryPrefix(files[i].parent, prefixes).concat(files[i].name);
+                }
+            }
+            long[][] longColumns = new long[columns.length][];
+            String[][] stringColumns = new String[columns.length][];
+            for (int c = 0; c < columns.length; c++) { // 逐列提取，每列只分派一次字段类型
+                IndexField field = columns[c];
+                if (field.isRange()) {
+                    long[] values = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        values[i] = field.rangeValueOf(files[i]);
+                    }
+                    longColumns[c] = values;
+                } else {
+                    String[] values = new String[count];
+                    for (int i = 0; i < count; i++) {
+                        values[i] = field.valueOf(files[i]);
+                    }
+                    stringColumns[c] = values;
+                }
+            }
+            return new ProjectionResult(resultIds, paths, columns.clone(), longColumns, stringColumns);
+        } finally {
+            lock.readLock().unlock();
+            projectLatency.recordSince(start);
+        }
+    }
+
+    // 查询与投影在同一次读锁内完成，同步维护索引时结果与投影的值来自同一时刻
+    public ProjectionResult searchProjected(Query query, InvertIndex invertedIndex, boolean withPaths, IndexField... columns) {
+        lock.readLock().lock();
+        try {
+            return project(invertedIndex.search(query), withPaths, columns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ProjectionResult searchProjected(String metadata, String value, InvertIndex invertedIndex, boolean withPaths, IndexField... columns) {
+        lock.readLock().lock();
+        try {
+            return project(search(metadata, value, invertedIndex), withPaths, columns);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public ProjectionResult searchRangeProjected(String metadata, long minValue, long maxValue, InvertIndex invertedIndex, boolean withPaths, IndexField... columns) {
+        lock.readLock().lock();
+        try {
+            return project(searchRange(metadata, minValue, maxValue, invertedIndex), withPaths, columns);
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    // 目录的绝对路径加上结尾的"/"，根目录为"/"；已拼接过的前缀直接复用
+    private static String directoryPrefix(INodeDirectory dir, Map<INodeDirectory, String> prefixes) {
+        String prefix = prefixes.get(dir);
+        if (prefix == null) {
+            prefix = dir.parent == null ? "/" : directoryPrefix(dir.parent, prefixes) + dir.name + "/";
+            prefixes.put(dir, prefix);
+        }
+        return prefix;
+    }
+
     // 获取节点
     public INode getNode(String path) {
         String[] parts = path.split("/");
@@ -282,35 +655,44 @@ public class FSDirectory {
         return current;
     }
 
-    // 搜索文件DFS
+    // 搜索文件DFS，字段按名字取内置字段，未知字段抛出异常
     public List<Integer> searchInTree(String metadata, String value) {
+        return searchInTree(resolveField(metadata, null), value);
+    }
+
+    // DFS使用的字段：先查索引中的定义（回填中、在线构建中的自定义字段），再查内置字段
+    private static IndexField resolveField(String metadata, InvertIndex invertedIndex) {
+        IndexField field = invertedIndex == null ? null : invertedIndex.findField(metadata);
+        if (field == null) {
+            field = IndexField.builtin(metadata);
+        }
+        if (field == null) {
+            throw new IllegalArgumentException("Unknown field: " + metadata);
+        }
+        return field;
+    }
+
+    public List<Integer> searchInTree(IndexField field, String value) {
+        long start = System.nanoTime();
         lock.readLock().lock();
         try {
             List<Integer> results = new ArrayList<>();
-            searchInTree(rootDir, metadata, value, results);
+            searchInTree(rootDir, field, value, results);
             return results;
         } finally {
             lock.readLock().unlock();
+            treeSearchLatency.recordSince(start);
         }
     }
 
-    private void searchInTree(INodeDirectory dir, String metadata, String value, List<Integer> results) {
+    private void searchInTree(INodeDirectory dir, IndexField field, String value, List<Integer> results) {
         for (INode child : dir.getChildren()) {
             if (child instanceof INodeDirectory) {
-                searchInTree((INodeDirectory) child, metadata, value, results);
+                searchInTree((INodeDirectory) child, field, value, results);
             } else if (child instanceof INodeFile) {
                 INodeFile file = (INodeFile) child;
-                switch (metadata) {
-                    case "ext":
-                        if (file.fileExtension.equals(value)) {
-                            results.add(file.id);
-                        }
-                        break;
-                    case "owner":
-                        if (file.owner.equals(value)) {
-                            results.add(file.id);
-                        }
-                        break;
+                if (value.equals(field.valueOf(file))) {
+                    results.add(file.id);
                 }
             }
         }
@@ -318,58 +700,236 @@ public class FSDirectory {
 
     // 范围搜索文件
     public List<Integer> searchInTreeRange(String metadata, long minValue, long maxValue) {
+        return searchInTreeRange(resolveField(metadata, null), minValue, maxValue);
+    }
+
+    public List<Integer> searchInTreeRange(IndexField field, long minValue, long maxValue) {
+        if (!field.isRange()) {
+            throw new IllegalArgumentException("Not a range field: " + field.getName());
+        }
+        long start = System.nanoTime();
         lock.readLock().lock();
         try {
             List<Integer> results = new ArrayList<>();
-            searchInTreeRange(rootDir, metadata, minValue, maxValue, results);
+            searchInTreeRange(rootDir, field, minValue, maxValue, results);
             return results;
         } finally {
             lock.readLock().unlock();
+            treeRangeSearchLatency.recordSince(start);
         }
     }
 
-    private void searchInTreeRange(INodeDirectory dir, String metadata, long minValue, long maxValue, List<Integer> results) {
+    private void searchInTreeRange(INodeDirectory dir, IndexField field, long minValue, long maxValue, List<Integer> results) {
         for (INode child : dir.getChildren()) {
             if (child instanceof INodeDirectory) {
-                searchInTreeRange((INodeDirectory) child, metadata, minValue, maxValue, results);
+                searchInTreeRange((INodeDirectory) child, field, minValue, maxValue, results);
             } else if (child instanceof INodeFile) {
                 INodeFile file = (INodeFile) child;
-                switch (metadata) {
-                    case "size":
-                        if (file.fileSize >= minValue && file.fileSize <= maxValue) {
-                            results.add(file.id);
-                        }
-                        break;
-                    case "creation":
-                        if (file.creationTime >= minValue && file.creationTime <= maxValue) {
-                            results.add(file.id);
-                        }
-                        break;
-                    case "mod":
-                        if (file.modificationTime >= minValue && file.modificationTime <= maxValue) {
-                            results.add(file.id);
-                        }
-                        break;
+                long fieldValue = field.rangeValueOf(file);
+                if (fieldValue >= minValue && fieldValue <= maxValue) {
+                    results.add(file.id);
                 }
             }
         }
     }
 
-    // 建立倒排索引
-    public void buildInvertedIndex(INodeDirectory dir, InvertIndex invertedIndex) {
+    // 注册持续查询：在读锁内登记，同时把当前满足条件的文件id写入currentMatches（可为null），
+    // 写操作被排斥在外，之后的变更都以事件送达，与当前结果之间没有遗漏或重复
+    // 整个命名空间上的查询走索引（先等异步维护追上），限定路径时遍历该子树
+    public Subscription subscribe(Query query, String path, int capacity, InvertIndex invertedIndex, List<Integer> currentMatches) {
         lock.readLock().lock();
         try {
-            for (INode child : dir.getChildren()) { //DFS
-                if (child instanceof INodeDirectory) {
-                    buildInvertedIndex((INodeDirectory) child, invertedIndex);
-                } else if (child instanceof INodeFile) {
-                    invertedIndex.addToIndex((INodeFile) child);
+            Subscription subscription = invertedIndex.subscribe(query, path, capacity);
+            if (currentMatches != null) {
+                INodeDirectory dir = path == null ? rootDir : getDirectory(path);
+                if (dir == rootDir && query != null) {
+                    invertedIndex.awaitSequence(invertedIndex.lastSubmittedSequence());
+                    currentMatches.addAll(invertedIndex.search(query));
+                } else if (dir != null) {
+                    collectMatches(dir, subscription, currentMatches);
+                }
+            }
+            return subscription;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collectMatches(INodeDirectory dir, Subscription subscription, List<Integer> results) {
+        for (INode child : dir.getChildren()) {
+            if (child instanceof INodeDirectory) {
+                collectMatches((INodeDirectory) child, subscription, results);
+            } else if (child instanceof INodeFile && subscription.matches((INodeFile) child)) {
+                results.add(child.id);
+            }
+        }
+    }
+
+    // 查询：字段已注册到索引且回填完成则走索引，否则按索引中的字段定义DFS；两种情况下结果都是只读列表
+    public List<Integer> search(String metadata, String value, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
+        try {
+            if (invertedIndex.isIndexed(metadata)) {
+                return invertedIndex.search(metadata, value);
+            }
+            return Collections.unmodifiableList(searchInTree(resolveField(metadata, invertedIndex), value));
+        } finally {
+            searchLatency.recordSince(start);
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onSearch(metadata, value);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
                 }
             }
+        }
+    }
+
+    public List<Integer> searchRange(String metadata, long minValue, long maxValue, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
+        try {
+            if (invertedIndex.isIndexed(metadata)) {
+                return invertedIndex.searchByRange(metadata, minValue, maxValue);
+            }
+            return Collections.unmodifiableList(searchInTreeRange(resolveField(metadata, invertedIndex), minValue, maxValue));
+        } finally {
+            rangeSearchLatency.recordSince(start);
+            NamespaceListener current = listener;
+            if (current != null) {
+                try {
+                    current.onSearchRange(metadata, minValue, maxValue);
+                } catch (RuntimeException e) {
+                    listenerFailures.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // 注册索引字段并为已有文件回填索引，回填期间持有读锁，写操作等待；回填完成后查询才走索引
+    public boolean registerIndexField(IndexField field, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            if (!invertedIndex.registerField(field, false)) {
+                return false;
+            }
+            List<INodeFile> files = new ArrayList<>();
+            collectFiles(rootDir, files);
+            files.sort(Comparator.comparingInt(file -> file.id)); // 按id升序回填
+            for (int i = 0; i < files.size(); i += BACKFILL_BATCH_SIZE) {
+                invertedIndex.addToIndex(field, files.subList(i, Math.min(files.size(), i + BACKFILL_BATCH_SIZE)));
+            }
+            invertedIndex.setFieldReady(field.getName());
+            return true;
+        } finally {
+            lock.readLock().unlock();
+            registerFieldLatency.recordSince(start);
+        }
+    }
+
+    private void collectFiles(INodeDirectory dir, List<INodeFile> files) {
+        for (INode child : dir.getChildren()) {
+            if (child instanceof INodeDirectory) {
+                collectFiles((INodeDirectory) child, files);
+            } else if (child instanceof INodeFile) {
+                files.add((INodeFile) child);
+            }
+        }
+    }
+
+    // 建立倒排索引
+    public void buildInvertedIndex(INodeDirectory dir, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            addSubtreeToIndex(dir, invertedIndex);
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
             lock.readLock().unlock();
+            buildIndexLatency.recordSince(start);
+        }
+    }
+
+    // 在线注册索引字段：扫描回填期间不阻塞写操作，完成后字段才对查询可见；已存在同名字段返回null
+    public IndexBuild registerIndexFieldOnline(IndexField field, InvertIndex invertedIndex) {
+        for (IndexField existing : invertedIndex.getFields()) {
+            if (existing.getName().equals(field.getName())) {
+                return null;
+            }
+        }
+        return buildIndexOnline(Collections.singletonList(field), invertedIndex);
+    }
+
+    // 在线重建所有已注册字段，切换前查询使用原有索引；已删除目录下残留在索引中的文件id在重建后消失
+    public IndexBuild rebuildIndexOnline(InvertIndex invertedIndex) {
+        return buildIndexOnline(invertedIndex.getFields(), invertedIndex);
+    }
+
+    // 逐个目录扫描，每个目录持有一次读锁，写操作在目录之间进行并记入旁路日志；
+    // 扫描完成后不持锁重放日志，积压足够少时在写锁内重放剩余部分并切换
+    private IndexBuild buildIndexOnline(List<IndexField> fields, InvertIndex invertedIndex) {
+        long start = System.nanoTime();
+        IndexBuild build = invertedIndex.beginBuild(fields);
+        try {
+            Deque<INodeDirectory> pending = new ArrayDeque<>();
+            pending.push(rootDir);
+            while (!pending.isEmpty()) {
+                INodeDirectory dir = pending.pop();
+                lock.readLock().lock();
+                try {
+                    if (!isAttached(dir)) { // 入栈后已被删除
+                        continue;
+                    }
+                    for (INode child : dir.getChildren()) {
+                        if (child instanceof INodeDirectory) {
+                            pending.push((INodeDirectory) child);
+                        } else if (child instanceof INodeFile) {
+                            build.addScanned((INodeFile) child);
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            build.loadScanned();
+            for (int round = 0; round < MAX_CATCH_UP_ROUNDS && build.pendingCount() > CATCH_UP_THRESHOLD; round++) {
+                build.drain(); // 重放期间新追加的日志留给下一轮
+            }
+            long switchStart = System.nanoTime();
+            lock.writeLock().lock();
+            try {
+                build.drain();
+                invertedIndex.publishBuild(build);
+            } finally {
+                lock.writeLock().unlock();
+                buildSwitchLatency.recordSince(switchStart);
+            }
+            return build;
+        } finally {
+            invertedIndex.endBuild(build);
+            onlineBuildLatency.recordSince(start);
+        }
+    }
+
+    // 目录仍在命名空间中：沿父指针向上，每一级都仍是其父目录的子节点
+    private boolean isAttached(INodeDirectory dir) {
+        for (INodeDirectory node = dir; node.parent != null; node = node.parent) {
+            if (node.parent.findChild(node.name) != node) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addSubtreeToIndex(INodeDirectory dir, InvertIndex invertedIndex) throws IOException {
+        for (INode child : dir.getChildren()) { //DFS
+            if (child instanceof INodeDirectory) {
+                addSubtreeToIndex((INodeDirectory) child, invertedIndex);
+            } else if (child instanceof INodeFile) {
+                invertedIndex.addToIndex((INodeFile) child);
+            }
         }
     }
 }
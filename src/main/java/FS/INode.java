@@ -11,4 +11,17 @@ public class INode {
         this.id = idGenerator.incrementAndGet(); //获取一个自增的唯一标识
         this.parent = parent;
     }
+
+    public INodeDirectory getParent() {
+        return parent;
+    }
+
+    // 节点深度，根目录为0
+    public int getDepth() {
+        int depth = 0;
+        for (INodeDirectory dir = parent; dir != null; dir = dir.parent) {
+            depth++;
+        }
+        return depth;
+    }
 }
@@ -1,18 +1,29 @@
 package FS;
 
-import java.util.List;
-
 public class INodeFile extends INodeWithAdditionalFields {
     String fileName;
     public String fileExtension;
     public long fileSize;
-    List<String> blocks; //文件块列表
+    long[] blocks; //文件块ID，null表示没有块
 
-    public INodeFile(String name, String owner, int permission, long creationTime, long modificationTime, INodeDirectory parent, String fileName, String fileExtension, long fileSize, List<String> blocks) {
+    public INodeFile(String name, String owner, int permission, long creationTime, long modificationTime, INodeDirectory parent, String fileName, String fileExtension, long fileSize, long[] blocks) {
         super(name, owner, permission, creationTime, modificationTime, parent);
         this.fileName = fileName;
         this.fileExtension = fileExtension;
         this.fileSize = fileSize;
         this.blocks = blocks;
     }
-}
\ No newline at end of file
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getBlockCount() {
+        return blocks == null ? 0 : blocks.length;
+    }
+
+    // 返回内部数组，调用方不得修改
+    public long[] getBlocks() {
+        return blocks;
+    }
+}
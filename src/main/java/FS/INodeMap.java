@@ -0,0 +1,110 @@
+package FS;
+
+// 文件id到文件节点：开放寻址（线性探测）哈希表，键存在int[]中，值为null表示空槽，删除用backward shift，不留墓碑
+// id由全局计数器顺序分配，直接取低位作为槽位：连续的id落在连续的槽位，按升序查询结果取节点时顺序访问数组
+// 不加锁，由FSDirectory在命名空间锁内读写
+class INodeMap {
+    private static final int MIN_CAPACITY = 16;
+    private int[] keys;
+    private INodeFile[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    INodeMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    INodeFile get(int id) {
+        int i = id & mask;
+        INodeFile value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == id) {
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    void put(INodeFile file) {
+        int i = file.id & mask;
+        while (values[i] != null) {
+            if (keys[i] == file.id) {
+                values[i] = file;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = file.id;
+        values[i] = file;
+        if (++size > resizeThreshold) {
+            resize(values.length * 2);
+        }
+    }
+
+    // 只在id仍对应file时删除
+    void remove(INodeFile file) {
+        int i = file.id & mask;
+        INodeFile value;
+        while ((value = values[i]) != null) {
+            if (keys[i] == file.id) {
+                if (value == file) {
+                    shiftBack(i);
+                    size--;
+                }
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 与BlockMap相同：把探测链上后续的元素移入空位，保证查找遇到空槽即可停止
+    private void shiftBack(int i) {
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) {
+                break;
+            }
+            int home = keys[j] & mask;
+            if (hole <= j ? (home <= hole || home > j) : (home <= hole && home > j)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+    }
+
+    private void resize(int newCapacity) {
+        if (newCapacity > 1 << 30) {
+            throw new IllegalStateException("Too many files: " + size);
+        }
+        int[] oldKeys = keys;
+        INodeFile[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = oldKeys[i] & mask;
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new INodeFile[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * 3L / 4);
+    }
+}
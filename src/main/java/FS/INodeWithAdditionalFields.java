@@ -15,4 +15,12 @@ public class INodeWithAdditionalFields extends INode {
         this.creationTime = creationTime;
         this.modificationTime = modificationTime;
     }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPermission() {
+        return permission;
+    }
 }
\ No newline at end of file
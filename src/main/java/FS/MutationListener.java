@@ -0,0 +1,14 @@
+package FS;
+
+// 命名空间变更的监听器：只对成功的写操作回调，在持有目录树写锁时调用，回调顺序就是变更生效的顺序；用于向只读副本发送变更流
+// 回调期间写锁不释放，实现只应追加记录，不能阻塞，也不能再调用FSDirectory
+public interface MutationListener {
+    // id为主节点分配的inode编号，time为写入inode的创建/修改时间
+    void onCreateFile(int id, String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, long time);
+
+    void onCreateDirectory(int id, String path, String owner, int permission, long time);
+
+    void onDelete(String path);
+
+    void onUpdate(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, long time);
+}
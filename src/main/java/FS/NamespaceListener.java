@@ -0,0 +1,25 @@
+package FS;
+
+// 命名空间操作的监听器，每个操作完成后在调用线程上回调，不论成功与否；用于录制操作轨迹
+// 写操作在命名空间写锁释放前回调，回调顺序即生效顺序；回调抛出的异常只计数，不影响操作的返回值
+// 只回调可以重放的操作：listFiles/showFileInfo只向控制台输出，不记录
+public interface NamespaceListener {
+    // time为写入inode的创建/修改时间
+    default void onCreateFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, long time) {
+    }
+
+    default void onCreateDirectory(String path, String owner, int permission, long time) {
+    }
+
+    default void onDelete(String path) {
+    }
+
+    default void onUpdate(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, long time) {
+    }
+
+    default void onSearch(String metadata, String value) {
+    }
+
+    default void onSearchRange(String metadata, long minValue, long maxValue) {
+    }
+}
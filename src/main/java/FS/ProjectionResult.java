@@ -0,0 +1,66 @@
+package FS;
+
+import index.IndexField;
+
+// 投影结果：按列存放，第i行为ids[i]对应文件的路径和各字段的值
+// 数值字段（RANGE/TIME）存为long[]，其余字段存为String[]；取值时刻为投影时持有读锁的那一刻
+public class ProjectionResult {
+    private final int[] ids;
+    private final String[] paths; // 未请求路径时为null
+    private final IndexField[] columns;
+    private final long[][] longColumns; // 与columns一一对应，非数值字段为null
+    private final String[][] stringColumns; // 与columns一一对应，数值字段为null
+
+    ProjectionResult(int[] ids, String[] paths, IndexField[] columns, long[][] longColumns, String[][] stringColumns) {
+        this.ids = ids;
+        this.paths = paths;
+        this.columns = columns;
+        this.longColumns = longColumns;
+        this.stringColumns = stringColumns;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public String[] getPaths() {
+        if (paths == null) {
+            throw new IllegalStateException("Paths were not projected");
+        }
+        return paths;
+    }
+
+    public long[] getLongs(IndexField field) {
+        long[] column = longColumns[columnOf(field)];
+        if (column == null) {
+            throw new IllegalArgumentException("Field " + field.getName() + " is not numeric");
+        }
+        return column;
+    }
+
+    // 数值字段也可以按字符串取出，每次调用重新转换
+    public String[] getStrings(IndexField field) {
+        int column = columnOf(field);
+        if (stringColumns[column] != null) {
+            return stringColumns[column];
+        }
+        String[] values = new String[ids.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = String.valueOf(longColumns[column][i]);
+        }
+        return values;
+    }
+
+    private int columnOf(IndexField field) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].getName().equals(field.getName())) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Field " + field.getName() + " was not projected");
+    }
+}
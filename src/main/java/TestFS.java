@@ -1,21 +1,79 @@
+import FS.BlockMap;
 import FS.FSDirectory;
+import FS.INode;
+import FS.INodeFile;
+import FS.INodeWithAdditionalFields;
+import FS.ProjectionResult;
+import index.GroupStats;
+import index.IndexBuild;
+import index.IndexField;
+import index.IndexPipeline;
 import index.InvertIndex;
+import index.MemoryUsage;
+import index.PostingList;
+import index.Query;
+import index.QueryCache;
+import index.SegmentCompactor;
+import index.ShardRebalancer;
+import index.Subscription;
+import index.SubscriptionEvent;
+import partition.PartitionedNamespace;
+import partition.Partitioner;
+import replication.ChangeRecord;
+import replication.ChangeStream;
+import replication.ChangeStreamServer;
+import replication.RemoteChangeSource;
+import replication.Replica;
+import server.LoadClient;
+import server.QueryServer;
+import utils.LatencyHistogram;
+import utils.OffHeapArena;
 import utils.TimeRecorder;
+import utils.Varint;
+import workload.Operation;
+import workload.TraceRecorder;
+import workload.TraceReplayer;
+import workload.WorkloadGenerator;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.LongAdder;
 
 class TestFS {
     private FSDirectory fsDirectory;
     private InvertIndex invertedIndex;
     private Runtime runtime;
     private Random random;
+    private final AtomicLong nextBlockId = new AtomicLong(); // 演示数据的块ID，各文件互不重复
 
     public TestFS() {
         this.fsDirectory = new FSDirectory();
@@ -24,6 +82,15 @@ class TestFS {
         this.random = new Random();
     }
 
+    private long[] newBlocks(int count) {
+        long first = nextBlockId.getAndAdd(count);
+        long[] blocks = new long[count];
+        for (int k = 0; k < count; k++) {
+            blocks[k] = first + k;
+        }
+        return blocks;
+    }
+
     // 生成测试数据
     public void generateTestData(int totalFiles) {
         String[] owners = {"owner1", "owner2", "owner3", "owner4", "owner5"};
@@ -46,10 +113,7 @@ class TestFS {
             String filePath = parentDir + "/file" + i + "." + extensions[random.nextInt(extensions.length)];
             String owner = owners[random.nextInt(owners.length)];
             long fileSize = 100 + random.nextInt(10000); // 随机文件大小
-            List<String> blocks = new ArrayList<>();
-            for (int k = 0; k < 3; k++) {
-                blocks.add("block" + k);
-            }
+            long[] blocks = newBlocks(3);
             fsDirectory.createFile(filePath, owner, 644, "file" + i, extensions[random.nextInt(extensions.length)], fileSize, blocks);
         }
 
@@ -57,12 +121,9 @@ class TestFS {
         String testDirPath = "/dir0";
         String testFilePath1 = testDirPath + "/file1.txt";
         String testFilePath2 = testDirPath + "/file2.txt";
-        List<String> blocks = new ArrayList<>();
-        for (int k = 0; k < 3; k++) {
-            blocks.add("block" + k);
-        }
+        long[] blocks = newBlocks(3);
         fsDirectory.createFile(testFilePath1, "owner1", 644, "file1", "txt", 100 + random.nextInt(10000), blocks);
-        fsDirectory.createFile(testFilePath2, "owner1", 644, "file2", "txt", 100 + random.nextInt(10000), blocks);
+        fsDirectory.createFile(testFilePath2, "owner1", 644, "file2", "txt", 100 + random.nextInt(10000), newBlocks(3));
     }
 
     //评估内存占用
@@ -84,6 +145,20 @@ class TestFS {
         long memoryAfterIndex = runtime.totalMemory() - runtime.freeMemory();
         long memoryUsedForIndex = memoryAfterIndex - memoryBeforeIndex;
         System.out.println("Memory used for building index: " + memoryUsedForIndex + " B");
+
+        // 索引自身的内存核算，与上面按Runtime差值的估计对照
+        long accountedBytes = 0;
+        for (MemoryUsage usage : invertedIndex.getMemoryUsage().values()) {
+            System.out.println("Index memory " + usage);
+            System.out.println("  codecs: " + invertedIndex.getCodecUsage(usage.getName()));
+            accountedBytes += usage.getTotalBytes();
+        }
+        System.out.println("Accounted index memory: " + accountedBytes + " B");
+        for (MemoryUsage usage : invertedIndex.getLargestPostings("owner", 3)) {
+            System.out.println("Largest owner posting " + usage);
+        }
+        List<MemoryUsage> shards = invertedIndex.getShardMemoryUsage("size");
+        System.out.println("First size shard " + shards.get(0) + " (" + shards.size() + " shards)");
     }
 
     public void evaluateSearchPerformance(String searchMetadata, String searchValue) {
@@ -119,16 +194,1002 @@ class TestFS {
         System.out.println("Inverted index search by range results count: " + indexResults.size());
     }
 
+    // 最近N分钟修改的文件：时间分区索引与目录树对比
+    public void evaluateRecentSearchPerformance(String searchMetadata, int minutes) {
+        System.out.println("Current time buckets for " + searchMetadata + ":");
+        invertedIndex.printRangeShards(searchMetadata);
+
+        long now = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        List<Integer> treeResults = fsDirectory.searchInTreeRange(searchMetadata, now - minutes * 60000L, Long.MAX_VALUE);
+        long endTime = System.nanoTime();
+        System.out.println("Tree search recent time: " + (endTime - startTime) / 1000000.0 + " ms");
+        System.out.println("Tree search recent results count: " + treeResults.size());
+
+        startTime = System.nanoTime();
+        List<Integer> indexResults = invertedIndex.searchRecent(searchMetadata, minutes * 60000L);
+        endTime = System.nanoTime();
+        System.out.println("Inverted index search recent time: " + (endTime - startTime) / 1000000.0 + " ms");
+        System.out.println("Inverted index search recent results count: " + indexResults.size());
+    }
+
+    // 乱序写入：最新时间推进10小时后，较早的小时桶已被压缩，再写入其中某一时刻的文件，应能按该时刻查到
+    public void evaluateLateTimeWrites() {
+        InvertIndex index = new InvertIndex();
+        long base = System.currentTimeMillis() / 3600000L * 3600000L - 24 * 3600000L;
+        long[] times = {base, base + 10 * 3600000L, base + 3 * 3600000L + 5 * 60000L}; // 最后一个晚到，落在已压缩的时段
+        List<Integer> ids = new ArrayList<>();
+        for (long time : times) {
+            INodeFile file = new INodeFile("late", "owner1", 644, time, time, null, "late", "dat", 1, new long[0]);
+            indexFile(index, file);
+            ids.add(file.id);
+        }
+        List<Integer> late = index.searchByRange("mod", times[2], times[2]);
+        List<Integer> all = new ArrayList<>(index.searchByRange("mod", base, base + 11 * 3600000L));
+        Collections.sort(all);
+        System.out.println("Late write into compacted hour: point search " + late + " (expected [" + ids.get(2) + "]), full range "
+                + all.size() + " of " + ids.size() + ", matches: " + (late.equals(ids.subList(2, 3)) && all.equals(ids)));
+    }
+
+    // 等深重分区评估：文件大小服从对数正态分布时，重分区前后的范围查询延迟
+    public void evaluateShardRebalance(int totalFiles, int numQueries) {
+        FSDirectory lognormalDirectory = new FSDirectory();
+        InvertIndex lognormalIndex = new InvertIndex();
+        int numDirs = Math.max(1, totalFiles / 1000);
+        for (int i = 0; i < numDirs; i++) {
+            lognormalDirectory.createDirectory("/lognormal" + i, "owner1", 755);
+        }
+        long[] blocks = new long[0];
+        for (int i = 0; i < totalFiles; i++) {
+            long fileSize = (long) Math.exp(8 + 2 * random.nextGaussian()); // 中位数约3KB，长尾
+            lognormalDirectory.createFile("/lognormal" + (i % numDirs) + "/file" + i + ".dat", "owner1", 644, "file" + i, "dat", fileSize, blocks, lognormalIndex);
+        }
+        long[][] ranges = new long[numQueries][2];
+        for (int i = 0; i < numQueries; i++) {
+            ranges[i][0] = (long) Math.exp(8 + 2 * random.nextGaussian());
+            ranges[i][1] = ranges[i][0] + ranges[i][0] / 2;
+        }
+
+        System.out.println("Shards before rebalance: " + lognormalIndex.getShardCount("size"));
+        System.out.println("Average range search time before rebalance: " + averageRangeSearchTime(lognormalIndex, ranges) + " ms");
+
+        ShardRebalancer rebalancer = new ShardRebalancer(lognormalIndex, 8, 16, 10);
+        long startTime = System.nanoTime();
+        rebalancer.rebalanceAll("size", 3);
+        long endTime = System.nanoTime();
+        System.out.println("Rebalance time: " + (endTime - startTime) / 1000000.0 + " ms");
+        System.out.println("Shards after rebalance: " + lognormalIndex.getShardCount("size"));
+        System.out.println("Average range search time after rebalance: " + averageRangeSearchTime(lognormalIndex, ranges) + " ms");
+    }
+
+    private double averageRangeSearchTime(InvertIndex index, long[][] ranges) {
+        for (long[] range : ranges) { // 预热
+            index.searchByRange("size", range[0], range[1]);
+        }
+        long startTime = System.nanoTime();
+        for (long[] range : ranges) {
+            index.searchByRange("size", range[0], range[1]);
+        }
+        long endTime = System.nanoTime();
+        return (endTime - startTime) / ranges.length / 1000000.0;
+    }
+
+    // 运行时注册字段：回填耗时以及注册前（DFS）与注册后（索引）的查询对比
+    public void evaluateRegisteredField(IndexField field, long minValue, long maxValue) {
+        long startTime = System.nanoTime();
+        List<Integer> treeResults = fsDirectory.searchRange(field.getName(), minValue, maxValue, invertedIndex);
+        long endTime = System.nanoTime();
+        System.out.println("Unregistered " + field.getName() + " search time: " + (endTime - startTime) / 1000000.0 + " ms, results count: " + treeResults.size());
+
+        startTime = System.nanoTime();
+        fsDirectory.registerIndexField(field, invertedIndex);
+        endTime = System.nanoTime();
+        System.out.println("Register and backfill " + field.getName() + " time: " + (endTime - startTime) / 1000000.0 + " ms");
+
+        startTime = System.nanoTime();
+        List<Integer> indexResults = fsDirectory.searchRange(field.getName(), minValue, maxValue, invertedIndex);
+        endTime = System.nanoTime();
+        System.out.println("Registered " + field.getName() + " search time: " + (endTime - startTime) / 1000000.0 + " ms, results count: " + indexResults.size());
+    }
+
+    // 异步索引维护：同步与异步两种模式下创建+更新的写入耗时，以及异步模式排空队列的耗时
+    public void evaluateAsyncIndexing(int numFiles) {
+        for (boolean async : new boolean[]{false, true}) {
+            FSDirectory directory = new FSDirectory();
+            InvertIndex index = new InvertIndex();
+            IndexPipeline pipeline = async ? index.startPipeline(4096, 256) : null;
+            directory.createDirectory("/async", "owner1", 755);
+            long[] blocks = new long[0];
+            long startTime = System.nanoTime();
+            for (int i = 0; i < numFiles; i++) {
+                directory.createFile("/async/file" + i + ".txt", "owner1", 644, "file" + i, "txt", 100 + i % 10000, blocks, index);
+            }
+            for (int i = 0; i < numFiles; i++) { // 只改大小，扩展名等字段不变
+                directory.updateFile("/async/file" + i + ".txt", "file" + i, "txt", 200 + i % 10000, blocks, index);
+            }
+            long writeTime = System.nanoTime() - startTime;
+            long sequence = index.lastSubmittedSequence();
+            startTime = System.nanoTime();
+            List<Integer> results = index.searchByRange("size", 200, 10199, sequence); // 等待索引追上后查询
+            long catchUpTime = System.nanoTime() - startTime;
+            String mode = async ? "Async" : "Sync";
+            System.out.println(mode + " index write time: " + writeTime / 1000000.0 + " ms (" + writeTime / (2 * numFiles) + " ns/op), catch-up time: " + catchUpTime / 1000000.0 + " ms, results count: " + results.size());
+            if (pipeline != null) {
+                System.out.println("Async batches: " + pipeline.getBatchCount() + ", coalesced: " + pipeline.getCoalescedCount() + ", skipped field updates: " + pipeline.getSkippedFieldCount());
+                index.stopPipeline();
+            }
+        }
+    }
+
+    // 查询结果缓存：仪表盘式的重复查询，夹杂不相关字段取值的写入，以及每10轮一次使缓存失效的写入
+    public void evaluateQueryCache(int numRounds) {
+        long[] blocks = new long[0];
+        for (boolean cached : new boolean[]{false, true}) {
+            QueryCache cache = cached ? invertedIndex.enableQueryCache(16 * 1024 * 1024) : null;
+            long queryTime = 0;
+            for (int i = 0; i < numRounds; i++) {
+                String extension = i % 10 == 0 ? "txt" : "log"; // log文件且大小在查询范围外，不影响两个查询
+                fsDirectory.createFile("/dir0/cache" + cached + i + "." + extension, "owner1", 644, "cache" + i, extension, 50000, blocks, invertedIndex);
+                long startTime = System.nanoTime();
+                invertedIndex.search("ext", "txt");
+                invertedIndex.searchByRange("size", 600, 8000);
+                queryTime += System.nanoTime() - startTime;
+            }
+            System.out.println((cached ? "Cached" : "Uncached") + " average dashboard query time: " + queryTime / numRounds / 1000000.0 + " ms");
+            if (cache != null) {
+                System.out.println("Query cache hit rate: " + cache.getHitRate() + ", invalidations: " + cache.getInvalidationCount() + ", entries: " + cache.size() + ", bytes: " + cache.getUsedBytes());
+                invertedIndex.disableQueryCache();
+            }
+        }
+    }
+
+    // 延迟与锁指标：注册JMX MBean，执行一批查询后通过MBeanServer读取分位数，并打印全部指标
+    public void evaluateMetrics(int numQueries) throws Exception {
+        fsDirectory.getMetrics().registerMBean("metadata:type=FSDirectory");
+        invertedIndex.getMetrics().registerMBean("metadata:type=InvertIndex");
+        for (int i = 0; i < numQueries; i++) {
+            fsDirectory.search("ext", "txt", invertedIndex);
+            fsDirectory.searchRange("size", 600, 8000, invertedIndex);
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("metadata:type=InvertIndex");
+        System.out.println("JMX search p50: " + server.getAttribute(name, "search.p50") + " ns, p99: " + server.getAttribute(name, "search.p99") + " ns, p999: " + server.getAttribute(name, "search.p999") + " ns");
+        System.out.println("FSDirectory metrics:");
+        fsDirectory.getMetrics().print();
+        System.out.println("InvertIndex metrics:");
+        invertedIndex.getMetrics().print();
+    }
+
+    // 批量查询：突发的大量重叠查询逐个执行与一次批量执行对比，每轮numQueries个查询
+    public void evaluateBatchSearch(int numQueries, int rounds) {
+        Query[] shapes = {
+                Query.exact("ext", "txt"),
+                Query.exact("ext", "txt").andRange("size", 600, 8000),
+                Query.exact("owner", "owner1").andRange("size", 600, 8000),
+                Query.range("size", 1000, 5000).andExact("owner", "owner2"),
+                Query.range("size", 600, 8000).andExact("ext", "txt"), // 与第二个查询相同，谓词顺序不同
+        };
+        List<Query> queries = new ArrayList<>();
+        for (int i = 0; i < numQueries; i++) {
+            queries.add(shapes[random.nextInt(shapes.length)]);
+        }
+
+        long individualTime = 0;
+        long batchTime = 0;
+        for (int round = 0; round < rounds; round++) {
+            long startTime = System.nanoTime();
+            List<List<Integer>> individual = new ArrayList<>();
+            for (Query query : queries) {
+                individual.add(invertedIndex.search(query));
+            }
+            individualTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            List<List<Integer>> batch = invertedIndex.searchBatch(queries);
+            batchTime += System.nanoTime() - startTime;
+            if (!batch.equals(individual)) {
+                System.out.println("Batch results differ from individual results");
+            }
+        }
+        System.out.println("Individual queries: " + (long) (numQueries * rounds * 1e9 / individualTime) + " queries/s");
+        System.out.println("Batched queries: " + (long) (numQueries * rounds * 1e9 / batchTime) + " queries/s, speedup: " + String.format("%.1f", (double) individualTime / batchTime) + "x");
+    }
+
+    // 真实分布的负载：先在一个目录树上按计划速率执行生成的负载并录制轨迹，再在新的目录树上按2倍速和最快速度重放
+    public void evaluateWorkloadReplay(int numFiles, int numOps, double opsPerSecond) throws IOException {
+        WorkloadGenerator generator = new WorkloadGenerator(42);
+        List<Operation> population = generator.populate(numFiles);
+        List<Operation> workload = generator.generate(numOps, opsPerSecond);
+        System.out.println("Generated " + generator.getDirectoryCount() + " directories, " + generator.getFileCount() + " files after the workload");
+
+        FSDirectory live = new FSDirectory();
+        InvertIndex liveIndex = new InvertIndex();
+        new TraceReplayer(live, liveIndex).replay(population, 0);
+        Path trace = Files.createTempFile("workload", ".trace");
+        try {
+            try (TraceRecorder recorder = new TraceRecorder(Files.newBufferedWriter(trace, StandardCharsets.UTF_8))) {
+                live.setListener(recorder);
+                System.out.println("Live run at " + (long) opsPerSecond + " ops/s:");
+                new TraceReplayer(live, liveIndex).replay(workload, 1).print();
+                live.setListener(null);
+                System.out.println("Recorded " + recorder.getRecorded() + " operations");
+            }
+            List<Operation> recorded = TraceReplayer.read(trace);
+            double[] speeds = {2, 0};
+            for (double speed : speeds) {
+                FSDirectory replica = new FSDirectory();
+                InvertIndex replicaIndex = new InvertIndex();
+                TraceReplayer replayer = new TraceReplayer(replica, replicaIndex);
+                replayer.replay(population, 0);
+                System.out.println(speed > 0 ? "Replay at " + speed + "x:" : "Replay at full speed:");
+                replayer.replay(recorded, speed).print();
+                System.out.println("Indexed owners live/replayed: " + liveIndex.getMemoryUsage("owner").getIds() + "/" + replicaIndex.getMemoryUsage("owner").getIds());
+            }
+        } finally {
+            Files.delete(trace);
+        }
+    }
+
+    // 轨迹行与变更记录的转义：目录名、文件名、扩展名和属主中带制表符、换行和反斜杠时，写出再读回仍是同一个操作
+    public boolean evaluateTraceEscaping() throws IOException {
+        String directory = "/dir\twith\\tab";
+        String path = directory + "/a\tb\nc.x\ty";
+        List<Operation> operations = new ArrayList<>();
+        operations.add(Operation.createDirectory(0, directory, "user\n1", 755, 1));
+        operations.add(Operation.createFile(0, path, "user\n1", 644, "a\tb\nc", "x\ty", 100, new long[]{1, 2}, 2));
+        Path trace = Files.createTempFile("escaping", ".trace");
+        List<Operation> read;
+        try {
+            TraceReplayer.write(operations, trace);
+            read = TraceReplayer.read(trace);
+        } finally {
+            Files.delete(trace);
+        }
+        FSDirectory replayed = new FSDirectory();
+        InvertIndex replayedIndex = new InvertIndex();
+        new TraceReplayer(replayed, replayedIndex).replay(read, 0);
+        boolean traceOk = read.size() == operations.size() && sameFile(replayed.getNode(path), "a\tb\nc", "x\ty", "user\n1")
+                && replayedIndex.search("ext", "x\ty").size() == 1;
+
+        // 变更记录按行传输：拼成一段文本后逐行读回，沿用主节点分配的inode编号
+        int inodeId = replayed.getNode(path).id;
+        StringBuilder stream = new StringBuilder();
+        stream.append(new ChangeRecord(1, 0, replayed.getNode(directory).id, operations.get(0)).toLine()).append('\n');
+        stream.append(new ChangeRecord(2, 0, inodeId, operations.get(1)).toLine()).append('\n');
+        FSDirectory replica = new FSDirectory();
+        InvertIndex replicaIndex = new InvertIndex();
+        int records = 0;
+        try (BufferedReader reader = new BufferedReader(new StringReader(stream.toString()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                ChangeRecord.parse(line).apply(replica, replicaIndex);
+                records++;
+            }
+        }
+        INode node = replica.getNode(path);
+        boolean recordOk = records == 2 && sameFile(node, "a\tb\nc", "x\ty", "user\n1") && node.id == inodeId;
+        System.out.println("Trace round trip " + (traceOk ? "ok" : "MISMATCH") + ", change record round trip " + (recordOk ? "ok" : "MISMATCH"));
+        return traceOk && recordOk;
+    }
+
+    private static boolean sameFile(INode node, String fileName, String extension, String owner) {
+        if (!(node instanceof INodeFile)) {
+            return false;
+        }
+        INodeFile file = (INodeFile) node;
+        return file.getFileName().equals(fileName) && file.fileExtension.equals(extension) && file.owner.equals(owner);
+    }
+
+    // 分区命名空间：同一份负载在1到16个分区上的并发写入吞吐量和scatter-gather查询延迟，按前partitionDepth级路径分区
+    public void evaluatePartitioning(int numFiles, int numWriters, int numQueries, int partitionDepth, int... partitionCounts) throws InterruptedException {
+        for (int partitionCount : partitionCounts) {
+            WorkloadGenerator generator = new WorkloadGenerator(11);
+            List<Operation> population = generator.populate(numFiles);
+            List<Operation> files = new ArrayList<>();
+            try (PartitionedNamespace namespace = new PartitionedNamespace(partitionCount, 2, Partitioner.hash(), partitionDepth)) {
+                for (Operation operation : population) {
+                    if (operation.getType() == Operation.Type.CREATE_DIRECTORY) {
+                        namespace.apply(operation); // 目录按生成顺序先建好
+                    } else {
+                        files.add(operation);
+                    }
+                }
+                // 并发写入文件
+                CountDownLatch latch = new CountDownLatch(numWriters);
+                long startTime = System.nanoTime();
+                for (int w = 0; w < numWriters; w++) {
+                    int offset = w;
+                    new Thread(() -> {
+                        for (int i = offset; i < files.size(); i += numWriters) {
+                            namespace.apply(files.get(i));
+                        }
+                        latch.countDown();
+                    }).start();
+                }
+                latch.await();
+                long writeTime = System.nanoTime() - startTime;
+
+                LatencyHistogram searchLatency = new LatencyHistogram();
+                LatencyHistogram rangeLatency = new LatencyHistogram();
+                int hits = 0;
+                for (int i = 0; i < numQueries; i++) {
+                    startTime = System.nanoTime();
+                    hits += namespace.search("ext", "jpg").size();
+                    searchLatency.recordSince(startTime);
+                    startTime = System.nanoTime();
+                    hits += namespace.searchRange("size", 4096, 65536).size();
+                    rangeLatency.recordSince(startTime);
+                }
+
+                int maxFiles = 0;
+                for (int i = 0; i < partitionCount; i++) {
+                    maxFiles = Math.max(maxFiles, (int) namespace.getIndex(i).getMemoryUsage("ext").getIds());
+                }
+                System.out.println("Partitions: " + partitionCount + ", create throughput: " + (long) (files.size() * 1e9 / writeTime) + " files/s"
+                        + ", search p50: " + searchLatency.getPercentile(0.5) / 1000.0 + " us, p99: " + searchLatency.getPercentile(0.99) / 1000.0 + " us"
+                        + ", range p50: " + rangeLatency.getPercentile(0.5) / 1000.0 + " us, p99: " + rangeLatency.getPercentile(0.99) / 1000.0 + " us"
+                        + ", largest partition: " + String.format("%.2f", maxFiles * (double) partitionCount / files.size()) + "x mean, hits: " + hits / numQueries);
+            }
+        }
+    }
+
+    // 只读副本：主节点按writesPerSecond匀速写入时，读线程把有陈旧上限的查询轮流分给各副本；最后一个副本经回环TCP订阅变更流，模拟独立进程
+    // 输出读写吞吐量、各副本的复制延迟，并在写入结束后核对副本与主节点的查询结果
+    public void evaluateReadReplicas(int numFiles, int numReplicas, int numReaders, int writesPerSecond, long maxStalenessMillis, double seconds) throws Exception {
+        FSDirectory primary = new FSDirectory();
+        InvertIndex primaryIndex = new InvertIndex();
+        ChangeStream stream = new ChangeStream(1 << 20);
+        primary.setMutationListener(stream);
+        List<Replica> replicas = new ArrayList<>();
+        try (ChangeStreamServer streamServer = new ChangeStreamServer(stream, new InetSocketAddress("127.0.0.1", 0));
+             RemoteChangeSource remote = new RemoteChangeSource(new InetSocketAddress("127.0.0.1", streamServer.getPort()), 0)) {
+            for (int r = 0; r < numReplicas - 1; r++) {
+                replicas.add(new Replica("local-" + r, stream));
+            }
+            replicas.add(new Replica("remote", remote));
+
+            WorkloadGenerator generator = new WorkloadGenerator(17);
+            long startTime = System.nanoTime();
+            for (Operation operation : generator.populate(numFiles)) {
+                operation.apply(primary, primaryIndex);
+            }
+            long populated = System.nanoTime();
+            for (Replica replica : replicas) {
+                replica.awaitSequence(stream.getLastSequence());
+            }
+            System.out.println("Populated " + stream.getLastSequence() + " changes in " + (populated - startTime) / 1000000.0 + " ms, replicas caught up "
+                    + (System.nanoTime() - populated) / 1000000.0 + " ms later");
+
+            List<Operation> writes = new ArrayList<>();
+            for (Operation operation : generator.generate(200000, 1)) {
+                if (!operation.getType().isRead()) {
+                    writes.add(operation);
+                }
+            }
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger written = new AtomicInteger();
+            AtomicInteger reads = new AtomicInteger();
+            AtomicInteger staleReads = new AtomicInteger();
+            Thread writer = new Thread(() -> {
+                long intervalNanos = 1000000000L / writesPerSecond;
+                long next = System.nanoTime();
+                for (int i = 0; running.get(); i = (i + 1) % writes.size()) {
+                    LockSupport.parkNanos(next - System.nanoTime());
+                    writes.get(i).apply(primary, primaryIndex);
+                    written.incrementAndGet();
+                    next += intervalNanos;
+                }
+            });
+            List<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < numReaders; t++) {
+                int offset = t;
+                readers.add(new Thread(() -> {
+                    for (int i = offset; running.get(); i++) {
+                        Replica replica = replicas.get(i % replicas.size());
+                        try {
+                            if (i % 2 == 0) {
+                                replica.search("ext", "pdf", maxStalenessMillis);
+                            } else {
+                                replica.searchRange("size", 4096, 8192, maxStalenessMillis);
+                            }
+                            reads.incrementAndGet();
+                        } catch (IllegalStateException e) {
+                            staleReads.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            startTime = System.nanoTime();
+            writer.start();
+            for (Thread reader : readers) {
+                reader.start();
+            }
+            Thread.sleep((long) (seconds * 1000));
+            running.set(false);
+            writer.join();
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+            System.out.println("Replicas: " + numReplicas + ", readers: " + numReaders + ", writes: " + (long) (written.get() / elapsed) + " ops/s"
+                    + ", reads: " + (long) (reads.get() / elapsed) + " ops/s, reads over " + maxStalenessMillis + " ms staleness: " + staleReads.get());
+            for (Replica replica : replicas) {
+                System.out.println("  " + replica.getName() + ": applied " + replica.getAppliedSequence() + ", lag " + replica.getLag() + " records"
+                        + ", delay p50: " + replica.getReplicationDelay().getPercentile(0.5) / 1e6 + " ms, p99: " + replica.getReplicationDelay().getPercentile(0.99) / 1e6
+                        + " ms, max: " + replica.getReplicationDelay().getMax() / 1e6 + " ms");
+            }
+
+            // 读到自己的写入：在主节点创建文件后等待副本应用到该序号
+            primary.createFile("/replicated.txt", "owner1", 644, "replicated", "txt", 1, newBlocks(1), primaryIndex);
+            long sequence = stream.getLastSequence();
+            int mismatches = 0;
+            for (Replica replica : replicas) {
+                replica.awaitSequence(sequence);
+                for (String extension : new String[]{"jpg", "txt", "pdf", "mp4"}) {
+                    List<Integer> expected = new ArrayList<>(primary.search("ext", extension, primaryIndex));
+                    List<Integer> actual = new ArrayList<>(replica.search("ext", extension, Long.MAX_VALUE));
+                    expected.sort(null);
+                    actual.sort(null);
+                    if (!expected.equals(actual)) {
+                        mismatches++;
+                    }
+                }
+            }
+            System.out.println("Replicas converged at sequence " + sequence + ", mismatched queries: " + mismatches);
+        } finally {
+            for (Replica replica : replicas) {
+                replica.close();
+            }
+        }
+    }
+
+    // 持续查询：注册不同数量的订阅后执行同一批写操作，比较写入吞吐量和每次写入完整求值的订阅数；
+    // 再把每个订阅注册时的结果加上收到的事件，与写入结束后重新求得的结果核对
+    public void evaluateSubscriptions(int numFiles, int numMutations, int... subscriptionCounts) {
+        String[] extensions = {"jpg", "txt", "log", "pdf", "png", "doc", "csv", "java"};
+        for (int subscriptionCount : subscriptionCounts) {
+            FSDirectory fsDirectory = new FSDirectory();
+            InvertIndex invertedIndex = new InvertIndex();
+            WorkloadGenerator generator = new WorkloadGenerator(23).mix(0, new double[]{0.5, 0.3, 0.15, 0.05}, new double[]{1, 0, 0, 0});
+            for (Operation operation : generator.populate(numFiles)) {
+                operation.apply(fsDirectory, invertedIndex);
+            }
+            Random subscriptionRandom = new Random(5);
+            List<Subscription> subscriptions = new ArrayList<>();
+            List<Set<Integer>> views = new ArrayList<>();
+            for (int i = 0; i < subscriptionCount; i++) {
+                String extension = extensions[subscriptionRandom.nextInt(extensions.length)];
+                Query query;
+                String path = null;
+                switch (i % 4) {
+                    case 0: // ext=pdf AND size>1MB
+                        query = Query.exact("ext", extension).andRange("size", 1 << 20, Long.MAX_VALUE);
+                        break;
+                    case 1:
+                        query = Query.exact("owner", "user" + subscriptionRandom.nextInt(50));
+                        break;
+                    case 2:
+                        long minSize = subscriptionRandom.nextInt(1 << 20);
+                        query = Query.range("size", minSize, minSize + subscriptionRandom.nextInt(1 << 16));
+                        break;
+                    default:
+                        query = Query.exact("ext", extension);
+                        path = "/d" + subscriptionRandom.nextInt(10);
+                        break;
+                }
+                List<Integer> current = new ArrayList<>();
+                subscriptions.add(fsDirectory.subscribe(query, path, 1 << 16, invertedIndex, current));
+                views.add(new HashSet<>(current));
+            }
+
+            List<Operation> writes = generator.generate(numMutations, 1);
+            long candidates = invertedIndex.getSubscriptionCandidateCount();
+            long startTime = System.nanoTime();
+            for (Operation operation : writes) {
+                operation.apply(fsDirectory, invertedIndex);
+            }
+            long elapsed = System.nanoTime() - startTime;
+            candidates = invertedIndex.getSubscriptionCandidateCount() - candidates;
+
+            long events = 0;
+            int mismatches = 0;
+            List<SubscriptionEvent> received = new ArrayList<>();
+            for (int i = 0; i < subscriptions.size(); i++) {
+                Subscription subscription = subscriptions.get(i);
+                Set<Integer> view = views.get(i);
+                received.clear();
+                subscription.drainTo(received);
+                events += received.size();
+                for (SubscriptionEvent event : received) {
+                    boolean consistent = event.getType() == SubscriptionEvent.Type.ADDED ? view.add(event.getFileId())
+                            : event.getType() == SubscriptionEvent.Type.REMOVED ? view.remove(event.getFileId()) : view.contains(event.getFileId());
+                    if (!consistent) {
+                        mismatches++;
+                    }
+                }
+                List<Integer> expected = new ArrayList<>();
+                fsDirectory.subscribe(subscription.getQuery(), subscription.getPath(), 1, invertedIndex, expected).close();
+                if (!view.equals(new HashSet<>(expected))) {
+                    mismatches++;
+                }
+                subscription.close();
+            }
+            System.out.println("Subscriptions: " + subscriptionCount + ", write throughput: " + (long) (writes.size() * 1e9 / elapsed) + " ops/s"
+                    + ", evaluated per write: " + String.format("%.2f", candidates / (double) writes.size()) + ", events: " + events + ", mismatches: " + mismatches);
+        }
+    }
+
+    // 堆外倒排链：同样的命名空间和写入负载下，比较索引在堆上和堆外时的堆占用、GC次数和耗时以及查询延迟
+    public void evaluateOffHeapStorage(int numFiles, int numMutations, int numQueries) {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            OffHeapArena arena = offHeap ? new OffHeapArena() : null;
+            FSDirectory fsDirectory = new FSDirectory();
+            InvertIndex invertedIndex = offHeap ? new InvertIndex(arena) : new InvertIndex();
+            WorkloadGenerator generator = new WorkloadGenerator(31);
+            long[] gcBefore = gcTotals();
+            for (Operation operation : generator.populate(numFiles)) {
+                operation.apply(fsDirectory, invertedIndex);
+            }
+            for (Operation operation : generator.generate(numMutations, 1)) {
+                operation.apply(fsDirectory, invertedIndex);
+            }
+            long[] gcAfter = gcTotals();
+            runtime.gc();
+            long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+            Random queryRandom = new Random(9);
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int i = 0; i < numQueries; i++) {
+                long minSize = queryRandom.nextInt(1 << 20);
+                long start = System.nanoTime();
+                invertedIndex.search(Query.exact("ext", "jpg").andRange("size", minSize, minSize + (1 << 18)));
+                latency.record(System.nanoTime() - start);
+            }
+            System.out.println((offHeap ? "Off-heap" : "On-heap") + " postings: heap used " + heapUsed / 1024 + " KB"
+                    + (offHeap ? ", direct reserved " + arena.getReservedBytes() / 1024 + " KB, allocated " + arena.getAllocatedBytes() / 1024 + " KB" : "")
+                    + ", GC during writes: " + (gcAfter[0] - gcBefore[0]) + " collections, " + (gcAfter[1] - gcBefore[1]) + " ms"
+                    + ", query p50=" + latency.getPercentile(0.5) / 1000.0 + " us, p99=" + latency.getPercentile(0.99) / 1000.0 + " us");
+        }
+    }
+
+    // 块ID与反向索引：每文件的块列表用long[]和字符串块名的堆占用，BlockMap与装箱HashMap的查找延迟，
+    // 以及创建、更新、删除之后块归属是否正确
+    public void evaluateBlockMap(int numBlocks, int numLookups) {
+        int blocksPerFile = 8;
+        int numFiles = numBlocks / blocksPerFile;
+        runtime.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        List<List<String>> namedBlocks = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            List<String> blocks = new ArrayList<>(blocksPerFile);
+            for (int k = 0; k < blocksPerFile; k++) {
+                blocks.add("blk_" + (i * blocksPerFile + k));
+            }
+            namedBlocks.add(blocks);
+        }
+        runtime.gc();
+        long namedBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+        namedBlocks.clear();
+        runtime.gc();
+        before = runtime.totalMemory() - runtime.freeMemory();
+        List<long[]> idBlocks = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            idBlocks.add(newBlocks(blocksPerFile));
+        }
+        runtime.gc();
+        long idBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+        System.out.println("Block lists for " + numFiles + " files: List<String> " + namedBytes / numFiles + " B/file, long[] " + idBytes / numFiles + " B/file");
+
+        long now = System.currentTimeMillis();
+        INodeFile[] files = new INodeFile[numFiles];
+        for (int i = 0; i < numFiles; i++) {
+            files[i] = new INodeFile("file" + i, "owner1", 644, now, now, null, "file" + i, "dat", blocksPerFile * 4096L, idBlocks.get(i));
+        }
+        runtime.gc();
+        before = runtime.totalMemory() - runtime.freeMemory();
+        BlockMap blockMap = new BlockMap();
+        for (INodeFile file : files) {
+            for (long block : file.getBlocks()) {
+                blockMap.put(block, file);
+            }
+        }
+        runtime.gc();
+        long blockMapBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+        before += blockMapBytes;
+        Map<Long, INodeFile> boxedMap = new HashMap<>();
+        for (INodeFile file : files) {
+            for (long block : file.getBlocks()) {
+                boxedMap.put(block, file);
+            }
+        }
+        runtime.gc();
+        long boxedBytes = runtime.totalMemory() - runtime.freeMemory() - before;
+        long firstBlock = idBlocks.get(0)[0];
+        long[] probes = new long[numLookups];
+        Random probeRandom = new Random(5);
+        for (int i = 0; i < numLookups; i++) {
+            probes[i] = firstBlock + probeRandom.nextInt(numFiles * blocksPerFile * 2); // 约一半不存在
+        }
+        for (int round = 0; round < 3; round++) { // 最后一轮计时，前两轮预热
+            int hits = 0;
+            long start = System.nanoTime();
+            for (long probe : probes) {
+                if (blockMap.get(probe) != null) {
+                    hits++;
+                }
+            }
+            long blockMapTime = System.nanoTime() - start;
+            int boxedHits = 0;
+            start = System.nanoTime();
+            for (long probe : probes) {
+                if (boxedMap.get(probe) != null) {
+                    boxedHits++;
+                }
+            }
+            long boxedTime = System.nanoTime() - start;
+            if (round == 2) {
+                System.out.println("Block owner lookup over " + blockMap.size() + " blocks: BlockMap " + (double) blockMapTime / numLookups + " ns"
+                        + " (" + blockMapBytes / blockMap.size() + " B/block), HashMap<Long> " + (double) boxedTime / numLookups + " ns"
+                        + " (" + boxedBytes / boxedMap.size() + " B/block)"
+                        + ", hits " + hits + (hits == boxedHits ? " (match)" : " (MISMATCH " + boxedHits + ")"));
+            }
+        }
+        boxedMap.clear();
+
+        // 块归属随命名空间变化：重复使用其他文件的块被拒绝，更新释放旧块，删除目录释放子树中所有块
+        FSDirectory directory = new FSDirectory();
+        InvertIndex index = new InvertIndex();
+        directory.createDirectory("/blocks", "owner1", 755);
+        boolean created = directory.createFile("/blocks/a.dat", "owner1", 644, "a", "dat", 3 * 4096, new long[]{1, 2, 3}, index);
+        boolean duplicateRejected = !directory.createFile("/blocks/b.dat", "owner1", 644, "b", "dat", 2 * 4096, new long[]{3, 4}, index);
+        boolean updated = directory.updateFile("/blocks/a.dat", "a", "dat", 2 * 4096, new long[]{3, 5}, index);
+        boolean released = directory.getBlockOwner(1) == null && directory.getBlockOwner(3) == directory.getBlockOwner(5);
+        boolean reused = directory.createFile("/blocks/b.dat", "owner1", 644, "b", "dat", 2 * 4096, new long[]{1, 4}, index)
+                && "b".equals(directory.getBlockOwner(1).getFileName());
+        directory.deleteNode("/blocks", index);
+        System.out.println("Block ownership: create " + created + ", duplicate rejected " + duplicateRejected + ", update " + updated
+                + ", old blocks released " + released + ", released block reused " + reused + ", blocks after delete " + directory.getBlockCount());
+    }
+
+    // 结果投影：对全部命中一次取出路径、大小、修改时间和所有者，对比逐个id取节点、沿父指针拼接路径再逐个读字段
+    public void evaluateProjection(int numFiles) {
+        FSDirectory directory = new FSDirectory();
+        InvertIndex index = new InvertIndex();
+        for (Operation operation : new WorkloadGenerator(17).populate(numFiles)) {
+            operation.apply(directory, index);
+        }
+        List<Integer> ids = index.searchByRange("size", 0, Long.MAX_VALUE);
+        ProjectionResult projection = null;
+        String[] paths = new String[ids.size()];
+        long[] sizes = new long[ids.size()];
+        long[] modificationTimes = new long[ids.size()];
+        String[] owners = new String[ids.size()];
+        for (int round = 0; round < 10; round++) { // 最后一轮计时，之前各轮预热
+            long start = System.nanoTime();
+            for (int i = 0; i < ids.size(); i++) {
+                INodeFile file = directory.getFile(ids.get(i));
+                StringBuilder path = new StringBuilder();
+                for (INode node = file; node.getParent() != null; node = node.getParent()) {
+                    path.insert(0, "/" + ((INodeWithAdditionalFields) node).getName());
+                }
+                paths[i] = path.toString();
+                sizes[i] = file.fileSize;
+                modificationTimes[i] = file.modificationTime;
+                owners[i] = file.owner;
+            }
+            long perIdTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            projection = directory.project(ids, true, IndexField.SIZE, IndexField.MOD, IndexField.OWNER);
+            long projectTime = System.nanoTime() - start;
+            if (round == 9) {
+                System.out.println("Projected path, size, mtime, owner for " + projection.size() + " hits: per-id walk " + perIdTime / 1000000.0
+                        + " ms, project " + projectTime / 1000000.0 + " ms");
+            }
+        }
+        boolean same = Arrays.equals(paths, projection.getPaths()) && Arrays.equals(sizes, projection.getLongs(IndexField.SIZE))
+                && Arrays.equals(modificationTimes, projection.getLongs(IndexField.MOD)) && Arrays.equals(owners, projection.getStrings(IndexField.OWNER));
+        int resolved = 0;
+        for (int i = 0; i < projection.size(); i += Math.max(1, projection.size() / 1000)) {
+            INode node = directory.getNode(projection.getPaths()[i]);
+            if (node != null && node.id == projection.getIds()[i]) {
+                resolved++;
+            }
+        }
+        System.out.println("Projection matches per-id values: " + same + ", sampled paths resolving to their id: " + resolved
+                + ", first row: " + projection.getPaths()[0] + " size=" + projection.getLongs(IndexField.SIZE)[0] + " owner=" + projection.getStrings(IndexField.OWNER)[0]);
+
+        // 删除一个目录后，索引中残留的id在投影时被跳过
+        String victim = projection.getPaths()[0].substring(0, projection.getPaths()[0].lastIndexOf('/'));
+        if (!victim.isEmpty()) {
+            directory.deleteNode(victim, index);
+            System.out.println("After deleting " + victim + ": " + directory.project(ids, false).size() + " of " + ids.size() + " ids still resolve");
+        }
+    }
+
+    // 在线索引构建：后台写线程按固定速率写入，分别用阻塞回填、在线回填注册新字段，再在线重建全部字段，
+    // 比较构建期间写操作的延迟，并在写入停止后用目录树遍历校验索引结果
+    public void evaluateOnlineIndexBuild(int numFiles, int writesPerSecond) throws InterruptedException {
+        FSDirectory directory = new FSDirectory();
+        InvertIndex index = new InvertIndex();
+        WorkloadGenerator generator = new WorkloadGenerator(23).mix(0, new double[]{0.4, 0.4, 0.15, 0.05}, new double[]{0.35, 0.35, 0.2, 0.1});
+        for (Operation operation : generator.populate(numFiles)) {
+            operation.apply(directory, index);
+        }
+        List<Operation> writes = generator.generate(numFiles, 1);
+        AtomicInteger cursor = new AtomicInteger();
+        String[] phases = {"blocking register nameLength", "online register depth", "online rebuild all fields"};
+        for (int phase = 0; phase < phases.length; phase++) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            LatencyHistogram latency = new LatencyHistogram();
+            Thread writer = new Thread(() -> {
+                long interval = 1000000000L / writesPerSecond;
+                long next = System.nanoTime();
+                while (running.get() && cursor.get() < writes.size()) {
+                    long start = System.nanoTime();
+                    writes.get(cursor.getAndIncrement()).apply(directory, index);
+                    latency.recordSince(start);
+                    next += interval;
+                    LockSupport.parkNanos(next - System.nanoTime());
+                }
+            });
+            writer.start();
+            Thread.sleep(200); // 先建立稳定的写入
+            long start = System.nanoTime();
+            IndexBuild build = null;
+            if (phase == 0) {
+                directory.registerIndexField(IndexField.NAME_LENGTH, index);
+            } else if (phase == 1) {
+                build = directory.registerIndexFieldOnline(IndexField.DEPTH, index);
+            } else {
+                build = directory.rebuildIndexOnline(index);
+            }
+            long buildTime = System.nanoTime() - start;
+            Thread.sleep(200);
+            running.set(false);
+            writer.join();
+            System.out.println(phases[phase] + ": " + buildTime / 1000000.0 + " ms, writes " + latency.getCount() + " p50=" + latency.getPercentile(0.5) / 1000.0
+                    + " us, p99=" + latency.getPercentile(0.99) / 1000.0 + " us, max=" + latency.getMax() / 1000.0 + " us"
+                    + (build == null ? "" : ", scanned " + build.getScannedCount() + ", side log " + build.getLoggedCount() + " entries"));
+        }
+        System.out.println("Switch under write lock: " + directory.getMetrics().histogram("buildIndexOnline.switch").getMax() / 1000.0 + " us max");
+
+        // 写入已停止：索引结果与目录树遍历一致，按排序后的id比较
+        boolean consistent = sameIds(index.searchByRange("depth", 0, 3), directory.searchInTreeRange("depth", 0, 3))
+                && sameIds(index.searchByRange("nameLength", 0, 12), directory.searchInTreeRange("nameLength", 0, 12))
+                && sameIds(index.searchByRange("size", 0, 1 << 20), directory.searchInTreeRange("size", 0, 1 << 20))
+                && sameIds(index.searchByRange("creation", 0, Long.MAX_VALUE), directory.searchInTreeRange("creation", 0, Long.MAX_VALUE))
+                && sameIds(index.searchByRange("mod", 0, Long.MAX_VALUE), directory.searchInTreeRange("mod", 0, Long.MAX_VALUE))
+                && sameIds(index.search("ext", "jpg"), directory.searchInTree("ext", "jpg"))
+                && sameIds(index.search("owner", "user1"), directory.searchInTree("owner", "user1"));
+        System.out.println("Index matches tree walk after rebuild: " + consistent);
+    }
+
+    // 分层索引：同一批文件分别建立普通倒排链和分层存储，随机修改文件扩展名（倒排链中间的删除和插入），
+    // 比较固定时长内的写入次数；再比较段合并前后的查询延迟，并与文件当前取值核对
+    public void evaluateTieredIndex(int numFiles, int memtableLimit, long durationMillis, int numQueries) {
+        String[] extensions = {"dat", "log"};
+        long now = System.currentTimeMillis();
+        INodeFile[] files = new INodeFile[numFiles];
+        for (int i = 0; i < numFiles; i++) {
+            long time = now - numFiles + i; // 大小和时间各不相同，修改扩展名的代价集中在ext和owner两个精确字段
+            files[i] = new INodeFile("file" + i, "owner1", 644, time, time, null, "file" + i, extensions[i & 1], 4096L * (i + 1), null);
+        }
+        for (boolean tiered : new boolean[]{false, true}) {
+            InvertIndex index = tiered ? new InvertIndex(memtableLimit) : new InvertIndex();
+            SegmentCompactor compactor = new SegmentCompactor(index, 8, 100);
+            if (tiered) {
+                compactor.start();
+            }
+            for (INodeFile file : files) {
+                indexFile(index, file);
+            }
+            Random random = new Random(7);
+            long updates = 0;
+            long deadline = System.nanoTime() + durationMillis * 1000000L;
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < 100; i++) {
+                    INodeFile file = files[random.nextInt(numFiles)];
+                    index.updateIndex(file, () -> file.fileExtension = "dat".equals(file.fileExtension) ? "log" : "dat");
+                }
+                updates += 100;
+            }
+            compactor.stop();
+            String result = (tiered ? "Tiered" : "Posting") + " index over " + numFiles + " files: " + updates * 1000 / durationMillis + " updates/s";
+            result += ", search " + searchLatency(index, "dat", numQueries) + " us";
+            if (tiered) {
+                int segments = index.getSegmentCount("ext");
+                long start = System.nanoTime();
+                new SegmentCompactor(index, 1, 1000).compactAll();
+                result += " over " + segments + " segments, compaction " + (System.nanoTime() - start) / 1000000 + " ms, search " + searchLatency(index, "dat", numQueries) + " us";
+            }
+            int expected = 0;
+            for (INodeFile file : files) {
+                if ("dat".equals(file.fileExtension)) {
+                    expected++;
+                }
+            }
+            System.out.println(result + ", matches file values: " + (index.search("ext", "dat").size() == expected));
+        }
+    }
+
+    // 延迟删除：按随机顺序删除一部分文件，比较逐个修改倒排链与只标记删除时的删除吞吐量，
+    // 以及存在待清除文件时的查询延迟和后台清除后的结果
+    public void evaluateLazyDeletes(int numFiles, int numDeletes, double purgeThreshold, int numQueries) {
+        String[] extensions = {"txt", "jpg", "log", "pdf"};
+        long now = System.currentTimeMillis();
+        INodeFile[] files = new INodeFile[numFiles];
+        for (int i = 0; i < numFiles; i++) {
+            long time = now - numFiles + i;
+            files[i] = new INodeFile("file" + i, "owner" + (i % 8), 644, time, time, null, "file" + i, extensions[i % extensions.length], 4096L * (i + 1), null);
+        }
+        List<INodeFile> victims = new ArrayList<>(Arrays.asList(files));
+        Collections.shuffle(victims, new Random(11));
+        victims = victims.subList(0, numDeletes);
+        for (boolean lazy : new boolean[]{false, true}) {
+            InvertIndex index = new InvertIndex();
+            for (INodeFile file : files) {
+                indexFile(index, file);
+            }
+            if (lazy) {
+                index.enableLazyDeletes(purgeThreshold);
+            }
+            long start = System.nanoTime();
+            for (INodeFile victim : victims) {
+                index.removeFromIndex(victim);
+            }
+            long elapsed = System.nanoTime() - start;
+            String result = (lazy ? "Lazy" : "Eager") + " deletes of " + numDeletes + "/" + numFiles + " files: " + (long) (numDeletes * 1e9 / elapsed) + " deletes/s";
+            if (lazy) {
+                result += ", pending " + index.getDeletedCount() + ", search with pending " + searchLatency(index, "txt", numQueries) + " us";
+                start = System.nanoTime();
+                index.disableLazyDeletes();
+                result += ", purge " + (System.nanoTime() - start) / 1000000 + " ms";
+            }
+            result += ", search " + searchLatency(index, "txt", numQueries) + " us";
+            Set<Integer> removed = new HashSet<>();
+            for (INodeFile victim : victims) {
+                removed.add(victim.id);
+            }
+            int expected = 0;
+            for (INodeFile file : files) {
+                if ("txt".equals(file.fileExtension) && !removed.contains(file.id)) {
+                    expected++;
+                }
+            }
+            System.out.println(result + ", matches: " + (index.search("ext", "txt").size() == expected
+                    && index.searchByRange("size", 0, Long.MAX_VALUE).size() == numFiles - numDeletes));
+        }
+    }
+
+    // 分组聚合：按扩展名和所有者统计文件数、总大小和修改时间范围，对比逐个取值查询再按id取inode读取大小和修改时间；
+    // 聚合在一批创建、更新和（延迟）删除之后求得，再测带大小范围过滤的聚合
+    public void evaluateAggregation(int numFiles, int numMutations) {
+        FSDirectory directory = new FSDirectory();
+        InvertIndex index = new InvertIndex();
+        WorkloadGenerator generator = new WorkloadGenerator(29).mix(0, new double[]{0.3, 0.4, 0.3, 0}, new double[]{1, 0, 0, 0});
+        for (Operation operation : generator.populate(numFiles)) {
+            operation.apply(directory, index);
+        }
+        index.enableLazyDeletes(0.5); // 删除只标记，聚合仍需排除这些文件
+        for (Operation operation : generator.generate(numMutations, 1)) {
+            operation.apply(directory, index);
+        }
+        Query[] filters = {null, null, Query.range("size", 1 << 20, Long.MAX_VALUE)};
+        String[] keys = {"ext", "owner", "ext"};
+        for (int q = 0; q < keys.length; q++) {
+            Map<String, GroupStats> aggregated = null;
+            Map<String, long[]> walked = null;
+            long aggregateTime = 0;
+            long walkTime = 0;
+            for (int round = 0; round < 5; round++) { // 最后一轮计时，之前各轮预热
+                long start = System.nanoTime();
+                aggregated = index.aggregate(keys[q], filters[q]);
+                aggregateTime = System.nanoTime() - start;
+                start = System.nanoTime();
+                walked = aggregateByWalk(directory, index, keys[q], aggregated.keySet(), filters[q] == null ? Long.MIN_VALUE : 1 << 20);
+                walkTime = System.nanoTime() - start;
+            }
+            boolean same = aggregated.size() == walked.size();
+            for (GroupStats stats : aggregated.values()) {
+                long[] expected = walked.get(stats.getValue());
+                same &= expected != null && Arrays.equals(expected, new long[]{stats.getCount(), stats.getSumSize(), stats.getMinSize(), stats.getMaxSize(),
+                        stats.getSumModificationTime(), stats.getMinModificationTime(), stats.getMaxModificationTime()});
+            }
+            GroupStats largest = Collections.max(aggregated.values(), Comparator.comparingLong(GroupStats::getSumSize));
+            System.out.println("Group by " + keys[q] + (filters[q] == null ? "" : " where size >= 1MB") + ": " + aggregated.size() + " groups, aggregate "
+                    + aggregateTime / 1000.0 + " us, search and resolve " + walkTime / 1000.0 + " us, matches: " + same + ", largest " + largest);
+        }
+    }
+
+    // 对照：对每个取值单独查询，再逐个id取inode读取大小和修改时间
+    private static Map<String, long[]> aggregateByWalk(FSDirectory directory, InvertIndex index, String key, Set<String> values, long minSize) {
+        Map<String, long[]> results = new HashMap<>();
+        for (String value : values) {
+            long[] stats = {0, 0, Long.MAX_VALUE, Long.MIN_VALUE, 0, Long.MAX_VALUE, Long.MIN_VALUE};
+            for (int id : index.search(key, value)) {
+                INodeFile file = directory.getFile(id);
+                if (file == null || file.fileSize < minSize) {
+                    continue;
+                }
+                stats[0]++;
+                stats[1] += file.fileSize;
+                stats[2] = Math.min(stats[2], file.fileSize);
+                stats[3] = Math.max(stats[3], file.fileSize);
+                stats[4] += file.modificationTime;
+                stats[5] = Math.min(stats[5], file.modificationTime);
+                stats[6] = Math.max(stats[6], file.modificationTime);
+            }
+            if (stats[0] > 0) {
+                results.put(value, stats);
+            }
+        }
+        return results;
+    }
+
+    private static void indexFile(InvertIndex index, INodeFile file) {
+        try {
+            index.addToIndex(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 查询ext=extension的平均延迟（微秒），前一半查询用于预热
+    private static double searchLatency(InvertIndex index, String extension, int numQueries) {
+        long elapsed = 0;
+        for (int i = 0; i < numQueries * 2; i++) {
+            long start = System.nanoTime();
+            index.search("ext", extension);
+            if (i >= numQueries) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        return elapsed / 1000 / (double) numQueries;
+    }
+
+    // 两个结果包含相同的id（含重复次数），不考虑顺序
+    private static boolean sameIds(List<Integer> a, List<Integer> b) {
+        List<Integer> sortedA = new ArrayList<>(a);
+        List<Integer> sortedB = new ArrayList<>(b);
+        Collections.sort(sortedA);
+        Collections.sort(sortedB);
+        return sortedA.equals(sortedB);
+    }
+
+    // 所有收集器累计的GC次数和耗时（毫秒）
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, collector.getCollectionCount());
+            totals[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return totals;
+    }
+
+    // 查询服务：在回环地址上启动服务，建立初始命名空间后按不同连接数压测，读多写少
+    public void evaluateQueryServer(int numFiles, int depth, double seconds, int... connectionCounts) throws Exception {
+        try (QueryServer server = new QueryServer(new FSDirectory(), new InvertIndex(), new InetSocketAddress("127.0.0.1", 0), Runtime.getRuntime().availableProcessors())) {
+            server.start();
+            WorkloadGenerator generator = new WorkloadGenerator(7).mix(0.95, new double[]{0.5, 0.3, 0.15, 0.05}, new double[]{0.35, 0.35, 0.2, 0.1});
+            LoadClient client = new LoadClient(new InetSocketAddress("127.0.0.1", server.getPort()));
+            long start = System.nanoTime();
+            client.populate(generator.populate(numFiles), 256);
+            System.out.println("Populated " + numFiles + " files over the wire in " + (System.nanoTime() - start) / 1000000.0 + " ms");
+            List<Operation> workload = generator.generate(100000, 1);
+            for (int connections : connectionCounts) {
+                System.out.println(client.run(workload, connections, depth, seconds));
+            }
+            System.out.println("Server requests: " + server.getRequests() + ", batches: " + server.getBatches() + ", shared searches: " + server.getSharedSearches());
+        }
+    }
+
     public void evaluateInsertPerformance(int bulkInsertCount) {
         String dirPath = "/dir0";
         String fileName = "file_new";
         String fileExtension = "txt";
         String owner = "owner1";
         long fileSize = 100 + random.nextInt(10000);
-        List<String> blocks = new ArrayList<>();
-        for (int k = 0; k < 3; k++) {
-            blocks.add("block" + k);
-        }
+        long[] blocks = newBlocks(3);
 
         // 单个文件插入测试
         TimeRecorder singleInsertTimeRecorder = new TimeRecorder(); //记录创建文件过程中更新索引的时间消耗
@@ -143,7 +1204,7 @@ class TestFS {
         for (int i = 0; i < bulkInsertCount; i++) {
             String bulkFileName = "bulk_file" + i;
             TimeRecorder bulkInsertTimeRecorder = new TimeRecorder();
-            boolean bulkInsertSuccess = fsDirectory.createFile(dirPath + "/" + bulkFileName + "." + fileExtension, owner, 644, bulkFileName, fileExtension, fileSize, blocks, invertedIndex, bulkInsertTimeRecorder);
+            boolean bulkInsertSuccess = fsDirectory.createFile(dirPath + "/" + bulkFileName + "." + fileExtension, owner, 644, bulkFileName, fileExtension, fileSize, newBlocks(3), invertedIndex, bulkInsertTimeRecorder);
             if (bulkInsertSuccess) {
                 totalDirectoryTreeTime += bulkInsertTimeRecorder.directoryTreeTime;
                 totalInvertedIndexTime += bulkInsertTimeRecorder.invertedIndexTime;
@@ -154,6 +1215,108 @@ class TestFS {
         System.out.println("Total bulk file insert to inverted index time: " + totalInvertedIndexTime / 1000000.0 + " ms");
     }
 
+    // 倒排链编码评估：原始varint（插入顺序、无delta）与分块delta编码的压缩率和解码速度对比
+    public void evaluatePostingEncoding(int numIds, int maxGap) throws IOException {
+        int[] ids = new int[numIds];
+        int id = 0;
+        for (int i = 0; i < numIds; i++) {
+            id += 1 + random.nextInt(maxGap);
+            ids[i] = id;
+        }
+        // 原格式：id按插入顺序（打乱）写入varint
+        int[] shuffled = ids.clone();
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int value : shuffled) {
+            Varint.writeUnsignedVarInt(value, out);
+        }
+        byte[] raw = out.toByteArray();
+        PostingList posting = new PostingList();
+        for (int value : ids) {
+            posting.add(value);
+        }
+        System.out.println("Posting ids: " + numIds + ", raw int bytes: " + numIds * 4);
+        System.out.println("Raw varint bytes: " + raw.length + " (" + String.format("%.2f", numIds * 4.0 / raw.length) + "x)");
+        System.out.println("Block encoded bytes: " + posting.sizeInBytes() + " (" + String.format("%.2f", numIds * 4.0 / posting.sizeInBytes()) + "x)");
+
+        int rounds = 20;
+        long checksum = 0;
+        long startTime = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            int[] offset = {0};
+            while (offset[0] < raw.length) {
+                checksum += Varint.readUnsignedVarInt(raw, offset);
+            }
+        }
+        long endTime = System.nanoTime();
+        System.out.println("Raw varint decode time: " + (endTime - startTime) / rounds / 1000000.0 + " ms");
+
+        startTime = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            PostingList.Cursor cursor = posting.cursor();
+            for (int value = cursor.next(); value != PostingList.NO_MORE_IDS; value = cursor.next()) {
+                checksum -= value;
+            }
+        }
+        endTime = System.nanoTime();
+        System.out.println("Block decode time: " + (endTime - startTime) / rounds / 1000000.0 + " ms");
+
+        // 与稀疏倒排链求交：advance可按块跳过
+        PostingList sparse = new PostingList();
+        for (int i = 0; i < numIds; i += 1000) {
+            sparse.add(ids[i]);
+        }
+        startTime = System.nanoTime();
+        List<Integer> hits = PostingList.intersect(posting, sparse);
+        endTime = System.nanoTime();
+        System.out.println("Skip intersect time: " + (endTime - startTime) / 1000000.0 + " ms, hits: " + hits.size() + (checksum == 0 ? "" : " (checksum mismatch)"));
+
+        // 自适应编码：不同密度的倒排链写满的块各自选用的编码
+        String[] shapes = {"consecutive", "runs", "dense", "uniform", "sparse", "skewed"};
+        for (String shape : shapes) {
+            PostingList shaped = new PostingList();
+            int next = 0;
+            for (int i = 0; i < numIds / 10; i++) {
+                switch (shape) {
+                    case "consecutive":
+                        next += 1;
+                        break;
+                    case "runs":
+                        next += random.nextInt(20) == 0 ? 2 + random.nextInt(100) : 1;
+                        break;
+                    case "dense":
+                        next += 1 + random.nextInt(3);
+                        break;
+                    case "uniform":
+                        next += 1 + random.nextInt(maxGap * 8);
+                        break;
+                    case "sparse":
+                        next += 1 + random.nextInt(100000);
+                        break;
+                    default: // 大部分间隔很小，偶尔很大
+                        next += random.nextInt(64) == 0 ? 1 + random.nextInt(1 << 24) : 1 + random.nextInt(maxGap);
+                        break;
+                }
+                shaped.add(next);
+            }
+            startTime = System.nanoTime();
+            for (int r = 0; r < rounds; r++) {
+                PostingList.Cursor cursor = shaped.cursor();
+                for (int value = cursor.next(); value != PostingList.NO_MORE_IDS; value = cursor.next()) {
+                    checksum += value;
+                }
+            }
+            endTime = System.nanoTime();
+            System.out.println("Shape " + shape + ": " + String.format("%.2f", shaped.size() * 4.0 / shaped.sizeInBytes()) + "x, decode "
+                    + (endTime - startTime) / rounds / 1000.0 + " us, codecs: " + shaped.codecUsage());
+        }
+    }
+
     //并发搜索性能评估
     public void evaluateConcurrentSearchPerformance(int numQueries) throws InterruptedException {
         String searchMetadata = "ext";
@@ -227,6 +1390,56 @@ class TestFS {
         System.out.println("Average inverted index search time (range): " + (totalIndexRangeSearchTime[0] / numQueries) / 1000000.0 + " ms");
     }
 
+    // 多字段混合读写吞吐量：ext精确查询、size范围查询与写入线程并发运行
+    public void evaluateFieldConcurrency(int readersPerField, int numWriters, double durationSeconds) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder extSearches = new LongAdder();
+        LongAdder sizeSearches = new LongAdder();
+        LongAdder writes = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(readersPerField * 2 + numWriters);
+
+        for (int i = 0; i < readersPerField; i++) {
+            executor.execute(() -> {
+                while (running.get()) {
+                    invertedIndex.search("ext", "txt");
+                    extSearches.increment();
+                }
+            });
+            executor.execute(() -> {
+                while (running.get()) {
+                    invertedIndex.searchByRange("size", 600, 700);
+                    sizeSearches.increment();
+                }
+            });
+        }
+        for (int i = 0; i < numWriters; i++) {
+            executor.execute(() -> {
+                Random rand = new Random();
+                long[] blocks = new long[0];
+                while (running.get()) {
+                    long now = System.currentTimeMillis();
+                    INodeFile file = new INodeFile("bench_file", "owner9", 644, now, now, null, "bench_file", "jpg", 100 + rand.nextInt(10000), blocks);
+                    try {
+                        invertedIndex.addToIndex(file);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    invertedIndex.removeFromIndex(file);
+                    writes.add(2);
+                }
+            });
+        }
+
+        Thread.sleep((long) (durationSeconds * 1000));
+        running.set(false);
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        System.out.println("Concurrent ext search throughput: " + (long) (extSearches.sum() / durationSeconds) + " ops/s");
+        System.out.println("Concurrent size range search throughput: " + (long) (sizeSearches.sum() / durationSeconds) + " ops/s");
+        System.out.println("Concurrent index write throughput: " + (long) (writes.sum() / durationSeconds) + " ops/s");
+    }
+
     //并发读写性能评估
     public void testConcurrentReadWrite(int numReaders, int numWriters, int numAdders, double durationSeconds) throws InterruptedException, IOException {
         ExecutorService executor = Executors.newFixedThreadPool(numReaders + numWriters + numAdders);
@@ -244,10 +1457,7 @@ class TestFS {
                     String fileExtension = extensions[rand.nextInt(extensions.length)];
                     String owner = "owner1";
                     long fileSize = 100 + rand.nextInt(10000);
-                    List<String> blocks = new ArrayList<>();
-                    for (int k = 0; k < 3; k++) {
-                        blocks.add("block" + k);
-                    }
+                    long[] blocks = newBlocks(3);
                     boolean success = fsDirectory.updateFile(testFilePath, fileName, fileExtension, fileSize, blocks, invertedIndex);
                     if (success) {
                         System.out.println("Writer thread " + Thread.currentThread().getId() + " updated file " + testFilePath + " ext: " + fileExtension);
@@ -291,10 +1501,7 @@ class TestFS {
                     String fileExtension = "txt";
                     String owner = "owner1";
                     long fileSize = 100 + rand.nextInt(10000);
-                    List<String> blocks = new ArrayList<>();
-                    for (int k = 0; k < 3; k++) {
-                        blocks.add("block" + k);
-                    }
+                    long[] blocks = newBlocks(3);
                     boolean success;
                     success = fsDirectory.createFile(dirPath + "/" + fileName + "." + fileExtension, owner, 644, fileName, fileExtension, fileSize, blocks,invertedIndex);
                     if (success) {
@@ -320,7 +1527,7 @@ class TestFS {
         executor.awaitTermination(5, TimeUnit.SECONDS); //等待Executor服务终止运行
     }
 
-    public static void main(String[] args) throws InterruptedException, IOException {
+    public static void main(String[] args) throws Exception {
         TestFS testFS = new TestFS();
 
         // 内存使用评估
@@ -332,12 +1539,79 @@ class TestFS {
         // 范围查询性能测试
         testFS.evaluateRangeSearchPerformance("size", 600, 8000);
 
+        // 批量查询评估
+        testFS.evaluateBatchSearch(200, 20);
+
+        // 运行时注册字段测试
+        testFS.evaluateRegisteredField(IndexField.NAME_LENGTH, 10, 11);
+
+        // 最近修改文件查询性能测试
+        testFS.evaluateRecentSearchPerformance("mod", 10);
+        testFS.evaluateLateTimeWrites();
+
+        // 等深重分区评估
+        testFS.evaluateShardRebalance(200000, 200);
+
+        // 倒排链编码评估
+        testFS.evaluatePostingEncoding(1000000, 8);
+
+        // 查询结果缓存评估
+        testFS.evaluateQueryCache(200);
+
+        // 异步索引维护评估
+        testFS.evaluateAsyncIndexing(20000);
+
+        // 真实负载录制与重放
+        testFS.evaluateWorkloadReplay(20000, 10000, 2000);
+
+        // 轨迹和变更记录中特殊字符的转义
+        testFS.evaluateTraceEscaping();
+
+        // 分区命名空间的写入扩展性与scatter-gather查询延迟
+        testFS.evaluatePartitioning(20000, 4, 200, 2, 1, 2, 4, 8, 16);
+
+        // 只读副本的读扩展与复制延迟
+        testFS.evaluateReadReplicas(20000, 3, 3, 1000, 50, 3);
+
+        // 持续查询的写入开销与事件正确性
+        testFS.evaluateSubscriptions(20000, 20000, 0, 100, 1000, 10000);
+
+        // 倒排链存放在堆外时的堆占用与GC
+        testFS.evaluateOffHeapStorage(50000, 50000, 2000);
+
+        // 块ID的存储与块到文件的反向索引
+        testFS.evaluateBlockMap(2000000, 2000000);
+
+        // 查询结果按列投影路径和字段
+        testFS.evaluateProjection(100000);
+
+        // 在线构建索引期间的写延迟
+        testFS.evaluateOnlineIndexBuild(100000, 2000);
+
+        // 分层索引的写入吞吐量与段合并前后的查询延迟
+        testFS.evaluateTieredIndex(1000000, 8192, 2000, 20);
+
+        // 延迟删除的删除吞吐量与清除开销
+        testFS.evaluateLazyDeletes(500000, 2000, 0.05, 20);
+
+        // 按字段分组的聚合查询
+        testFS.evaluateAggregation(200000, 100000);
+
+        // 查询服务吞吐量与连接数
+        testFS.evaluateQueryServer(20000, 16, 3, 1, 4, 16);
+
         // 写入文件的时间消耗评估
         testFS.evaluateInsertPerformance(1000);
 
         // 并发查询性能测试
         testFS.evaluateConcurrentSearchPerformance(100);
 
+        // 多字段并发吞吐量测试
+        testFS.evaluateFieldConcurrency(4, 4, 5);
+
+        // 延迟与锁指标
+        testFS.evaluateMetrics(1000);
+
         // 并发读写测试
         testFS.testConcurrentReadWrite(5, 5, 5, 10);
     }
@@ -0,0 +1,178 @@
+package index;
+
+import utils.LockMetrics;
+import utils.StripedReadWriteLock;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+// 位图精确匹配索引：适用于权限等取值很少的字段，每个取值一个以文件ID为下标的位图
+class BitmapIndex implements ExactFieldIndex {
+    private static final int STRIPES = 16; // 锁分段数
+    private final Map<String, BitSet> bitmaps;
+    private final Map<String, Long> versions; // 各取值倒排的版本号，倒排删空后也保留，保证版本号只增不减
+    private final StripedReadWriteLock locks;
+    private final LongAdder idCount; // 以下计数器在分段写锁内按修改前后的差值增量维护
+    private final LongAdder payloadBytes; // 位图中已使用的字
+    private final LongAdder retainedBytes; // 位图对象及字数组容量，加上映射表节点和键
+
+    BitmapIndex(LockMetrics lockMetrics) {
+        this.bitmaps = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.locks = new StripedReadWriteLock(STRIPES, lockMetrics);
+        this.idCount = new LongAdder();
+        this.payloadBytes = new LongAdder();
+        this.retainedBytes = new LongAdder();
+    }
+
+    @Override
+    public void add(String value, int fileId) {
+        Lock lock = locks.get(value).writeLock();
+        lock.lock();
+        try {
+            BitSet bitmap = bitmaps.get(value);
+            if (bitmap == null) {
+                bitmap = new BitSet();
+                bitmaps.put(value, bitmap);
+                retainedBytes.add(entryBytes(value));
+            } else {
+                payloadBytes.add(-payloadBytes(bitmap));
+                retainedBytes.add(-retainedBytes(bitmap));
+            }
+            if (!bitmap.get(fileId)) {
+                idCount.increment();
+            }
+            bitmap.set(fileId);
+            payloadBytes.add(payloadBytes(bitmap));
+            retainedBytes.add(retainedBytes(bitmap));
+            versions.merge(value, 1L, Long::sum);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String value, int fileId) {
+        Lock lock = locks.get(value).writeLock();
+        lock.lock();
+        try {
+            BitSet bitmap = bitmaps.get(value);
+            if (bitmap != null) {
+                payloadBytes.add(-payloadBytes(bitmap));
+                retainedBytes.add(-retainedBytes(bitmap));
+                if (bitmap.get(fileId)) {
+                    idCount.decrement();
+                }
+                bitmap.clear(fileId);
+                if (bitmap.isEmpty()) {
+                    bitmaps.remove(value);
+                    retainedBytes.add(-entryBytes(value));
+                } else {
+                    payloadBytes.add(payloadBytes(bitmap));
+                    retainedBytes.add(retainedBytes(bitmap));
+                }
+                versions.merge(value, 1L, Long::sum);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> search(String value) {
+        Lock lock = locks.get(value).readLock();
+        lock.lock();
+        try {
+            BitSet bitmap = bitmaps.get(value);
+            if (bitmap == null) {
+                return Collections.emptyList();
+            }
+            List<Integer> results = new ArrayList<>(bitmap.cardinality());
+            for (int id = bitmap.nextSetBit(0); id >= 0; id = bitmap.nextSetBit(id + 1)) {
+                results.add(id);
+            }
+            return results;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int[] searchIds(String value) {
+        Lock lock = locks.get(value).readLock();
+        lock.lock();
+        try {
+            BitSet bitmap = bitmaps.get(value);
+            return bitmap == null ? new int[0] : bitmap.stream().toArray();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long version(String value) {
+        Long version = versions.get(value);
+        return version == null ? 0 : version;
+    }
+
+    @Override
+    public MemoryUsage memoryUsage() {
+        long payload = payloadBytes.sum();
+        return new MemoryUsage("bitmaps", idCount.sum(), payload, retainedBytes.sum() - payload);
+    }
+
+    @Override
+    public CodecUsage codecUsage() {
+        CodecUsage usage = new CodecUsage();
+        usage.add(PostingCodec.BITMAP, idCount.sum(), payloadBytes.sum());
+        return usage;
+    }
+
+    @Override
+    public List<MemoryUsage> largestValues(int n) {
+        PriorityQueue<MemoryUsage> top = new PriorityQueue<>(Comparator.comparingLong(MemoryUsage::getTotalBytes));
+        for (Map.Entry<String, BitSet> entry : bitmaps.entrySet()) {
+            Lock lock = locks.get(entry.getKey()).readLock();
+            lock.lock();
+            try {
+                BitSet bitmap = entry.getValue();
+                long payload = payloadBytes(bitmap);
+                top.add(new MemoryUsage(entry.getKey(), bitmap.cardinality(), payload, retainedBytes(bitmap) - payload + entryBytes(entry.getKey())));
+            } finally {
+                lock.unlock();
+            }
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<MemoryUsage> results = new ArrayList<>(top);
+        results.sort(Comparator.comparingLong(MemoryUsage::getTotalBytes).reversed());
+        return results;
+    }
+
+    // 到最高置位为止的字
+    private static long payloadBytes(BitSet bitmap) {
+        return (bitmap.length() + 63) / 64 * 8L;
+    }
+
+    // BitSet对象加字数组容量（size()为按位计的容量）
+    private static long retainedBytes(BitSet bitmap) {
+        return MemoryUsage.OBJECT_HEADER + 8 + MemoryUsage.ARRAY_HEADER + bitmap.size() / 8;
+    }
+
+    private static long entryBytes(String value) {
+        return MemoryUsage.HASH_ENTRY + MemoryUsage.stringBytes(value);
+    }
+
+    @Override
+    public int valueCount() {
+        return bitmaps.size();
+    }
+
+    @Override
+    public Set<String> values() {
+        return bitmaps.keySet();
+    }
+}
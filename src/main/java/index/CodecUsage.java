@@ -0,0 +1,53 @@
+package index;
+
+// 各编码方式下的id数与编码字节数，由遍历倒排链求得
+public class CodecUsage {
+    private final long[] ids = new long[PostingCodec.values().length];
+    private final long[] bytes = new long[PostingCodec.values().length];
+
+    void add(PostingCodec codec, long idCount, long byteCount) {
+        ids[codec.ordinal()] += idCount;
+        bytes[codec.ordinal()] += byteCount;
+    }
+
+    void addAll(CodecUsage other) {
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] += other.ids[i];
+            bytes[i] += other.bytes[i];
+        }
+    }
+
+    public long getIds(PostingCodec codec) {
+        return ids[codec.ordinal()];
+    }
+
+    public long getBytes(PostingCodec codec) {
+        return bytes[codec.ordinal()];
+    }
+
+    public long getTotalIds() {
+        long total = 0;
+        for (long count : ids) {
+            total += count;
+        }
+        return total;
+    }
+
+    // 只列出用到的编码：编码名=id数（占比）/字节数
+    @Override
+    public String toString() {
+        long total = Math.max(1, getTotalIds());
+        StringBuilder builder = new StringBuilder();
+        for (PostingCodec codec : PostingCodec.values()) {
+            if (ids[codec.ordinal()] == 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(codec.name().toLowerCase()).append('=').append(ids[codec.ordinal()])
+                    .append(String.format(" (%.1f%%)", ids[codec.ordinal()] * 100.0 / total)).append('/').append(bytes[codec.ordinal()]).append(" B");
+        }
+        return builder.length() == 0 ? "empty" : builder.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 已删除但尚未从倒排链中清除的文件id：位图供查询过滤，同时保存删除时各字段的取值，清除时据此定位倒排链
+// 写入在对象锁内进行；查询不加锁，先读volatile的count，保证看到count对应的那次写入之前设置的所有位
+// 先从倒排链中物理删除再清除标记，查询在任何时刻都不会看到已删除的id
+class DeletedIds {
+    private volatile long[] words = new long[16];
+    private volatile int count; // 已标记的id数
+    private final Map<Integer, IndexRecord> pending = new HashMap<>();
+
+    synchronized void add(IndexRecord record) {
+        int word = record.fileId >>> 6;
+        long[] current = words;
+        if (word >= current.length) {
+            current = Arrays.copyOf(current, Math.max(word + 1, current.length * 2));
+        }
+        if ((current[word] & (1L << record.fileId)) == 0) {
+            current[word] |= 1L << record.fileId;
+            pending.put(record.fileId, record);
+            words = current;
+            count++;
+        }
+    }
+
+    boolean contains(int id) {
+        if (count == 0) {
+            return false;
+        }
+        long[] current = words;
+        int word = id >>> 6;
+        return word < current.length && (current[word] & (1L << id)) != 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // 待清除的记录，调用方清除倒排后再调用clear；不移除，清除期间查询仍然过滤这些id
+    synchronized IndexRecord[] snapshot() {
+        return pending.values().toArray(new IndexRecord[0]);
+    }
+
+    // 取出单个id的记录用于立即清除，不存在时返回null
+    synchronized IndexRecord get(int id) {
+        return pending.get(id);
+    }
+
+    synchronized void clear(IndexRecord[] records) {
+        long[] current = words;
+        for (IndexRecord record : records) {
+            if (pending.remove(record.fileId) != null) {
+                current[record.fileId >>> 6] &= ~(1L << record.fileId);
+                count--;
+            }
+        }
+        words = current;
+    }
+
+    // 过滤升序id数组，没有需要过滤的id时返回原数组
+    int[] filter(int[] ids) {
+        if (count == 0) {
+            return ids;
+        }
+        int[] results = null;
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (contains(ids[i])) {
+                if (results == null) {
+                    results = Arrays.copyOf(ids, ids.length);
+                    n = i;
+                }
+            } else if (results != null) {
+                results[n++] = ids[i];
+            }
+        }
+        return results == null ? ids : Arrays.copyOf(results, n);
+    }
+
+    List<Integer> filter(List<Integer> ids) {
+        if (count == 0) {
+            return ids;
+        }
+        List<Integer> results = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            if (!contains(id)) {
+                results.add(id);
+            }
+        }
+        return results;
+    }
+}
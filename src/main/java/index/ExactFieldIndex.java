@@ -0,0 +1,40 @@
+package index;
+
+import java.util.List;
+import java.util.Set;
+
+// 字符串型元数据的精确匹配索引
+interface ExactFieldIndex {
+    void add(String value, int fileId);
+
+    void remove(String value, int fileId);
+
+    // 从一个取值的倒排中批量删除升序的ids，用于清除已标记删除的文件
+    default void removeAll(String value, int[] sortedIds, int count) {
+        for (int i = 0; i < count; i++) {
+            remove(value, sortedIds[i]);
+        }
+    }
+
+    List<Integer> search(String value);
+
+    // 升序的文件ID数组，批量查询直接在数组上求交，省去装箱
+    int[] searchIds(String value);
+
+    int valueCount();
+
+    // 当前有倒排的取值
+    Set<String> values();
+
+    // 取值对应倒排的版本号，每次修改后递增，用于查询缓存失效
+    long version(String value);
+
+    // 字段的内存占用，由写入时增量维护的计数器求得
+    MemoryUsage memoryUsage();
+
+    // 占用最大的n个取值
+    List<MemoryUsage> largestValues(int n);
+
+    // 各编码方式下的id数与字节数，遍历所有倒排
+    CodecUsage codecUsage();
+}
@@ -0,0 +1,106 @@
+package index;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 一个精确字段各取值的聚合：文件数以及大小、修改时间的和、最小值、最大值，随写入增量维护
+// 计数和求和可以精确地增减；删除的文件恰好是最小或最大值时标记失效，查询时按该取值的倒排和id列重新求最小、最大值
+// 同一取值的修改与重新计算都在ConcurrentHashMap的compute中进行，彼此串行
+// 写入先写id列、再修改倒排、最后更新聚合，重新计算时读到的倒排与id列一致
+class GroupAggregates {
+    private final ConcurrentHashMap<String, Group> groups;
+
+    GroupAggregates() {
+        this.groups = new ConcurrentHashMap<>();
+    }
+
+    void add(String value, long size, long modificationTime) {
+        groups.compute(value, (key, group) -> {
+            if (group == null) {
+                group = new Group();
+            }
+            group.add(size, modificationTime);
+            return group;
+        });
+    }
+
+    void remove(String value, long size, long modificationTime) {
+        groups.computeIfPresent(value, (key, group) -> {
+            group.remove(size, modificationTime);
+            return group.count == 0 ? null : group;
+        });
+    }
+
+    // 有文件的取值
+    Set<String> values() {
+        return groups.keySet();
+    }
+
+    // 取值当前的聚合，没有文件时返回null；ids为该取值倒排中未删除的文件，只在最小、最大值失效时读取
+    GroupStats stats(String value, ExactFieldIndex postings, DeletedIds deleted, LongColumn sizes, LongColumn modificationTimes) {
+        GroupStats[] result = new GroupStats[1];
+        groups.computeIfPresent(value, (key, group) -> {
+            if (group.stale) {
+                Group extremes = scan(deleted.filter(postings.searchIds(value)), sizes, modificationTimes);
+                group.minSize = extremes.minSize;
+                group.maxSize = extremes.maxSize;
+                group.minModificationTime = extremes.minModificationTime;
+                group.maxModificationTime = extremes.maxModificationTime;
+                // 倒排已修改而聚合尚未更新时两者的文件数不同，本次结果照常返回，但保留失效标记，下次查询重新计算
+                group.stale = extremes.count != group.count;
+            }
+            result[0] = group.toStats(value);
+            return group;
+        });
+        return result[0];
+    }
+
+    // 用倒排重新求得一个取值的聚合，由调用方保证期间没有写入
+    void load(String value, int[] ids, LongColumn sizes, LongColumn modificationTimes) {
+        if (ids.length > 0) {
+            groups.put(value, scan(ids, sizes, modificationTimes));
+        }
+    }
+
+    static Group scan(int[] ids, LongColumn sizes, LongColumn modificationTimes) {
+        Group group = new Group();
+        for (int id : ids) {
+            group.add(sizes.get(id), modificationTimes.get(id));
+        }
+        return group;
+    }
+
+    static final class Group {
+        long count;
+        long sumSize;
+        long minSize = Long.MAX_VALUE;
+        long maxSize = Long.MIN_VALUE;
+        long sumModificationTime;
+        long minModificationTime = Long.MAX_VALUE;
+        long maxModificationTime = Long.MIN_VALUE;
+        boolean stale; // 最小或最大值可能已被删除
+
+        void add(long size, long modificationTime) {
+            count++;
+            sumSize += size;
+            sumModificationTime += modificationTime;
+            minSize = Math.min(minSize, size);
+            maxSize = Math.max(maxSize, size);
+            minModificationTime = Math.min(minModificationTime, modificationTime);
+            maxModificationTime = Math.max(maxModificationTime, modificationTime);
+        }
+
+        void remove(long size, long modificationTime) {
+            count--;
+            sumSize -= size;
+            sumModificationTime -= modificationTime;
+            if (size == minSize || size == maxSize || modificationTime == minModificationTime || modificationTime == maxModificationTime) {
+                stale = true;
+            }
+        }
+
+        GroupStats toStats(String value) {
+            return new GroupStats(value, count, sumSize, minSize, maxSize, sumModificationTime, minModificationTime, maxModificationTime);
+        }
+    }
+}
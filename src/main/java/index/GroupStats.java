@@ -0,0 +1,62 @@
+package index;
+
+// 分组聚合的一行：分组字段取某个值的文件数，以及这些文件大小和修改时间的和、最小值、最大值
+public final class GroupStats {
+    private final String value;
+    private final long count;
+    private final long sumSize;
+    private final long minSize;
+    private final long maxSize;
+    private final long sumModificationTime;
+    private final long minModificationTime;
+    private final long maxModificationTime;
+
+    GroupStats(String value, long count, long sumSize, long minSize, long maxSize, long sumModificationTime, long minModificationTime, long maxModificationTime) {
+        this.value = value;
+        this.count = count;
+        this.sumSize = sumSize;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.sumModificationTime = sumModificationTime;
+        this.minModificationTime = minModificationTime;
+        this.maxModificationTime = maxModificationTime;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSumSize() {
+        return sumSize;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getSumModificationTime() {
+        return sumModificationTime;
+    }
+
+    public long getMinModificationTime() {
+        return minModificationTime;
+    }
+
+    public long getMaxModificationTime() {
+        return maxModificationTime;
+    }
+
+    @Override
+    public String toString() {
+        return value + ": count=" + count + ", size sum=" + sumSize + " min=" + minSize + " max=" + maxSize
+                + ", mod min=" + minModificationTime + " max=" + maxModificationTime;
+    }
+}
@@ -0,0 +1,22 @@
+package index;
+
+import java.util.AbstractList;
+
+// ID数组的只读列表视图，查询缓存和批量查询的多个调用方共享同一个数组
+final class IdList extends AbstractList<Integer> {
+    private final int[] ids;
+
+    IdList(int[] ids) {
+        this.ids = ids;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return ids[index];
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,136 @@
+package index;
+
+import FS.INodeFile;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// 在线构建：为一组字段新建存储，由构建线程扫描命名空间填充；扫描期间写入把对这些字段的增删按发生顺序记入旁路日志
+// 扫描读到的取值之后，该文件的每次变更都在日志中，按顺序重放后新存储与命名空间一致；
+// 扫描期间新建、且所在目录尚未扫描的文件既被扫描又被记入日志，因此所有存储的加入都必须幂等：倒排链、位图已有该id时不变，时间桶已有相同(时间, id)时不变
+// 扫描与重放都在构建线程上进行，新存储在发布前只有构建线程访问，日志本身由对象锁保护
+public class IndexBuild {
+    private final IndexField[] fields;
+    private final ExactFieldIndex[] exact; // 与fields一一对应，数值字段为null
+    private final RangeFieldIndex[] range; // 与fields一一对应，非数值字段为null
+    private final List<LogEntry> scannedEntries; // 扫描时只提取取值，扫描结束后按id升序加入，倒排链只做尾部追加
+    private List<LogEntry> log;
+    private volatile long scanned;
+    private volatile long logged;
+    private volatile long replayed;
+
+    IndexBuild(IndexField[] fields, ExactFieldIndex[] exact, RangeFieldIndex[] range) {
+        this.fields = fields;
+        this.exact = exact;
+        this.range = range;
+        this.scannedEntries = new ArrayList<>();
+        this.log = new ArrayList<>();
+    }
+
+    // 扫描到的文件，调用方持有命名空间读锁，取值在此刻提取
+    public void addScanned(INodeFile file) {
+        scannedEntries.add(new LogEntry(file.id, true, extract(file)));
+        scanned++;
+    }
+
+    // 扫描结束后调用，在重放日志之前把扫描到的取值按id升序加入新存储
+    public void loadScanned() {
+        scannedEntries.sort(Comparator.comparingInt(entry -> entry.fileId));
+        for (LogEntry entry : scannedEntries) {
+            for (int i = 0; i < fields.length; i++) {
+                apply(i, entry.fileId, entry.values[i], true);
+            }
+        }
+        scannedEntries.clear();
+    }
+
+    // 写入线程调用：在删除旧取值之前和加入新取值之后各记一次
+    synchronized void log(INodeFile file, boolean add) {
+        log.add(new LogEntry(file.id, add, extract(file)));
+        logged++;
+    }
+
+    private Object[] extract(INodeFile file) {
+        Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = InvertIndex.extract(fields[i], file);
+        }
+        return values;
+    }
+
+    // 重放当前积压的日志并返回条数；应用时不持有日志锁，写入可以继续追加
+    public int drain() {
+        List<LogEntry> batch;
+        synchronized (this) {
+            if (log.isEmpty()) {
+                return 0;
+            }
+            batch = log;
+            log = new ArrayList<>();
+        }
+        for (LogEntry entry : batch) {
+            for (int i = 0; i < fields.length; i++) {
+                apply(i, entry.fileId, entry.values[i], entry.add);
+            }
+        }
+        replayed += batch.size();
+        return batch.size();
+    }
+
+    public synchronized int pendingCount() {
+        return log.size();
+    }
+
+    private void apply(int i, int fileId, Object value, boolean add) {
+        if (range[i] != null) {
+            if (add) {
+                range[i].add((Long) value, fileId);
+            } else {
+                range[i].remove((Long) value, fileId);
+            }
+        } else if (value != null) {
+            if (add) {
+                exact[i].add((String) value, fileId);
+            } else {
+                exact[i].remove((String) value, fileId);
+            }
+        }
+    }
+
+    IndexField[] getFields() {
+        return fields;
+    }
+
+    ExactFieldIndex getExact(int i) {
+        return exact[i];
+    }
+
+    RangeFieldIndex getRange(int i) {
+        return range[i];
+    }
+
+    public long getScannedCount() {
+        return scanned;
+    }
+
+    public long getLoggedCount() {
+        return logged;
+    }
+
+    public long getReplayedCount() {
+        return replayed;
+    }
+
+    private static final class LogEntry {
+        final int fileId;
+        final boolean add;
+        final Object[] values;
+
+        LogEntry(int fileId, boolean add, Object[] values) {
+            this.fileId = fileId;
+            this.add = add;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package index;
+
+import FS.INodeFile;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+// 可注册的索引字段：字段名、索引类型以及从文件节点中提取值的方法
+public class IndexField {
+    public static final IndexField EXT = exact("ext", file -> file.fileExtension);
+    public static final IndexField OWNER = exact("owner", file -> file.owner);
+    public static final IndexField SIZE = range("size", file -> file.fileSize);
+    public static final IndexField CREATION = time("creation", file -> file.creationTime);
+    public static final IndexField MOD = time("mod", file -> file.modificationTime);
+    public static final IndexField PERMISSION = bitmap("permission", file -> String.valueOf(file.getPermission()));
+    public static final IndexField BLOCKS = range("blocks", INodeFile::getBlockCount);
+    public static final IndexField DEPTH = range("depth", INodeFile::getDepth);
+    public static final IndexField NAME_LENGTH = range("nameLength", file -> file.getName().length());
+    private static final IndexField[] BUILTIN = {EXT, OWNER, SIZE, CREATION, MOD, PERMISSION, BLOCKS, DEPTH, NAME_LENGTH};
+
+    private final String name;
+    private final IndexType type;
+    private final Function<INodeFile, String> valueExtractor; // EXACT/BITMAP
+    private final ToLongFunction<INodeFile> rangeExtractor; // RANGE/TIME
+
+    private IndexField(String name, IndexType type, Function<INodeFile, String> valueExtractor, ToLongFunction<INodeFile> rangeExtractor) {
+        this.name = name;
+        this.type = type;
+        this.valueExtractor = valueExtractor;
+        this.rangeExtractor = rangeExtractor;
+    }
+
+    public static IndexField exact(String name, Function<INodeFile, String> extractor) {
+        return new IndexField(name, IndexType.EXACT, extractor, null);
+    }
+
+    public static IndexField bitmap(String name, Function<INodeFile, String> extractor) {
+        return new IndexField(name, IndexType.BITMAP, extractor, null);
+    }
+
+    public static IndexField range(String name, ToLongFunction<INodeFile> extractor) {
+        return new IndexField(name, IndexType.RANGE, null, extractor);
+    }
+
+    public static IndexField time(String name, ToLongFunction<INodeFile> extractor) {
+        return new IndexField(name, IndexType.TIME, null, extractor);
+    }
+
+    // 按名字查找内置字段，不存在返回null
+    public static IndexField builtin(String name) {
+        for (IndexField field : BUILTIN) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public IndexType getType() {
+        return type;
+    }
+
+    public boolean isRange() {
+        return type == IndexType.RANGE || type == IndexType.TIME;
+    }
+
+    public String valueOf(INodeFile file) {
+        return isRange() ? String.valueOf(rangeExtractor.applyAsLong(file)) : valueExtractor.apply(file);
+    }
+
+    public long rangeValueOf(INodeFile file) {
+        return rangeExtractor.applyAsLong(file);
+    }
+}
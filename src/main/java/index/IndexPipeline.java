@@ -0,0 +1,226 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 异步索引维护：命名空间写操作只把字段快照放入有界队列，后台线程成批取出后应用到索引
+// 同一批内同一文件的多次变更合并为一次（删除+添加即为更新），取值未变的字段直接跳过
+// 每次提交分配递增的序号，查询可以等待索引追上某个序号以读到自己的写入
+// 队列满时提交方阻塞，形成反压
+// 应用失败的变更不会让序号停住，但会被记录：等待的序号不小于第一次失败的序号时awaitSequence抛出异常，
+// 索引此时已与命名空间不一致，需要重建
+public class IndexPipeline {
+    private static final long POLL_MILLIS = 100;
+
+    private final InvertIndex invertIndex;
+    private final BlockingQueue<Delta> queue;
+    private final int batchSize; // 每批最多应用的变更数
+    private final Object submitLock; // 保证序号顺序与入队顺序一致
+    private final Object progress; // 等待applied推进
+    private volatile long submitted; // 最后一次提交的序号
+    private volatile long applied; // 已应用到索引的最大序号
+    private volatile boolean closed;
+    private final LongAdder coalesced; // 被合并掉的变更数
+    private final LongAdder skippedFields; // 取值未变而跳过的字段更新数
+    private final LongAdder batches;
+    private final LongAdder failed; // 应用失败的（合并后的）变更数
+    private volatile long firstFailedSequence = Long.MAX_VALUE; // 第一个应用失败的变更的序号
+    private volatile RuntimeException failure; // 第一次失败的异常
+    private final Thread applier;
+
+    IndexPipeline(InvertIndex invertIndex, int capacity, int batchSize) {
+        this.invertIndex = invertIndex;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.submitLock = new Object();
+        this.progress = new Object();
+        this.coalesced = new LongAdder();
+        this.skippedFields = new LongAdder();
+        this.batches = new LongAdder();
+        this.failed = new LongAdder();
+        this.applier = new Thread(this::runApplier, "index-pipeline");
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    // 提交一次变更，before为null表示新增，after为null表示删除；返回该变更的序号
+    long submit(int fileId, IndexRecord before, IndexRecord after) {
+        synchronized (submitLock) {
+            if (closed) { // 已关闭：等队列排空后同步应用，保证同一文件的变更按序生效
+                awaitSequence(submitted);
+                invertIndex.apply(fileId, before, after);
+                return submitted;
+            }
+            long sequence = submitted + 1;
+            try {
+                queue.put(new Delta(sequence, fileId, before, after));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            submitted = sequence;
+            return sequence;
+        }
+    }
+
+    // 等待索引应用到sequence，超时返回false
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (progress) {
+            while (applied < sequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(progress, remaining);
+            }
+        }
+        checkFailure(sequence);
+        return true;
+    }
+
+    // 不限时等待，被中断时抛出RuntimeException
+    public void awaitSequence(long sequence) {
+        synchronized (progress) {
+            while (applied < sequence) {
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        checkFailure(sequence);
+    }
+
+    // 不晚于sequence的变更中有应用失败的，说明读到的索引缺少这次写入
+    private void checkFailure(long sequence) {
+        if (firstFailedSequence <= sequence) {
+            throw new IllegalStateException("Index update failed at sequence " + firstFailedSequence + ", " + failed.sum() + " updates not applied", failure);
+        }
+    }
+
+    // 等待已提交的变更全部应用
+    public void flush() {
+        awaitSequence(submitted);
+    }
+
+    // 停止接收新的异步变更，等待后台线程排空队列后退出
+    void close() {
+        synchronized (submitLock) {
+            closed = true;
+        }
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public long getSubmittedSequence() {
+        return submitted;
+    }
+
+    public long getAppliedSequence() {
+        return applied;
+    }
+
+    public long getLag() {
+        return submitted - applied;
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getSkippedFieldCount() {
+        return skippedFields.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    // 第一次应用失败的异常，没有失败时为null
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    private void runApplier() {
+        List<Delta> batch = new ArrayList<>(batchSize);
+        while (true) {
+            Delta first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed && queue.isEmpty()) { // closed在最后一次入队之后才置位，此时队列为空即已排空
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            applyBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void applyBatch(List<Delta> batch) {
+        // 按文件合并：保留第一次变更前的快照和最后一次变更后的快照
+        Map<Integer, Delta> merged = new LinkedHashMap<>();
+        for (Delta delta : batch) {
+            Delta previous = merged.get(delta.fileId);
+            if (previous == null) {
+                merged.put(delta.fileId, delta);
+            } else {
+                previous.after = delta.after;
+                coalesced.increment();
+            }
+        }
+        for (Delta delta : merged.values()) {
+            try {
+                skippedFields.add(invertIndex.apply(delta.fileId, delta.before, delta.after));
+            } catch (RuntimeException e) { // 单个文件应用失败不影响后续变更，记录后由awaitSequence报告
+                failed.increment();
+                if (firstFailedSequence == Long.MAX_VALUE) {
+                    failure = e;
+                    firstFailedSequence = delta.sequence;
+                }
+            }
+        }
+        batches.increment();
+        applied = batch.get(batch.size() - 1).sequence;
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    private static final class Delta {
+        final long sequence;
+        final int fileId;
+        final IndexRecord before;
+        IndexRecord after;
+
+        Delta(long sequence, int fileId, IndexRecord before, IndexRecord after) {
+            this.sequence = sequence;
+            this.fileId = fileId;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
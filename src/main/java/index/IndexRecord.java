@@ -0,0 +1,15 @@
+package index;
+
+// 文件在某一时刻各索引字段取值的快照：在命名空间锁内生成，由IndexPipeline在后台应用
+// fields取自生成时的schema；schema只追加不删除，因此同一字段在新旧快照中的下标相同
+final class IndexRecord {
+    final int fileId;
+    final IndexField[] fields;
+    final Object[] values; // 精确字段为String，范围字段为Long
+
+    IndexRecord(int fileId, IndexField[] fields, Object[] values) {
+        this.fileId = fileId;
+        this.fields = fields;
+        this.values = values;
+    }
+}
@@ -0,0 +1,9 @@
+package index;
+
+// 索引类型
+public enum IndexType {
+    EXACT, // 精确匹配，倒排链
+    BITMAP, // 精确匹配，低基数字段使用位图
+    RANGE, // 范围查询，范围分片
+    TIME // 范围查询，时间分区
+}
@@ -1,195 +1,1052 @@
 package index;
 
 import FS.INodeFile;
-import utils.Varint;
+import utils.LatencyHistogram;
+import utils.LockMetrics;
+import utils.MetricsRegistry;
+import utils.OffHeapArena;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
+// 倒排索引：没有全局锁，每个字段自行控制并发（精确索引按取值分段加锁，范围索引按分片加锁），
+// 一个字段上的写入不会阻塞其他字段的查询
+// 各公开操作的延迟、精确索引分段锁的等待/持有时间以及各字段规模记录在metrics中，可通过JMX查看
 public class InvertIndex {
     private static final int SHARD_SIZE_THRESHOLD = 1000; // 分片大小阈值
-    private Map<String, Map<String, byte[]>> index; // 基本倒排索引
-    private Map<String, List<RangeShard>> rangeIndex; // 范围倒排索引
-    private final ReadWriteLock lock; // 读写锁
+    private static final int SHARD_ID_THRESHOLD = 16 * SHARD_SIZE_THRESHOLD; // 分片倒排量阈值
+    private volatile Map<String, IndexField> schema; // 已注册的索引字段，写时复制
+    private volatile IndexField[] fields; // schema的数组形式，按注册顺序，用于生成快照
+    private final Set<String> building; // 已注册但尚未回填完成的字段
+    private final Map<String, ExactFieldIndex> index; // 基本倒排索引
+    private final Map<String, RangeFieldIndex> rangeIndex; // 范围倒排索引
+    private volatile IndexPipeline pipeline; // 非空时写入经由后台线程异步应用
+    private volatile IndexBuild[] builds; // 进行中的在线构建，写时复制；写入同时记入各构建的旁路日志
+    private volatile QueryCache cache; // 非空时查询先查结果缓存
+    private final SubscriptionIndex subscriptions; // 持续查询，在写入时同步匹配
+    private final DeletedIds deleted; // 延迟删除时已删除、尚未从倒排链清除的文件，查询结果按它过滤
+    private volatile double purgeThreshold; // 大于0时开启延迟删除，已删除比例达到该值时在后台清除
+    private ExecutorService purger;
+    private final AtomicBoolean purgeScheduled;
+    private final Object purgeLock; // 清除与单个id的立即清除互斥
+    private final LongAdder fileCount; // 索引中未删除的文件数
+    private final Map<String, GroupAggregates> aggregates; // 各精确字段按取值分组的聚合，随写入增量维护
+    private final LongColumn sizes; // 按文件id存放的大小和修改时间，用于带过滤条件的聚合和重新求最小、最大值
+    private final LongColumn modificationTimes;
+    private final OffHeapArena arena; // 非空时精确字段和范围字段的倒排链存放在堆外
+    private final int memtableLimit; // 大于0时精确字段使用分层存储，为增量冻结成段的记录数
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram addLatency;
+    private final LatencyHistogram backfillLatency;
+    private final LatencyHistogram removeLatency;
+    private final LatencyHistogram searchLatency;
+    private final LatencyHistogram rangeSearchLatency;
+    private final LatencyHistogram recentSearchLatency;
+    private final LatencyHistogram registerLatency;
+    private final LatencyHistogram batchSearchLatency;
+    private final LatencyHistogram purgeLatency;
+    private final LatencyHistogram aggregateLatency;
+    private final LongAdder batchPredicates; // 批量查询实际求值的谓词数
+    private final LongAdder batchPredicateReferences; // 批量查询中出现的谓词总数
 
     public InvertIndex() {
-        index = new HashMap<>();
-        rangeIndex = new HashMap<>();
-        lock = new ReentrantReadWriteLock();
-        index.put("ext", new HashMap<>());
-        index.put("owner", new HashMap<>());
-        rangeIndex.put("size", new ArrayList<>());
-        rangeIndex.put("creation", new ArrayList<>());
-        rangeIndex.put("mod", new ArrayList<>());
+        this(null);
     }
 
-    // 添加文件到索引
+    // 倒排链存放在arena分配的堆外内存中，减少堆大小和GC停顿；时间字段和位图字段仍在堆上
+    public InvertIndex(OffHeapArena arena) {
+        this(arena, 0);
+    }
+
+    // 分层（LSM）存储：精确字段的写入进入内存增量，累计memtableLimit条后冻结为不可变段，查询归并各段，
+    // 段由SegmentCompactor在后台合并；长倒排链中间的插入删除不再重写其后的所有块。范围字段与时间字段不变
+    public InvertIndex(int memtableLimit) {
+        this(null, memtableLimit);
+    }
+
+    private InvertIndex(OffHeapArena arena, int memtableLimit) {
+        this.arena = arena;
+        this.memtableLimit = memtableLimit;
+        metrics = new MetricsRegistry();
+        addLatency = metrics.histogram("addToIndex");
+        backfillLatency = metrics.histogram("addToIndexBatch");
+        removeLatency = metrics.histogram("removeFromIndex");
+        searchLatency = metrics.histogram("search");
+        rangeSearchLatency = metrics.histogram("searchByRange");
+        recentSearchLatency = metrics.histogram("searchRecent");
+        registerLatency = metrics.histogram("registerField");
+        batchSearchLatency = metrics.histogram("searchBatch");
+        purgeLatency = metrics.histogram("purgeDeleted");
+        aggregateLatency = metrics.histogram("aggregate");
+        subscriptions = new SubscriptionIndex();
+        metrics.gauge("subscriptions", subscriptions::size);
+        metrics.gauge("subscriptions.candidates", subscriptions::getCandidateCount);
+        metrics.gauge("subscriptions.published", subscriptions::getPublishedCount);
+        metrics.gauge("subscriptions.dropped", subscriptions::getDroppedCount);
+        deleted = new DeletedIds();
+        purgeScheduled = new AtomicBoolean();
+        purgeLock = new Object();
+        fileCount = new LongAdder();
+        metrics.gauge("deleted.pending", deleted::size);
+        aggregates = new ConcurrentHashMap<>();
+        sizes = new LongColumn();
+        modificationTimes = new LongColumn();
+        metrics.gauge("aggregate.columnBytes", () -> sizes.retainedBytes() + modificationTimes.retainedBytes());
+        batchPredicates = new LongAdder();
+        batchPredicateReferences = new LongAdder();
+        metrics.gauge("batch.sharedPredicates", () -> batchPredicateReferences.sum() - batchPredicates.sum());
+        metrics.gauge("fields", () -> schema.size());
+        if (arena != null) {
+            metrics.gauge("offHeap.reservedBytes", arena::getReservedBytes);
+            metrics.gauge("offHeap.allocatedBytes", arena::getAllocatedBytes);
+        }
+        metrics.gauge("pipeline.lag", () -> {
+            IndexPipeline current = pipeline;
+            return current == null ? 0 : current.getLag();
+        });
+        metrics.gauge("pipeline.failed", () -> {
+            IndexPipeline current = pipeline;
+            return current == null ? 0 : current.getFailedCount();
+        });
+        metrics.gauge("cache.entries", () -> {
+            QueryCache current = cache;
+            return current == null ? 0 : current.size();
+        });
+        metrics.gauge("cache.hitRate", () -> {
+            QueryCache current = cache;
+            return current == null ? 0 : current.getHitRate();
+        });
+        schema = new LinkedHashMap<>();
+        fields = new IndexField[0];
+        builds = new IndexBuild[0];
+        building = ConcurrentHashMap.newKeySet();
+        index = new ConcurrentHashMap<>();
+        rangeIndex = new ConcurrentHashMap<>();
+        registerField(IndexField.EXT);
+        registerField(IndexField.OWNER);
+        registerField(IndexField.SIZE);
+        registerField(IndexField.CREATION); // 时间近似单调递增，使用时间分区索引
+        registerField(IndexField.MOD);
+    }
+
+    // 注册索引字段，已存在同名字段返回false；已有文件需要通过FSDirectory.registerIndexField回填
+    public boolean registerField(IndexField field) {
+        return registerField(field, true);
+    }
+
+    // ready为false时字段在回填完成前不对查询可见（isIndexed返回false），写入照常维护
+    public synchronized boolean registerField(IndexField field, boolean ready) {
+        long start = System.nanoTime();
+        try {
+            String key = field.getName();
+            if (schema.containsKey(key)) {
+                return false;
+            }
+            if (!ready) {
+                building.add(key);
+            }
+            install(field, field.isRange() ? null : newExactIndex(field), field.isRange() ? newRangeIndex(field) : null);
+            return true;
+        } finally {
+            registerLatency.recordSince(start);
+        }
+    }
+
+    private ExactFieldIndex newExactIndex(IndexField field) {
+        LockMetrics lockMetrics = new LockMetrics(metrics, "lock." + field.getName());
+        if (field.getType() == IndexType.BITMAP) {
+            return new BitmapIndex(lockMetrics);
+        }
+        return memtableLimit > 0 ? new TieredPostingIndex(memtableLimit) : new PostingIndex(lockMetrics, arena);
+    }
+
+    private RangeFieldIndex newRangeIndex(IndexField field) {
+        return field.getType() == IndexType.TIME ? new TimeIndex() : new RangeIndex(SHARD_SIZE_THRESHOLD, SHARD_ID_THRESHOLD, arena);
+    }
+
+    // 发布字段的存储，替换同名字段原有的存储；新字段先建好存储再发布新的schema
+    private void install(IndexField field, ExactFieldIndex exact, RangeFieldIndex shards) {
+        String key = field.getName();
+        if (field.isRange()) {
+            rangeIndex.put(key, shards);
+            metrics.gauge(key + ".shards", shards::shardCount);
+        } else {
+            aggregates.putIfAbsent(key, new GroupAggregates());
+            index.put(key, exact);
+            metrics.gauge(key + ".values", exact::valueCount);
+            if (exact instanceof TieredPostingIndex) {
+                metrics.gauge(key + ".segments", ((TieredPostingIndex) exact)::segmentCount);
+            }
+        }
+        metrics.gauge(key + ".bytes", () -> getMemoryUsage(key).getTotalBytes());
+        if (schema.get(key) != field) {
+            Map<String, IndexField> newSchema = new LinkedHashMap<>(schema);
+            newSchema.put(key, field);
+            schema = newSchema;
+            fields = newSchema.values().toArray(new IndexField[0]);
+        }
+    }
+
+    // 开始在线构建：为fields新建存储，之后的写入同时记入构建的旁路日志；发布前查询仍使用原有存储，新字段不可查询
+    // 由FSDirectory.registerIndexFieldOnline/rebuildIndexOnline驱动
+    public synchronized IndexBuild beginBuild(List<IndexField> buildFields) {
+        IndexField[] resolved = buildFields.toArray(new IndexField[0]);
+        ExactFieldIndex[] exact = new ExactFieldIndex[resolved.length];
+        RangeFieldIndex[] shards = new RangeFieldIndex[resolved.length];
+        for (int i = 0; i < resolved.length; i++) {
+            if (resolved[i].isRange()) {
+                shards[i] = newRangeIndex(resolved[i]);
+            } else {
+                exact[i] = newExactIndex(resolved[i]);
+            }
+        }
+        IndexBuild build = new IndexBuild(resolved, exact, shards);
+        IndexBuild[] next = Arrays.copyOf(builds, builds.length + 1);
+        next[builds.length] = build;
+        builds = next;
+        return build;
+    }
+
+    // 切换到构建好的存储：调用方需保证期间没有写入（FSDirectory在命名空间写锁内调用）且旁路日志已排空
+    // 先等异步维护把已提交的变更应用到原有存储，避免之后再落到新存储上
+    // 被替换的存储交给GC；使用堆外arena时其倒排链不归还，可能仍有查询在读取
+    public synchronized void publishBuild(IndexBuild build) {
+        if (build.pendingCount() > 0) {
+            throw new IllegalStateException("Side log not drained: " + build.pendingCount() + " entries");
+        }
+        awaitSequence(lastSubmittedSequence());
+        IndexField[] buildFields = build.getFields();
+        for (int i = 0; i < buildFields.length; i++) {
+            boolean aggregated = aggregates.containsKey(buildFields[i].getName());
+            install(buildFields[i], build.getExact(i), build.getRange(i));
+            if (!buildFields[i].isRange() && !aggregated) { // 新字段的聚合由构建好的倒排求得，重建的字段沿用增量维护的聚合
+                loadAggregates(buildFields[i].getName(), build.getExact(i));
+            }
+            building.remove(buildFields[i].getName());
+        }
+        endBuild(build);
+        QueryCache current = cache;
+        if (current != null) {
+            current.clear(); // 新存储的版本号从头计数，旧的缓存结果可能以相同版本号命中
+        }
+    }
+
+    // 停止记录旁路日志；构建失败时调用，已发布或已结束的构建直接返回
+    public synchronized void endBuild(IndexBuild build) {
+        List<IndexBuild> remaining = new ArrayList<>(Arrays.asList(builds));
+        if (remaining.remove(build)) {
+            builds = remaining.toArray(new IndexBuild[0]);
+        }
+    }
+
+    // 回填完成，字段对查询可见
+    public void setFieldReady(String key) {
+        building.remove(key);
+    }
+
+    public boolean isIndexed(String key) {
+        return schema.containsKey(key) && !building.contains(key);
+    }
+
+    public List<IndexField> getFields() {
+        return new ArrayList<>(schema.values());
+    }
+
+    // 按名字查找字段定义，包括回填中和在线构建中尚未对查询可见的字段，供查询回退到DFS时使用；未知字段返回null
+    public IndexField findField(String key) {
+        IndexField field = schema.get(key);
+        if (field != null) {
+            return field;
+        }
+        for (IndexBuild build : builds) {
+            for (IndexField buildField : build.getFields()) {
+                if (buildField.getName().equals(key)) {
+                    return buildField;
+                }
+            }
+        }
+        return null;
+    }
+
+    // 添加文件到索引；开启异步维护时只生成快照并入队
+    // 订阅事件不经过异步队列，在调用线程上按文件的当前取值匹配
     public void addToIndex(INodeFile file) throws IOException {
-        lock.writeLock().lock();
+        if (deleted.contains(file.id)) { // 同一id被重新加入：先清除删除前的取值
+            IndexRecord record = deleted.get(file.id);
+            if (record != null) {
+                synchronized (purgeLock) {
+                    purge(new IndexRecord[]{record});
+                }
+            }
+        }
+        fileCount.increment();
+        indexValues(file);
+        if (subscriptions.size() > 0) {
+            subscriptions.added(file);
+        }
+    }
+
+    private void indexValues(INodeFile file) {
+        long start = System.nanoTime();
         try {
-            addToIndex("ext", file.fileExtension, file.id);
-            addToIndex("owner", file.owner, file.id);
-            addToRangeIndex("size", file.fileSize, file.id);
-            addToRangeIndex("creation", file.creationTime, file.id);
-            addToRangeIndex("mod", file.modificationTime, file.id);
+            for (IndexBuild build : builds) {
+                build.log(file, true);
+            }
+            IndexPipeline current = pipeline;
+            if (current != null) {
+                current.submit(file.id, null, snapshot(file));
+                return;
+            }
+            sizes.set(file.id, IndexField.SIZE.rangeValueOf(file)); // 先写id列再加入倒排，重新求最小、最大值时不会读到旧值
+            modificationTimes.set(file.id, IndexField.MOD.rangeValueOf(file));
+            for (IndexField field : schema.values()) {
+                addValue(field, file.id, extract(field, file));
+            }
+            aggregate(file, true);
         } finally {
-            lock.writeLock().unlock();
+            addLatency.recordSince(start);
+        }
+    }
+
+    // 只把一批文件的某个字段加入索引，用于新注册字段的回填；按id升序加入时倒排链只做尾部追加
+    public void addToIndex(IndexField field, List<INodeFile> files) {
+        long start = System.nanoTime();
+        GroupAggregates groups = aggregates.get(field.getName());
+        for (INodeFile file : files) {
+            Object value = extract(field, file);
+            addValue(field, file.id, value);
+            if (groups != null && value != null) {
+                groups.add((String) value, IndexField.SIZE.rangeValueOf(file), IndexField.MOD.rangeValueOf(file));
+            }
         }
+        backfillLatency.recordSince(start);
     }
 
     // 从索引中删除文件
+    // 开启延迟删除时只在位图中标记，不修改倒排链
     public void removeFromIndex(INodeFile file) {
-        lock.writeLock().lock();
+        if (subscriptions.size() > 0) {
+            subscriptions.removed(file);
+        }
+        fileCount.decrement();
+        double threshold = purgeThreshold;
+        if (threshold > 0 && pipeline == null) {
+            markDeleted(file, threshold);
+        } else {
+            unindexValues(file);
+        }
+    }
+
+    private void markDeleted(INodeFile file, double threshold) {
+        long start = System.nanoTime();
         try {
-            removeFromIndex("ext", file.fileExtension, file.id);
-            removeFromIndex("owner", file.owner, file.id);
-            removeFromRangeIndex("size", file.fileSize, file.id);
-            removeFromRangeIndex("creation", file.creationTime, file.id);
-            removeFromRangeIndex("mod", file.modificationTime, file.id);
+            for (IndexBuild build : builds) {
+                build.log(file, false);
+            }
+            IndexRecord record = snapshot(file);
+            deleted.add(record);
+            aggregate(record, false);
+            int pending = deleted.size();
+            if (pending >= threshold * (fileCount.sum() + pending) && purgeScheduled.compareAndSet(false, true)) {
+                schedulePurge();
+            }
         } finally {
-            lock.writeLock().unlock();
+            removeLatency.recordSince(start);
         }
     }
 
-    // 添加文件到基本索引
-    private void addToIndex(String key, String value, int fileId) throws IOException {
-        Map<String, byte[]> subIndex = index.get(key);
-        byte[] existing = subIndex.get(value); // 获取当前值对应的文件ID列表(byte类型）
-        ByteArrayOutputStream out = new ByteArrayOutputStream(); // 创建字节输出流
-        if (existing != null) {
-            out.write(existing); // 将已有文件ID列表写入字节输出流
+    private synchronized void schedulePurge() {
+        if (purger == null) {
+            purgeScheduled.set(false);
+            return;
         }
-        Varint.writeUnsignedVarInt(fileId, out); // 将新文件ID写入字节输出流
-        subIndex.put(value, out.toByteArray()); // 将更新后的文件ID列表写入索引
+        purger.execute(() -> {
+            try {
+                purgeDeleted();
+            } finally {
+                purgeScheduled.set(false);
+            }
+        });
     }
 
-    // 从索引中删除文件
-    private void removeFromIndex(String key, String value, int fileId) {
-        Map<String, byte[]> subIndex = index.get(key);
-        byte[] existing = subIndex.get(value);
-        if (existing != null) {
-            List<Integer> ids = decodeVarint(existing); // 将已有文件ID列表转换为整数列表
-            ids.remove((Integer) fileId); // 删除指定文件ID
-            subIndex.put(value, encodeVarint(ids)); // 将更新后的文件ID列表写入索引
+    // 延迟删除：删除文件只在位图中标记，查询结果按位图过滤；已删除的文件占比达到purgeThreshold时，
+    // 后台线程把它们按(字段, 取值)分组，每条倒排链只重建一次。异步维护开启期间删除仍由后台线程逐个应用
+    public synchronized void enableLazyDeletes(double purgeThreshold) {
+        if (purgeThreshold <= 0 || purgeThreshold > 1) {
+            throw new IllegalArgumentException("Purge threshold must be in (0, 1]: " + purgeThreshold);
         }
+        if (purger == null) {
+            purger = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "posting-purger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.purgeThreshold = purgeThreshold;
     }
 
-    //解码
-    private List<Integer> decodeVarint(byte[] bytes) {
-        List<Integer> ids = new ArrayList<>();
-        int[] offset = {0};
-        while (offset[0] < bytes.length) {
-            ids.add(Varint.readUnsignedVarInt(bytes, offset));
+    // 关闭延迟删除并立即清除所有已标记的文件
+    public void disableLazyDeletes() {
+        ExecutorService current;
+        synchronized (this) {
+            purgeThreshold = 0;
+            current = purger;
+            purger = null;
+        }
+        if (current != null) {
+            current.shutdown();
+            try {
+                current.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
-        return ids;
+        purgeDeleted();
     }
 
-    private byte[] encodeVarint(List<Integer> ids) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    // 从倒排链中清除所有已标记删除的文件，返回清除的文件数
+    public int purgeDeleted() {
+        long start = System.nanoTime();
         try {
-            for (int id : ids) {
-                Varint.writeUnsignedVarInt(id, out);
+            synchronized (purgeLock) {
+                IndexRecord[] records = deleted.snapshot();
+                purge(records);
+                return records.length;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        } finally {
+            purgeLatency.recordSince(start);
         }
-        return out.toByteArray();// ByteArrayOutputStream->字节数组
     }
 
-    private void addToRangeIndex(String key, long value, int fileId) {
-        List<RangeShard> shards = rangeIndex.get(key);
-        for (RangeShard shard : shards) { //遍历分片 存在则添加分片
-            if (shard.contains(value)) {
-                shard.add(value, fileId);
-                if (shard.getSize() > SHARD_SIZE_THRESHOLD) { //片的大小大于阈值则分片
-                    RangeShard newShard = shard.split();
-                    shards.add(newShard);
+    // 持有purgeLock调用：按id升序分组，每个(字段, 取值)批量删除一次，之后才清除标记
+    private void purge(IndexRecord[] records) {
+        Arrays.sort(records, Comparator.comparingInt(record -> record.fileId));
+        Map<IndexField, Map<Object, List<Integer>>> groups = new HashMap<>();
+        for (IndexRecord record : records) {
+            for (int i = 0; i < record.fields.length; i++) {
+                if (record.values[i] != null) {
+                    groups.computeIfAbsent(record.fields[i], key -> new HashMap<>())
+                            .computeIfAbsent(record.values[i], key -> new ArrayList<>()).add(record.fileId);
                 }
-                return;
             }
         }
-        // 不存在范围内则分片
-        RangeShard newShard = new RangeShard(value, value + SHARD_SIZE_THRESHOLD);
-        newShard.add(value, fileId);
-        shards.add(newShard);
-        mergeShards(shards); // 合并分片
+        for (Map.Entry<IndexField, Map<Object, List<Integer>>> fieldGroup : groups.entrySet()) {
+            IndexField field = fieldGroup.getKey();
+            for (Map.Entry<Object, List<Integer>> group : fieldGroup.getValue().entrySet()) {
+                int[] ids = new int[group.getValue().size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = group.getValue().get(i);
+                }
+                if (field.isRange()) {
+                    rangeIndex.get(field.getName()).removeAll((Long) group.getKey(), ids, ids.length);
+                } else {
+                    index.get(field.getName()).removeAll((String) group.getKey(), ids, ids.length);
+                }
+            }
+        }
+        deleted.clear(records);
     }
 
-    private void removeFromRangeIndex(String key, long value, int fileId) {
-        List<RangeShard> shards = rangeIndex.get(key);
-        for (RangeShard shard : shards) {
-            if (shard.contains(value)) {
-                shard.remove(value, fileId);
-                return;
+    public int getDeletedCount() {
+        return deleted.size();
+    }
+
+    // 更新文件：删除旧取值，update修改inode后加入新取值；异步维护时两次提交在应用时合并为一次更新
+    // 订阅方收到一次MODIFIED，而不是REMOVED加ADDED
+    public void updateIndex(INodeFile file, Runnable update) {
+        List<Subscription> before = subscriptions.size() > 0 ? subscriptions.match(file) : Collections.<Subscription>emptyList();
+        unindexValues(file);
+        update.run();
+        indexValues(file);
+        if (!before.isEmpty() || subscriptions.size() > 0) {
+            subscriptions.updated(file, before);
+        }
+    }
+
+    // 注册持续查询：query为null时匹配路径下的所有文件，path为null或"/"表示整个命名空间
+    // 只登记之后的变更；需要与当前结果衔接时应在排斥写操作的情况下订阅，见FSDirectory.subscribe
+    public Subscription subscribe(Query query, String path, int capacity) {
+        IndexField[] resolved = new IndexField[query == null ? 0 : query.getPredicates().size()];
+        for (int i = 0; i < resolved.length; i++) {
+            Query.Predicate predicate = query.getPredicates().get(i);
+            resolved[i] = getField(predicate.getField());
+            if (predicate.isRange() && !resolved[i].isRange()) {
+                throw new IllegalArgumentException("Not a range field: " + predicate.getField());
             }
         }
+        List<String> components = new ArrayList<>();
+        for (String name : path == null ? new String[0] : path.split("/")) {
+            if (!name.isEmpty()) {
+                components.add(name);
+            }
+        }
+        return subscriptions.add(query, resolved, components.toArray(new String[0]), capacity);
     }
 
-    private void mergeShards(List<RangeShard> shards) {
-        shards.sort(Comparator.comparingLong(RangeShard::getStart)); //片升序
-        List<RangeShard> mergedShards = new ArrayList<>();
-        RangeShard current = null;
-        for (RangeShard shard : shards) {
-            if (current == null) {
-                current = shard;
-            } else if (current.getEnd() + 1 >= shard.getStart()) { //当前片和下一个片重叠
-                current.merge(shard);
-            } else {
-                mergedShards.add(current);
-                current = shard;
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    // 写入时完整求值过的订阅总数
+    public long getSubscriptionCandidateCount() {
+        return subscriptions.getCandidateCount();
+    }
+
+    private void unindexValues(INodeFile file) {
+        long start = System.nanoTime();
+        try {
+            for (IndexBuild build : builds) {
+                build.log(file, false);
+            }
+            IndexPipeline current = pipeline;
+            if (current != null) {
+                current.submit(file.id, snapshot(file), null);
+                return;
             }
+            for (IndexField field : schema.values()) {
+                removeValue(field, file.id, extract(field, file));
+            }
+            aggregate(file, false);
+        } finally {
+            removeLatency.recordSince(start);
         }
+    }
+
+    // 开启异步索引维护，capacity为队列容量，batchSize为每批最多应用的变更数
+    public synchronized IndexPipeline startPipeline(int capacity, int batchSize) {
+        if (pipeline == null) {
+            pipeline = new IndexPipeline(this, capacity, batchSize);
+        }
+        return pipeline;
+    }
+
+    // 排空队列后恢复同步维护
+    public synchronized void stopPipeline() {
+        IndexPipeline current = pipeline;
+        if (current != null) {
+            current.close();
+            pipeline = null;
+        }
+    }
+
+    // 最后一次提交的变更序号，同步维护时为0
+    public long lastSubmittedSequence() {
+        IndexPipeline current = pipeline;
+        return current == null ? 0 : current.getSubmittedSequence();
+    }
+
+    // 等待索引应用到sequence，同步维护时直接返回
+    public void awaitSequence(long sequence) {
+        IndexPipeline current = pipeline;
         if (current != null) {
-            mergedShards.add(current);
+            current.awaitSequence(sequence);
+        }
+    }
+
+    IndexRecord snapshot(INodeFile file) {
+        IndexField[] current = fields;
+        Object[] values = new Object[current.length];
+        for (int i = 0; i < current.length; i++) {
+            values[i] = extract(current[i], file);
+        }
+        return new IndexRecord(file.id, current, values);
+    }
+
+    // 把一次（合并后的）变更应用到索引，返回取值未变而跳过的字段数
+    // 与同步维护的顺序相同：先写id列，再修改倒排，最后更新聚合
+    int apply(int fileId, IndexRecord before, IndexRecord after) {
+        int skipped = applyPostings(fileId, before, after);
+        if (before != null) {
+            aggregate(before, false);
+        }
+        if (after != null) {
+            aggregate(after, true);
+        }
+        return skipped;
+    }
+
+    private int applyPostings(int fileId, IndexRecord before, IndexRecord after) {
+        int skipped = 0;
+        if (after == null) {
+            for (int i = 0; before != null && i < before.fields.length; i++) {
+                removeValue(before.fields[i], fileId, before.values[i]);
+            }
+            return skipped;
+        }
+        sizes.set(fileId, longValue(after, IndexField.SIZE));
+        modificationTimes.set(fileId, longValue(after, IndexField.MOD));
+        for (int i = 0; i < after.fields.length; i++) {
+            IndexField field = after.fields[i];
+            Object value = after.values[i];
+            if (before != null && i < before.fields.length) {
+                if (Objects.equals(before.values[i], value)) {
+                    skipped++;
+                    continue;
+                }
+                removeValue(field, fileId, before.values[i]);
+            }
+            addValue(field, fileId, value);
+        }
+        return skipped;
+    }
+
+    // 同步维护时按文件当前的取值更新各精确字段的聚合，在倒排修改之后调用
+    private void aggregate(INodeFile file, boolean add) {
+        long size = IndexField.SIZE.rangeValueOf(file);
+        long modificationTime = IndexField.MOD.rangeValueOf(file);
+        for (IndexField field : schema.values()) {
+            GroupAggregates groups = field.isRange() ? null : aggregates.get(field.getName());
+            String value = groups == null ? null : field.valueOf(file);
+            if (value != null) {
+                if (add) {
+                    groups.add(value, size, modificationTime);
+                } else {
+                    groups.remove(value, size, modificationTime);
+                }
+            }
         }
-        //更新shards集合
-        shards.clear();
-        shards.addAll(mergedShards);
     }
 
+    // 异步维护和延迟删除时按快照中的取值更新
+    private void aggregate(IndexRecord record, boolean add) {
+        long size = longValue(record, IndexField.SIZE);
+        long modificationTime = longValue(record, IndexField.MOD);
+        for (int i = 0; i < record.fields.length; i++) {
+            GroupAggregates groups = record.fields[i].isRange() ? null : aggregates.get(record.fields[i].getName());
+            if (groups != null && record.values[i] != null) {
+                if (add) {
+                    groups.add((String) record.values[i], size, modificationTime);
+                } else {
+                    groups.remove((String) record.values[i], size, modificationTime);
+                }
+            }
+        }
+    }
+
+    private static long longValue(IndexRecord record, IndexField field) {
+        for (int i = 0; i < record.fields.length; i++) {
+            if (record.fields[i] == field) {
+                return (Long) record.values[i];
+            }
+        }
+        return 0;
+    }
+
+    // 在线构建发布新字段时调用，期间没有写入
+    private void loadAggregates(String key, ExactFieldIndex postings) {
+        GroupAggregates groups = new GroupAggregates();
+        for (String value : postings.values()) {
+            groups.load(value, deleted.filter(postings.searchIds(value)), sizes, modificationTimes);
+        }
+        aggregates.put(key, groups);
+    }
+
+    static Object extract(IndexField field, INodeFile file) {
+        return field.isRange() ? (Object) field.rangeValueOf(file) : field.valueOf(file);
+    }
+
+    private void addValue(IndexField field, int fileId, Object value) {
+        if (field.isRange()) {
+            rangeIndex.get(field.getName()).add((Long) value, fileId); // 跳表定位分片
+        } else if (value != null) {
+            index.get(field.getName()).add((String) value, fileId);
+        }
+    }
+
+    private void removeValue(IndexField field, int fileId, Object value) {
+        if (field.isRange()) {
+            rangeIndex.get(field.getName()).remove((Long) value, fileId);
+        } else if (value != null) {
+            index.get(field.getName()).remove((String) value, fileId);
+        }
+    }
+
+    // 精确查询；数值型字段按单点范围查询。所有查询方法的结果都是只读列表
     public List<Integer> search(String key, String value) {
-        lock.readLock().lock();
+        long start = System.nanoTime();
         try {
-            Map<String, byte[]> subIndex = index.get(key);
-            byte[] data = subIndex.get(value); // 获取当前值对应的文件ID列表(byte类型）
-            return data == null ? Collections.emptyList() : decodeVarint(data);
+            IndexField field = getField(key);
+            if (field.isRange()) {
+                long point = Long.parseLong(value);
+                return rangeSearch(key, point, point);
+            }
+            ExactFieldIndex exact = index.get(key);
+            QueryCache current = cache;
+            if (current == null) {
+                return deleted.size() == 0 ? readOnly(exact.search(value)) : new IdList(deleted.filter(exact.searchIds(value)));
+            }
+            String cacheKey = QueryCache.exactKey(key, value);
+            long version = exact.version(value); // 先读版本号再查询
+            List<Integer> results = current.get(cacheKey, version);
+            if (results == null) {
+                results = exact.search(value);
+                current.put(cacheKey, version, results);
+            }
+            return readOnly(deleted.filter(results)); // 缓存中是未过滤的结果，标记删除不改变倒排的版本号
         } finally {
-            lock.readLock().unlock();
+            searchLatency.recordSince(start);
         }
     }
 
     public List<Integer> searchByRange(String key, long minValue, long maxValue) {
-        lock.readLock().lock();
+        long start = System.nanoTime();
+        try {
+            if (!getField(key).isRange()) {
+                throw new IllegalArgumentException("Not a range field: " + key);
+            }
+            return rangeSearch(key, minValue, maxValue);
+        } finally {
+            rangeSearchLatency.recordSince(start);
+        }
+    }
+
+    private List<Integer> rangeSearch(String key, long minValue, long maxValue) {
+        RangeFieldIndex shards = rangeIndex.get(key);
+        QueryCache current = cache;
+        if (current == null) {
+            return readOnly(deleted.filter(shards.search(minValue, maxValue))); // 只遍历与[minValue, maxValue]相交的分片
+        }
+        String cacheKey = QueryCache.rangeKey(key, minValue, maxValue);
+        long version = shards.version(minValue, maxValue);
+        List<Integer> results = current.get(cacheKey, version);
+        if (results == null) {
+            results = shards.search(minValue, maxValue);
+            current.put(cacheKey, version, results);
+        }
+        return readOnly(deleted.filter(results));
+    }
+
+    // 缓存命中、批量查询返回共享的列表，其余路径也包装为只读，调用方不会因走了哪条路径而得到不同的可变性
+    private static List<Integer> readOnly(List<Integer> ids) {
+        return ids instanceof IdList ? ids : Collections.unmodifiableList(ids);
+    }
+
+    // 开启查询结果缓存
+    public synchronized QueryCache enableQueryCache(long maxBytes) {
+        if (cache == null) {
+            cache = new QueryCache(maxBytes);
+        }
+        return cache;
+    }
+
+    public synchronized void disableQueryCache() {
+        cache = null;
+    }
+
+    // 先等待索引应用到sequence再查询，用于读到自己的写入
+    public List<Integer> search(String key, String value, long sequence) {
+        awaitSequence(sequence);
+        return search(key, value);
+    }
+
+    public List<Integer> searchByRange(String key, long minValue, long maxValue, long sequence) {
+        awaitSequence(sequence);
+        return searchByRange(key, minValue, maxValue);
+    }
+
+    // 最近windowMillis毫秒内创建或修改的文件
+    public List<Integer> searchRecent(String key, long windowMillis) {
+        long start = System.nanoTime();
         try {
-            List<Integer> results = new ArrayList<>();
-            List<RangeShard> shards = rangeIndex.get(key);
-            for (RangeShard shard : shards) {
-                if (shard.overlaps(minValue, maxValue)) {
-                    results.addAll(shard.search(minValue, maxValue));
+            RangeFieldIndex shards = rangeIndex.get(key);
+            if (!(shards instanceof TimeIndex)) {
+                throw new IllegalArgumentException("Not a time index: " + key);
+            }
+            return readOnly(deleted.filter(((TimeIndex) shards).searchRecent(System.currentTimeMillis(), windowMillis)));
+        } finally {
+            recentSearchLatency.recordSince(start);
+        }
+    }
+
+    // 合取查询，结果升序且只读
+    public List<Integer> search(Query query) {
+        return searchBatch(Collections.singletonList(query)).get(0);
+    }
+
+    // 批量执行合取查询：所有查询中相同的谓词只求值一次，每条倒排链只解码一次；
+    // 同一范围字段上互相重叠的范围谓词合并为一次扫描，扫描结果按值分发给各谓词；
+    // 各查询在升序ID数组上从最短的开始求交，相同的查询只求交一次并共享同一个只读结果
+    // 与逐个查询相同，不同谓词的求值之间没有一致的快照
+    public List<List<Integer>> searchBatch(List<Query> queries) {
+        long start = System.nanoTime();
+        try {
+            Map<String, Query.Predicate> distinct = new LinkedHashMap<>();
+            long references = 0;
+            for (Query query : queries) {
+                for (Query.Predicate predicate : query.getPredicates()) {
+                    distinct.putIfAbsent(predicate.key(), predicate);
+                    references++;
+                }
+            }
+            Map<String, int[]> predicateResults = evaluate(distinct.values());
+            Map<String, List<Integer>> queryResults = new HashMap<>();
+            List<List<Integer>> results = new ArrayList<>(queries.size());
+            for (Query query : queries) {
+                String key = query.key();
+                List<Integer> result = queryResults.get(key);
+                if (result == null) {
+                    result = new IdList(deleted.filter(intersect(query, predicateResults)));
+                    queryResults.put(key, result);
                 }
+                results.add(result);
             }
+            batchPredicates.add(distinct.size());
+            batchPredicateReferences.add(references);
             return results;
         } finally {
-            lock.readLock().unlock();
+            batchSearchLatency.recordSince(start);
         }
     }
 
-    public void printRangeShards(String key) {
-        lock.readLock().lock();
+    // 求出每个谓词的升序ID数组，键为谓词的规范化键
+    private Map<String, int[]> evaluate(Collection<Query.Predicate> predicates) {
+        Map<String, int[]> results = new HashMap<>();
+        Map<String, List<Query.Predicate>> rangePredicates = new HashMap<>();
+        for (Query.Predicate predicate : predicates) {
+            IndexField field = getField(predicate.getField());
+            if (!field.isRange()) {
+                if (predicate.isRange()) {
+                    throw new IllegalArgumentException("Not a range field: " + predicate.getField());
+                }
+                results.put(predicate.key(), index.get(field.getName()).searchIds(predicate.getValue()));
+            } else {
+                rangePredicates.computeIfAbsent(field.getName(), k -> new ArrayList<>()).add(predicate);
+            }
+        }
+        for (Map.Entry<String, List<Query.Predicate>> entry : rangePredicates.entrySet()) {
+            List<Query.Predicate> fieldPredicates = entry.getValue();
+            fieldPredicates.sort(Comparator.comparingLong(InvertIndex::lowerBound));
+            // 按下界排序后把重叠的区间归为一组，每组扫描一次
+            int groupStart = 0;
+            long groupMax = upperBound(fieldPredicates.get(0));
+            for (int i = 1; i <= fieldPredicates.size(); i++) {
+                if (i < fieldPredicates.size() && lowerBound(fieldPredicates.get(i)) <= groupMax) {
+                    groupMax = Math.max(groupMax, upperBound(fieldPredicates.get(i)));
+                    continue;
+                }
+                scanGroup(rangeIndex.get(entry.getKey()), fieldPredicates.subList(groupStart, i), groupMax, results);
+                if (i < fieldPredicates.size()) {
+                    groupStart = i;
+                    groupMax = upperBound(fieldPredicates.get(i));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static void scanGroup(RangeFieldIndex shards, List<Query.Predicate> group, long groupMax, Map<String, int[]> results) {
+        int n = group.size();
+        long[] mins = new long[n];
+        long[] maxs = new long[n];
+        int[][] ids = new int[n][];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            mins[i] = lowerBound(group.get(i));
+            maxs[i] = upperBound(group.get(i));
+            ids[i] = new int[16];
+        }
+        shards.scan(mins[0], groupMax, (value, fileId) -> {
+            for (int i = 0; i < n && mins[i] <= value; i++) { // mins升序
+                if (value <= maxs[i]) {
+                    if (counts[i] == ids[i].length) {
+                        ids[i] = Arrays.copyOf(ids[i], counts[i] * 2);
+                    }
+                    ids[i][counts[i]++] = fileId;
+                }
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            int[] sorted = Arrays.copyOf(ids[i], counts[i]); // 扫描按值有序，按ID重新排序
+            Arrays.sort(sorted);
+            results.put(group.get(i).key(), sorted);
+        }
+    }
+
+    // 精确谓词作用于数值型字段时按单点范围处理
+    private static long lowerBound(Query.Predicate predicate) {
+        return predicate.isRange() ? predicate.getMinValue() : Long.parseLong(predicate.getValue());
+    }
+
+    private static long upperBound(Query.Predicate predicate) {
+        return predicate.isRange() ? predicate.getMaxValue() : Long.parseLong(predicate.getValue());
+    }
+
+    private static int[] intersect(Query query, Map<String, int[]> predicateResults) {
+        List<int[]> lists = new ArrayList<>();
+        for (Query.Predicate predicate : query.getPredicates()) {
+            lists.add(predicateResults.get(predicate.key()));
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    // 两个升序数组求交：遍历较短的数组，在较长的数组中倍增查找
+    private static int[] intersect(int[] small, int[] large) {
+        int[] result = new int[small.length];
+        int n = 0;
+        int from = 0;
+        for (int id : small) {
+            int bound = 1;
+            while (from + bound < large.length && large[from + bound] < id) {
+                bound <<= 1;
+            }
+            int pos = Arrays.binarySearch(large, from, Math.min(large.length, from + bound + 1), id);
+            if (pos >= 0) {
+                result[n++] = id;
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+            if (from >= large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // 按精确字段分组的聚合：每组的文件数以及大小、修改时间的和、最小值、最大值，按取值升序，没有文件的取值不出现
+    // filter为null时直接读取各取值增量维护的聚合，不访问倒排链和inode；
+    // 否则先求出满足filter的文件，与各组的倒排求交后从id列读取大小和修改时间。与其他查询相同，期间的写入可能部分可见
+    public Map<String, GroupStats> aggregate(String groupKey, Query filter) {
+        long start = System.nanoTime();
         try {
-            List<RangeShard> shards = rangeIndex.get(key); //获取指定元数据的分片列表
-            if (shards == null) {
-                System.out.println("No range shards for key: " + key);
-                return;
+            if (getField(groupKey).isRange()) {
+                throw new IllegalArgumentException("Not an exact field: " + groupKey);
+            }
+            GroupAggregates groups = aggregates.get(groupKey);
+            ExactFieldIndex postings = index.get(groupKey);
+            Map<String, GroupStats> results = new TreeMap<>();
+            if (filter == null) {
+                for (String value : groups.values()) {
+                    GroupStats stats = groups.stats(value, postings, deleted, sizes, modificationTimes);
+                    if (stats != null) {
+                        results.put(value, stats);
+                    }
+                }
+                return results;
             }
-            for (RangeShard shard : shards) {
-                System.out.println("Range shard [" + shard.getStart() + ", " + shard.getEnd() + "], size: " + shard.getSize());
+            int[] candidates = deleted.filter(intersect(filter, evaluate(filter.getPredicates())));
+            for (String value : groups.values()) {
+                int[] ids = postings.searchIds(value);
+                int[] matched = candidates.length <= ids.length ? intersect(candidates, ids) : intersect(ids, candidates);
+                if (matched.length > 0) {
+                    results.put(value, GroupAggregates.scan(matched, sizes, modificationTimes).toStats(value));
+                }
             }
+            return results;
         } finally {
-            lock.readLock().unlock();
+            aggregateLatency.recordSince(start);
+        }
+    }
+
+    // 各字段的内存占用，按注册顺序；由写入时增量维护的计数器求得，范围字段只需遍历分片
+    public Map<String, MemoryUsage> getMemoryUsage() {
+        Map<String, MemoryUsage> usages = new LinkedHashMap<>();
+        for (String key : schema.keySet()) {
+            usages.put(key, getMemoryUsage(key));
+        }
+        return usages;
+    }
+
+    public MemoryUsage getMemoryUsage(String key) {
+        MemoryUsage usage = getField(key).isRange() ? rangeIndex.get(key).memoryUsage() : index.get(key).memoryUsage();
+        return usage.withName(key);
+    }
+
+    // 字段内各编码方式的id数和字节数，需要遍历该字段的所有倒排链
+    public CodecUsage getCodecUsage(String key) {
+        return getField(key).isRange() ? rangeIndex.get(key).codecUsage() : index.get(key).codecUsage();
+    }
+
+    // 精确字段中占用最大的n条倒排链
+    public List<MemoryUsage> getLargestPostings(String key, int n) {
+        if (getField(key).isRange()) {
+            throw new IllegalArgumentException("Not an exact field: " + key);
+        }
+        return index.get(key).largestValues(n);
+    }
+
+    // 范围字段每个分片（时间字段每个桶）的内存占用
+    public List<MemoryUsage> getShardMemoryUsage(String key) {
+        if (!getField(key).isRange()) {
+            throw new IllegalArgumentException("Not a range field: " + key);
+        }
+        return rangeIndex.get(key).shardMemoryUsage();
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    // 对指定字段从fromKey开始的至多maxShards个相邻分片做等深重分区，返回下一段的起始键
+    // 每次只持有该字段的结构写锁处理一小段分片，由ShardRebalancer分批调用
+    Long rebalanceRangeShards(String key, Long fromKey, int maxShards) {
+        RangeFieldIndex shards = rangeIndex.get(key);
+        return shards instanceof RangeIndex ? ((RangeIndex) shards).rebalance(fromKey, maxShards) : null;
+    }
+
+    private IndexField getField(String key) {
+        IndexField field = schema.get(key);
+        if (field == null) {
+            throw new IllegalArgumentException("Field not indexed: " + key);
+        }
+        return field;
+    }
+
+    Set<String> rangeKeys() {
+        return rangeIndex.keySet();
+    }
+
+    // 使用分层存储的精确字段
+    Set<String> tieredKeys() {
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String, ExactFieldIndex> entry : index.entrySet()) {
+            if (entry.getValue() instanceof TieredPostingIndex) {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys;
+    }
+
+    // 把字段的段合并到不超过maxSegments个，flush为true时先冻结增量；返回合并次数，由SegmentCompactor调用
+    int compactSegments(String key, int maxSegments, boolean flush) {
+        ExactFieldIndex exact = index.get(key);
+        if (!(exact instanceof TieredPostingIndex)) {
+            return 0;
+        }
+        TieredPostingIndex tiered = (TieredPostingIndex) exact;
+        if (flush) {
+            tiered.flush();
+        }
+        return tiered.compact(maxSegments);
+    }
+
+    // 分层存储的精确字段当前的段数，其他字段为0
+    public int getSegmentCount(String key) {
+        ExactFieldIndex exact = index.get(key);
+        return exact instanceof TieredPostingIndex ? ((TieredPostingIndex) exact).segmentCount() : 0;
+    }
+
+    public int getShardCount(String key) {
+        return rangeIndex.get(key).shardCount();
+    }
+
+    public void printRangeShards(String key) {
+        RangeFieldIndex shards = rangeIndex.get(key); //获取指定元数据的分片索引
+        if (shards == null) {
+            System.out.println("No range shards for key: " + key);
+            return;
         }
+        shards.printShards();
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package index;
+
+import java.util.Arrays;
+
+// 按文件id存放的long列：每页4096个值，只为出现过的id所在的页分配内存；写入者各自写自己的id，读取不加锁
+// 页只增不删，扩容页表时复制引用，已分配的页不会移动
+class LongColumn {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private volatile long[][] pages = new long[16][];
+    private volatile int pageCount;
+
+    long get(int id) {
+        long[][] current = pages;
+        int index = id >>> PAGE_BITS;
+        if (index >= current.length || current[index] == null) {
+            return 0;
+        }
+        return current[index][id & PAGE_MASK];
+    }
+
+    void set(int id, long value) {
+        page(id >>> PAGE_BITS)[id & PAGE_MASK] = value;
+    }
+
+    private long[] page(int index) {
+        long[][] current = pages;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        synchronized (this) {
+            current = pages;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+            }
+            if (current[index] == null) {
+                current[index] = new long[PAGE_SIZE];
+                pageCount++;
+            }
+            pages = current;
+            return current[index];
+        }
+    }
+
+    long retainedBytes() {
+        return MemoryUsage.ARRAY_HEADER + 8L * pages.length + pageCount * (MemoryUsage.ARRAY_HEADER + 8L * PAGE_SIZE);
+    }
+}
@@ -0,0 +1,69 @@
+package index;
+
+// 索引内存占用的估算（按64位JVM、开启压缩指针计）：
+// payload为实际存放文件ID的数据（编码后的倒排链、位图字、时间桶数组中已使用的部分），
+// overhead为其余的对象头、数组空余容量、映射表节点和键，raw为同样的ID存成int数组所需的字节数
+public class MemoryUsage {
+    static final int OBJECT_HEADER = 16;
+    static final int ARRAY_HEADER = 16;
+    static final int HASH_ENTRY = 32; // ConcurrentHashMap节点
+    static final int TREE_ENTRY = 40; // TreeMap.Entry
+    static final int SKIP_LIST_ENTRY = 48; // ConcurrentSkipListMap节点加平均的索引节点
+    static final int BOXED_LONG = 16;
+
+    private final String name;
+    private final long ids;
+    private final long payloadBytes;
+    private final long overheadBytes;
+
+    MemoryUsage(String name, long ids, long payloadBytes, long overheadBytes) {
+        this.name = name;
+        this.ids = ids;
+        this.payloadBytes = payloadBytes;
+        this.overheadBytes = overheadBytes;
+    }
+
+    // 字符串键：String对象加byte[]（Latin-1紧凑存储）
+    static long stringBytes(String value) {
+        return 24 + ARRAY_HEADER + value.length();
+    }
+
+    MemoryUsage withName(String newName) {
+        return new MemoryUsage(newName, ids, payloadBytes, overheadBytes);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getIds() {
+        return ids;
+    }
+
+    public long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    public long getOverheadBytes() {
+        return overheadBytes;
+    }
+
+    public long getTotalBytes() {
+        return payloadBytes + overheadBytes;
+    }
+
+    public long getRawBytes() {
+        return 4 * ids;
+    }
+
+    // 相对int数组的压缩比，大于1表示比int数组更省
+    public double getEncodingRatio() {
+        return payloadBytes == 0 ? 0 : (double) getRawBytes() / payloadBytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": ids=" + ids + ", total=" + getTotalBytes() + " B, payload=" + payloadBytes + " B, overhead=" + overheadBytes
+                + " B, raw int[]=" + getRawBytes() + " B, ratio=" + String.format("%.2f", getEncodingRatio());
+    }
+}
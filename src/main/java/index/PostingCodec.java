@@ -0,0 +1,10 @@
+package index;
+
+// 倒排链的编码方式：id很少的倒排链整条存成原始数组，其余按块编码，每个写满的块按自身的密度选用最省空间的编码
+public enum PostingCodec {
+    ARRAY, // 原始int数组，用于id很少的倒排链；时间桶也计在此
+    VARINT, // 块内delta varint，未写满的最后一块总是此编码
+    BIT_PACKED, // 块内delta按最大delta的位宽定长打包，间隔均匀时最省
+    RUN_LENGTH, // 连续id的游程（间隔、长度），id大段连续时最省
+    BITMAP // 块首id之后的位图，块内id稠密时最省；位图字段也计在此
+}
@@ -0,0 +1,199 @@
+package index;
+
+import utils.LockMetrics;
+import utils.OffHeapArena;
+import utils.StripedReadWriteLock;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+// 基于分块倒排链的精确匹配索引；按取值分段加锁，不同取值的读写互不阻塞
+// arena非空时倒排链存放在堆外，删空的倒排链在分段写锁内释放，读者都在分段读锁内访问
+class PostingIndex implements ExactFieldIndex {
+    private static final int STRIPES = 16; // 锁分段数
+    private final Map<String, PostingList> postings;
+    private final Map<String, Long> versions; // 各取值倒排的版本号，倒排删空后也保留，保证版本号只增不减
+    private final StripedReadWriteLock locks;
+    private final OffHeapArena arena; // 为null时倒排链存放在堆上
+    private final LongAdder idCount; // 以下计数器在分段写锁内按修改前后的差值增量维护
+    private final LongAdder payloadBytes;
+    private final LongAdder retainedBytes; // 倒排链对象及其数组的容量，加上映射表节点和键
+
+    PostingIndex(LockMetrics lockMetrics, OffHeapArena arena) {
+        this.arena = arena;
+        this.postings = new ConcurrentHashMap<>();
+        this.versions = new ConcurrentHashMap<>();
+        this.locks = new StripedReadWriteLock(STRIPES, lockMetrics);
+        this.idCount = new LongAdder();
+        this.payloadBytes = new LongAdder();
+        this.retainedBytes = new LongAdder();
+    }
+
+    @Override
+    public void add(String value, int fileId) {
+        Lock lock = locks.get(value).writeLock();
+        lock.lock();
+        try {
+            PostingList posting = postings.get(value); // 获取当前值对应的倒排链
+            if (posting == null) {
+                posting = new PostingList(arena);
+                postings.put(value, posting);
+                retainedBytes.add(entryBytes(value));
+            } else {
+                payloadBytes.add(-posting.sizeInBytes());
+                retainedBytes.add(-posting.retainedBytes());
+            }
+            if (posting.add(fileId)) { // id递增时在尾块原地追加
+                idCount.increment();
+            }
+            payloadBytes.add(posting.sizeInBytes());
+            retainedBytes.add(posting.retainedBytes());
+            versions.merge(value, 1L, Long::sum); // 修改完成后再更新版本号
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(String value, int fileId) {
+        Lock lock = locks.get(value).writeLock();
+        lock.lock();
+        try {
+            PostingList posting = postings.get(value);
+            if (posting != null) {
+                payloadBytes.add(-posting.sizeInBytes());
+                retainedBytes.add(-posting.retainedBytes());
+                if (posting.remove(fileId)) { // 只重建id所在块及其后的块
+                    idCount.decrement();
+                }
+                if (posting.isEmpty()) {
+                    postings.remove(value);
+                    posting.free();
+                    retainedBytes.add(-entryBytes(value));
+                } else {
+                    payloadBytes.add(posting.sizeInBytes());
+                    retainedBytes.add(posting.retainedBytes());
+                }
+                versions.merge(value, 1L, Long::sum);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 整条倒排链只解码、重建一次
+    @Override
+    public void removeAll(String value, int[] sortedIds, int count) {
+        Lock lock = locks.get(value).writeLock();
+        lock.lock();
+        try {
+            PostingList posting = postings.get(value);
+            if (posting != null) {
+                payloadBytes.add(-posting.sizeInBytes());
+                retainedBytes.add(-posting.retainedBytes());
+                idCount.add(-posting.removeAll(sortedIds, count));
+                if (posting.isEmpty()) {
+                    postings.remove(value);
+                    posting.free();
+                    retainedBytes.add(-entryBytes(value));
+                } else {
+                    payloadBytes.add(posting.sizeInBytes());
+                    retainedBytes.add(posting.retainedBytes());
+                }
+                versions.merge(value, 1L, Long::sum);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> search(String value) {
+        Lock lock = locks.get(value).readLock();
+        lock.lock();
+        try {
+            PostingList posting = postings.get(value);
+            return posting == null ? Collections.<Integer>emptyList() : posting.toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int[] searchIds(String value) {
+        Lock lock = locks.get(value).readLock();
+        lock.lock();
+        try {
+            PostingList posting = postings.get(value);
+            return posting == null ? new int[0] : posting.toArray();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long version(String value) {
+        Long version = versions.get(value);
+        return version == null ? 0 : version;
+    }
+
+    @Override
+    public MemoryUsage memoryUsage() {
+        long payload = payloadBytes.sum();
+        return new MemoryUsage("postings", idCount.sum(), payload, retainedBytes.sum() - payload);
+    }
+
+    @Override
+    public List<MemoryUsage> largestValues(int n) {
+        PriorityQueue<MemoryUsage> top = new PriorityQueue<>(Comparator.comparingLong(MemoryUsage::getTotalBytes));
+        for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            Lock lock = locks.get(entry.getKey()).readLock();
+            lock.lock();
+            try {
+                PostingList posting = entry.getValue();
+                long payload = posting.sizeInBytes();
+                top.add(new MemoryUsage(entry.getKey(), posting.size(), payload, posting.retainedBytes() - payload + entryBytes(entry.getKey())));
+            } finally {
+                lock.unlock();
+            }
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<MemoryUsage> results = new ArrayList<>(top);
+        results.sort(Comparator.comparingLong(MemoryUsage::getTotalBytes).reversed());
+        return results;
+    }
+
+    @Override
+    public CodecUsage codecUsage() {
+        CodecUsage usage = new CodecUsage();
+        for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            Lock lock = locks.get(entry.getKey()).readLock();
+            lock.lock();
+            try {
+                entry.getValue().collectCodecUsage(usage);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return usage;
+    }
+
+    // 映射表节点加字符串键
+    private static long entryBytes(String value) {
+        return MemoryUsage.HASH_ENTRY + MemoryUsage.stringBytes(value);
+    }
+
+    @Override
+    public int valueCount() {
+        return postings.size();
+    }
+
+    @Override
+    public Set<String> values() {
+        return postings.keySet();
+    }
+}
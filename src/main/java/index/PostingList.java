@@ -0,0 +1,808 @@
+package index;
+
+import utils.OffHeapArena;
+import utils.Varint;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 自适应编码的倒排链，id升序存储：
+// id不超过ARRAY_MAX个时整条存成原始数组（ARRAY），超过后转为分块存储，删到ARRAY_MAX/2个以下再转回数组，两个阈值错开避免来回转换
+// 分块存储每BLOCK_SIZE个id为一块，块首id与块在data中的偏移记录在跳表头中；正在追加的最后一块以delta varint编码，
+// 块写满时按块内的密度重新编码为VARINT、BIT_PACKED、RUN_LENGTH、BITMAP中最省空间的一种，编码记录在偏移的高位
+// 指定OffHeapArena时数据区和跳表头（每块8字节：块首id、偏移；数组存储时每个id 4字节）分配在堆外，堆上只剩本对象；用完后必须free
+public class PostingList {
+    public static final int BLOCK_SIZE = 128; // 每块的id个数
+    public static final int ARRAY_MAX = 16; // 原始数组存储的最大id数
+    public static final int NO_MORE_IDS = Integer.MAX_VALUE; // 游标结束标志
+    private static final int OFFSET_BITS = 28; // 跳表头偏移的低28位为块在data中的偏移，其上为块的编码
+    private static final int OFFSET_MASK = (1 << OFFSET_BITS) - 1;
+    private static final PostingCodec[] CODECS = PostingCodec.values();
+
+    private final OffHeapArena arena; // 为null时存放在堆上
+    private boolean array; // 原始数组存储：id直接存放在blockFirstId（堆外为跳表头区域）中，不使用data
+    private byte[] data; // 块数据
+    private int length; // data已使用的字节数
+    private int[] blockFirstId; // 跳表头：块首id
+    private int[] blockOffset; // 跳表头：块在data中的起始偏移及编码
+    private long dataAddress; // 以下为堆外存储：数据区与跳表头的地址、所在slab、slab内起点和块容量
+    private ByteBuffer dataSlab;
+    private int dataBase;
+    private int dataCapacity;
+    private long headerAddress;
+    private ByteBuffer headerSlab;
+    private int headerBase;
+    private int headerCapacity;
+    private int blockCount;
+    private int size; // id总数
+    private int lastId; // 最后一个id，用于判断能否尾部追加
+
+    public PostingList() {
+        this(null);
+    }
+
+    public PostingList(OffHeapArena arena) {
+        this.arena = arena;
+        useArrayStorage(1);
+    }
+
+    // 添加id，已存在则返回false
+    public boolean add(int id) {
+        if (array) {
+            return addToArray(id);
+        }
+        if (size == 0 || id > lastId) {
+            append(id); // 绝大多数情况下id递增，直接尾部原地追加
+            return true;
+        }
+        int block = findBlock(id);
+        int[] tail = decodeFrom(block);
+        int pos = Arrays.binarySearch(tail, id);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        int[] merged = new int[tail.length + 1];
+        System.arraycopy(tail, 0, merged, 0, pos);
+        merged[pos] = id;
+        System.arraycopy(tail, pos, merged, pos + 1, tail.length - pos);
+        rebuildFrom(block, merged, merged.length);
+        return true;
+    }
+
+    // 删除id，不存在则返回false
+    public boolean remove(int id) {
+        if (size == 0 || id < firstId(0) || id > lastId) {
+            return false;
+        }
+        if (array) {
+            return removeFromArray(id);
+        }
+        int block = findBlock(id);
+        int[] tail = decodeFrom(block);
+        int pos = Arrays.binarySearch(tail, id);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(tail, pos + 1, tail, pos, tail.length - pos - 1);
+        rebuildFrom(block, tail, tail.length - 1);
+        if (size <= ARRAY_MAX / 2) {
+            load(toArray(), size);
+        }
+        return true;
+    }
+
+    // 批量删除升序的ids，返回实际删除的个数；从第一个待删id所在的块起只解码、重建一次
+    public int removeAll(int[] sortedIds, int count) {
+        if (size == 0 || count == 0) {
+            return 0;
+        }
+        if (array) {
+            int removed = 0;
+            for (int i = 0; i < count; i++) {
+                if (removeFromArray(sortedIds[i])) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+        int block = findBlock(sortedIds[0]);
+        int[] tail = decodeFrom(block);
+        int kept = 0;
+        int next = 0;
+        for (int id : tail) {
+            while (next < count && sortedIds[next] < id) {
+                next++;
+            }
+            if (next < count && sortedIds[next] == id) {
+                continue;
+            }
+            tail[kept++] = id;
+        }
+        if (kept == tail.length) {
+            return 0;
+        }
+        rebuildFrom(block, tail, kept);
+        if (size <= ARRAY_MAX / 2) {
+            load(toArray(), size);
+        }
+        return tail.length - kept;
+    }
+
+    public boolean contains(int id) {
+        Cursor cursor = cursor();
+        return cursor.advance(id) == id;
+    }
+
+    // 合并另一条倒排链中的所有id
+    public void addAll(PostingList other) {
+        Cursor cursor = other.cursor();
+        for (int id = cursor.next(); id != NO_MORE_IDS; id = cursor.next()) {
+            add(id);
+        }
+    }
+
+    // 深拷贝，用于分片分裂/合并时让新旧分片不共享可变的倒排链；堆外的拷贝分配在同一个arena中
+    public PostingList copy() {
+        PostingList copy = new PostingList(arena);
+        if (array) {
+            copy.ensureArray(size);
+            if (arena == null) {
+                System.arraycopy(blockFirstId, 0, copy.blockFirstId, 0, size);
+            } else {
+                arena.copy(headerAddress, copy.headerAddress, size * 4);
+            }
+        } else if (arena == null) {
+            copy.array = false;
+            copy.data = Arrays.copyOf(data, Math.max(length, 1));
+            copy.blockFirstId = Arrays.copyOf(blockFirstId, Math.max(blockCount, 1));
+            copy.blockOffset = Arrays.copyOf(blockOffset, Math.max(blockCount, 1));
+        } else {
+            copy.useBlockStorage();
+            copy.ensureCapacity(length);
+            copy.ensureBlocks(blockCount);
+            arena.copy(dataAddress, copy.dataAddress, length);
+            arena.copy(headerAddress, copy.headerAddress, blockCount * 8);
+        }
+        copy.length = length;
+        copy.blockCount = blockCount;
+        copy.size = size;
+        copy.lastId = lastId;
+        return copy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // 编码后占用的字节数（数组，或数据区+跳表头）
+    public int sizeInBytes() {
+        return array ? size * 4 : length + blockCount * 8;
+    }
+
+    // 内存占用估算：对象本身加各数组的容量，堆外存储时为对象本身加堆外块的容量
+    public long retainedBytes() {
+        if (arena != null) {
+            return MemoryUsage.OBJECT_HEADER + 72 + dataCapacity + headerCapacity;
+        }
+        if (array) {
+            return MemoryUsage.OBJECT_HEADER + 72 + MemoryUsage.ARRAY_HEADER + 4L * blockFirstId.length;
+        }
+        return MemoryUsage.OBJECT_HEADER + 72 + (MemoryUsage.ARRAY_HEADER + data.length) + 2L * (MemoryUsage.ARRAY_HEADER + 4L * blockFirstId.length);
+    }
+
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    public CodecUsage codecUsage() {
+        CodecUsage usage = new CodecUsage();
+        collectCodecUsage(usage);
+        return usage;
+    }
+
+    // 按编码累计id数和字节数，分块存储时每块计8字节跳表头
+    void collectCodecUsage(CodecUsage usage) {
+        if (array) {
+            usage.add(PostingCodec.ARRAY, size, size * 4L);
+            return;
+        }
+        for (int b = 0; b < blockCount; b++) {
+            int end = b + 1 < blockCount ? blockStart(b + 1) : length;
+            usage.add(blockCodec(b), blockSize(b), end - blockStart(b) + 8);
+        }
+    }
+
+    // 释放堆外存储，之后不能再使用；堆上存储时什么也不做
+    public void free() {
+        if (arena != null) {
+            freeStorage();
+            size = 0;
+            blockCount = 0;
+            length = 0;
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public int[] toArray() {
+        int[] ids = new int[size];
+        if (array) {
+            for (int i = 0; i < size; i++) {
+                ids[i] = arrayId(i);
+            }
+            return ids;
+        }
+        Cursor cursor = cursor();
+        for (int i = 0; i < size; i++) {
+            ids[i] = cursor.next();
+        }
+        return ids;
+    }
+
+    public List<Integer> toList() {
+        List<Integer> ids = new ArrayList<>(size);
+        if (array) {
+            for (int i = 0; i < size; i++) {
+                ids.add(arrayId(i));
+            }
+            return ids;
+        }
+        Cursor cursor = cursor();
+        for (int id = cursor.next(); id != NO_MORE_IDS; id = cursor.next()) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    public static PostingList of(int[] sortedIds, int count) {
+        PostingList posting = new PostingList();
+        posting.load(sortedIds, count);
+        return posting;
+    }
+
+    // 两条倒排链求交，利用advance跳过不可能命中的块
+    public static List<Integer> intersect(PostingList a, PostingList b) {
+        List<Integer> results = new ArrayList<>();
+        if (a.size > b.size) {
+            PostingList tmp = a;
+            a = b;
+            b = tmp;
+        }
+        Cursor small = a.cursor();
+        Cursor large = b.cursor();
+        int id = small.next();
+        while (id != NO_MORE_IDS) {
+            int other = large.advance(id);
+            if (other == id) {
+                results.add(id);
+                id = small.next();
+            } else if (other == NO_MORE_IDS) {
+                break;
+            } else {
+                id = small.advance(other);
+            }
+        }
+        return results;
+    }
+
+    // 用有序的ids替换全部内容，按个数选择数组或分块存储
+    private void load(int[] ids, int count) {
+        if (count <= ARRAY_MAX) {
+            useArrayStorage(count);
+            for (int i = 0; i < count; i++) {
+                setArrayId(i, ids[i]);
+            }
+            size = count;
+            lastId = count == 0 ? 0 : ids[count - 1];
+        } else {
+            useBlockStorage();
+            rebuildFrom(0, ids, count);
+        }
+    }
+
+    private boolean addToArray(int id) {
+        int pos = size;
+        while (pos > 0 && arrayId(pos - 1) > id) {
+            pos--;
+        }
+        if (pos > 0 && arrayId(pos - 1) == id) {
+            return false;
+        }
+        if (size == ARRAY_MAX) { // 超过阈值，转为分块存储
+            int[] ids = new int[size + 1];
+            for (int i = 0, j = 0; i <= size; i++) {
+                ids[i] = i == pos ? id : arrayId(j++);
+            }
+            load(ids, ids.length);
+            return true;
+        }
+        ensureArray(size + 1);
+        for (int i = size; i > pos; i--) {
+            setArrayId(i, arrayId(i - 1));
+        }
+        setArrayId(pos, id);
+        size++;
+        lastId = arrayId(size - 1);
+        return true;
+    }
+
+    private boolean removeFromArray(int id) {
+        int pos = 0;
+        while (pos < size && arrayId(pos) < id) {
+            pos++;
+        }
+        if (pos == size || arrayId(pos) != id) {
+            return false;
+        }
+        for (int i = pos + 1; i < size; i++) {
+            setArrayId(i - 1, arrayId(i));
+        }
+        size--;
+        lastId = size == 0 ? 0 : arrayId(size - 1);
+        return true;
+    }
+
+    private void append(int id) {
+        if (size % BLOCK_SIZE == 0) { // 开启新块，块首id只记录在跳表头中
+            ensureBlocks(blockCount + 1);
+            setBlock(blockCount, id, length, PostingCodec.VARINT);
+            blockCount++;
+        } else {
+            ensureCapacity(length + 5);
+            length = writeVarInt(id - lastId, length);
+        }
+        lastId = id;
+        size++;
+        if (size % BLOCK_SIZE == 0) {
+            sealBlock(blockCount - 1);
+        }
+    }
+
+    // 写满的最后一块按密度选编码重写：位宽、游程数、跨度分别决定定长打包、游程和位图的大小，取最小者，都不比varint小则保持不变
+    private void sealBlock(int block) {
+        int[] ids = new int[BLOCK_SIZE];
+        decodeBlock(block, ids);
+        int start = blockStart(block);
+        int maxGap = 0;
+        int runBytes = 0;
+        int runStart = 0;
+        for (int i = 1; i <= BLOCK_SIZE; i++) {
+            if (i < BLOCK_SIZE) {
+                maxGap = Math.max(maxGap, ids[i] - ids[i - 1] - 1);
+            }
+            if (i == BLOCK_SIZE || ids[i] != ids[i - 1] + 1) { // 游程[runStart, i)结束
+                runBytes += (runStart == 0 ? 0 : Varint.unsignedVarIntSize(ids[runStart] - ids[runStart - 1] - 2)) + Varint.unsignedVarIntSize(i - runStart - 1);
+                runStart = i;
+            }
+        }
+        int width = 32 - Integer.numberOfLeadingZeros(maxGap);
+        int packedBytes = 1 + ((BLOCK_SIZE - 1) * width + 7) / 8;
+        long bitmapBytes = ((long) ids[BLOCK_SIZE - 1] - ids[0] + 7) / 8;
+        PostingCodec codec = PostingCodec.VARINT;
+        long best = length - start;
+        if (packedBytes < best) {
+            codec = PostingCodec.BIT_PACKED;
+            best = packedBytes;
+        }
+        if (runBytes < best) {
+            codec = PostingCodec.RUN_LENGTH;
+            best = runBytes;
+        }
+        if (bitmapBytes < best) {
+            codec = PostingCodec.BITMAP;
+            best = bitmapBytes;
+        }
+        if (codec == PostingCodec.VARINT) {
+            return;
+        }
+        length = start;
+        ensureCapacity(start + (int) best);
+        switch (codec) {
+            case BIT_PACKED:
+                putByte(length++, width);
+                long buffer = 0;
+                int bits = 0;
+                for (int i = 1; i < BLOCK_SIZE; i++) {
+                    buffer |= (long) (ids[i] - ids[i - 1] - 1) << bits;
+                    bits += width;
+                    while (bits >= 8) {
+                        putByte(length++, (int) buffer);
+                        buffer >>>= 8;
+                        bits -= 8;
+                    }
+                }
+                if (bits > 0) {
+                    putByte(length++, (int) buffer);
+                }
+                break;
+            case RUN_LENGTH: // 首个游程从块首id开始只记长度，之后每个游程记与上一游程的间隔和长度
+                runStart = 0;
+                for (int i = 1; i <= BLOCK_SIZE; i++) {
+                    if (i == BLOCK_SIZE || ids[i] != ids[i - 1] + 1) {
+                        if (runStart > 0) {
+                            length = writeVarInt(ids[runStart] - ids[runStart - 1] - 2, length);
+                        }
+                        length = writeVarInt(i - runStart - 1, length);
+                        runStart = i;
+                    }
+                }
+                break;
+            default: // BITMAP：第k位表示块首id + 1 + k
+                for (int i = 0; i < best; i++) {
+                    putByte(start + i, 0);
+                }
+                for (int i = 1; i < BLOCK_SIZE; i++) {
+                    int bit = ids[i] - ids[0] - 1;
+                    int pos = start + (bit >>> 3);
+                    putByte(pos, getByte(pos) | 1 << (bit & 7));
+                }
+                length = start + (int) best;
+                break;
+        }
+        setBlock(block, ids[0], start, codec);
+    }
+
+    // 解码第block块到out，返回id个数
+    private int decodeBlock(int block, int[] out) {
+        int count = blockSize(block);
+        int id = firstId(block);
+        out[0] = id;
+        int start = blockStart(block);
+        int n = 1;
+        switch (blockCodec(block)) {
+            case VARINT: {
+                int[] offset = {start};
+                while (n < count) {
+                    id += readVarInt(offset);
+                    out[n++] = id;
+                }
+                break;
+            }
+            case BIT_PACKED: {
+                int width = getByte(start);
+                int mask = width == 32 ? -1 : (1 << width) - 1;
+                int pos = start + 1;
+                long buffer = 0;
+                int bits = 0;
+                while (n < count) {
+                    while (bits < width) {
+                        buffer |= (long) getByte(pos++) << bits;
+                        bits += 8;
+                    }
+                    id += ((int) buffer & mask) + 1;
+                    out[n++] = id;
+                    buffer >>>= width;
+                    bits -= width;
+                }
+                break;
+            }
+            case RUN_LENGTH: {
+                int[] offset = {start};
+                int run = readVarInt(offset);
+                while (true) {
+                    for (int i = 0; i < run && n < count; i++) {
+                        out[n++] = ++id;
+                    }
+                    if (n >= count) {
+                        break;
+                    }
+                    id += readVarInt(offset) + 2;
+                    out[n++] = id;
+                    run = readVarInt(offset);
+                }
+                break;
+            }
+            default: {
+                int first = id;
+                for (int pos = start; n < count; pos++) {
+                    int bits = getByte(pos);
+                    while (bits != 0) {
+                        int bit = Integer.numberOfTrailingZeros(bits);
+                        out[n++] = first + 1 + ((pos - start) << 3) + bit;
+                        bits &= bits - 1;
+                    }
+                }
+                break;
+            }
+        }
+        return count;
+    }
+
+    private int blockSize(int block) {
+        return block + 1 < blockCount ? BLOCK_SIZE : size - block * BLOCK_SIZE;
+    }
+
+    // 数组存储：不分配数据区
+    private void useArrayStorage(int capacity) {
+        capacity = Math.max(capacity, 1);
+        if (arena == null) {
+            data = null;
+            blockOffset = null;
+            blockFirstId = new int[capacity];
+        } else {
+            freeStorage();
+            setHeader(arena.allocate(capacity * 4), OffHeapArena.capacityFor(capacity * 4));
+        }
+        array = true;
+        length = 0;
+        blockCount = 0;
+        size = 0;
+    }
+
+    private void useBlockStorage() {
+        if (arena == null) {
+            data = new byte[16];
+            blockFirstId = new int[1];
+            blockOffset = new int[1];
+        } else {
+            freeStorage();
+            setData(arena.allocate(16), OffHeapArena.capacityFor(16));
+            setHeader(arena.allocate(8), OffHeapArena.capacityFor(8));
+        }
+        array = false;
+        length = 0;
+        blockCount = 0;
+        size = 0;
+    }
+
+    private void freeStorage() {
+        if (dataSlab != null) {
+            arena.free(dataAddress, dataCapacity);
+            dataSlab = null;
+            dataCapacity = 0;
+        }
+        if (headerSlab != null) {
+            arena.free(headerAddress, headerCapacity);
+            headerSlab = null;
+            headerCapacity = 0;
+        }
+    }
+
+    private void ensureArray(int capacity) {
+        if (arena == null) {
+            if (capacity > blockFirstId.length) {
+                blockFirstId = Arrays.copyOf(blockFirstId, Math.max(capacity, blockFirstId.length * 2));
+            }
+        } else if (capacity * 4 > headerCapacity) {
+            int newCapacity = OffHeapArena.capacityFor(capacity * 4);
+            setHeader(arena.reallocate(headerAddress, headerCapacity, newCapacity, size * 4), newCapacity);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > OFFSET_MASK) {
+            throw new IllegalStateException("Posting list too large: " + capacity + " bytes");
+        }
+        if (arena == null) {
+            if (capacity > data.length) {
+                data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+            }
+        } else if (capacity > dataCapacity) {
+            int newCapacity = OffHeapArena.capacityFor(capacity);
+            setData(arena.reallocate(dataAddress, dataCapacity, newCapacity, length), newCapacity);
+        }
+    }
+
+    private void ensureBlocks(int blocks) {
+        if (arena == null) {
+            if (blocks > blockFirstId.length) {
+                blockFirstId = Arrays.copyOf(blockFirstId, Math.max(blocks, blockFirstId.length * 2));
+                blockOffset = Arrays.copyOf(blockOffset, Math.max(blocks, blockOffset.length * 2));
+            }
+        } else if (blocks * 8 > headerCapacity) {
+            int newCapacity = OffHeapArena.capacityFor(blocks * 8);
+            setHeader(arena.reallocate(headerAddress, headerCapacity, newCapacity, blockCount * 8), newCapacity);
+        }
+    }
+
+    private void setData(long address, int capacity) {
+        dataAddress = address;
+        dataSlab = arena.slab(address);
+        dataBase = OffHeapArena.offset(address);
+        dataCapacity = capacity;
+    }
+
+    private void setHeader(long address, int capacity) {
+        headerAddress = address;
+        headerSlab = arena.slab(address);
+        headerBase = OffHeapArena.offset(address);
+        headerCapacity = capacity;
+    }
+
+    private int arrayId(int i) {
+        return arena == null ? blockFirstId[i] : headerSlab.getInt(headerBase + i * 4);
+    }
+
+    private void setArrayId(int i, int id) {
+        if (arena == null) {
+            blockFirstId[i] = id;
+        } else {
+            headerSlab.putInt(headerBase + i * 4, id);
+        }
+    }
+
+    private void setBlock(int block, int firstId, int offset, PostingCodec codec) {
+        int packed = offset | codec.ordinal() << OFFSET_BITS;
+        if (arena == null) {
+            blockFirstId[block] = firstId;
+            blockOffset[block] = packed;
+        } else {
+            headerSlab.putInt(headerBase + block * 8, firstId);
+            headerSlab.putInt(headerBase + block * 8 + 4, packed);
+        }
+    }
+
+    private int firstId(int block) {
+        if (array) {
+            return arrayId(0);
+        }
+        return arena == null ? blockFirstId[block] : headerSlab.getInt(headerBase + block * 8);
+    }
+
+    private int blockStart(int block) {
+        return (arena == null ? blockOffset[block] : headerSlab.getInt(headerBase + block * 8 + 4)) & OFFSET_MASK;
+    }
+
+    private PostingCodec blockCodec(int block) {
+        return CODECS[(arena == null ? blockOffset[block] : headerSlab.getInt(headerBase + block * 8 + 4)) >>> OFFSET_BITS];
+    }
+
+    private int getByte(int pos) {
+        return (arena == null ? data[pos] : dataSlab.get(dataBase + pos)) & 0xFF;
+    }
+
+    private void putByte(int pos, int value) {
+        if (arena == null) {
+            data[pos] = (byte) value;
+        } else {
+            dataSlab.put(dataBase + pos, (byte) value);
+        }
+    }
+
+    private int readVarInt(int[] offset) {
+        return arena == null ? Varint.readUnsignedVarInt(data, offset) : Varint.readUnsignedVarInt(dataSlab, dataBase, offset);
+    }
+
+    // 在pos处写入varint，返回写入后的位置（调用方保证容量足够）
+    private int writeVarInt(int value, int pos) {
+        return arena == null ? Varint.writeUnsignedVarInt(value, data, pos) : Varint.writeUnsignedVarInt(value, dataSlab, dataBase + pos) - dataBase;
+    }
+
+    // 定位id所在的块：最后一个块首id<=id的块
+    private int findBlock(int id) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (firstId(mid) <= id) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    // 解码从block开始直到末尾的所有id
+    private int[] decodeFrom(int block) {
+        int[] ids = new int[size - block * BLOCK_SIZE];
+        int[] buffer = new int[BLOCK_SIZE];
+        int n = 0;
+        for (int b = block; b < blockCount; b++) {
+            int count = decodeBlock(b, buffer);
+            System.arraycopy(buffer, 0, ids, n, count);
+            n += count;
+        }
+        return ids;
+    }
+
+    // 截断到block之前，再把有序的ids重新追加，保证除最后一块外每块都是满的；追加写满的块重新选择编码
+    private void rebuildFrom(int block, int[] ids, int count) {
+        length = block < blockCount ? blockStart(block) : length;
+        blockCount = Math.min(block, blockCount);
+        size = block * BLOCK_SIZE;
+        for (int i = 0; i < count; i++) {
+            append(ids[i]);
+        }
+        if (size == 0) {
+            lastId = 0;
+        } else if (count == 0) {
+            int[] buffer = new int[BLOCK_SIZE];
+            lastId = buffer[decodeBlock(blockCount - 1, buffer) - 1];
+        }
+    }
+
+    // 顺序游标，支持advance跳转；分块存储时整块解码到缓冲区
+    public class Cursor {
+        private int block = -1;
+        private int pos; // 下一个要返回的id在缓冲区（数组存储时为数组）中的位置
+        private int count;
+        private int[] buffer;
+        private int current = -1;
+
+        // 返回下一个id，没有则返回NO_MORE_IDS
+        public int next() {
+            if (pos < count) { // 缓冲区中还有已解码的id；数组存储时count始终为0
+                current = buffer[pos++];
+                return current;
+            }
+            if (current == NO_MORE_IDS) {
+                return NO_MORE_IDS;
+            }
+            if (array) {
+                current = pos < size ? arrayId(pos++) : NO_MORE_IDS;
+                return current;
+            }
+            return loadBlock(block + 1);
+        }
+
+        // 跳到第一个>=target的id
+        public int advance(int target) {
+            if (current >= target) {
+                return current;
+            }
+            if (array) {
+                int id;
+                do {
+                    id = next();
+                } while (id < target);
+                return id;
+            }
+            if (block + 1 < blockCount && firstId(block + 1) <= target) {
+                int b = findBlock(target); // 利用跳表头跳过整块
+                if (b > block) {
+                    loadBlock(b);
+                    if (current >= target) {
+                        return current;
+                    }
+                }
+            }
+            if (block < 0) {
+                loadBlock(0);
+                if (current >= target) {
+                    return current;
+                }
+            }
+            // 块内二分；块内没有时下一块的块首id必然大于target
+            int found = Arrays.binarySearch(buffer, pos, count, target);
+            if (found < 0) {
+                found = -found - 1;
+            }
+            if (found < count) {
+                current = buffer[found];
+                pos = found + 1;
+                return current;
+            }
+            return loadBlock(block + 1);
+        }
+
+        public int current() {
+            return current;
+        }
+
+        private int loadBlock(int b) {
+            if (b >= blockCount) {
+                count = 0;
+                current = NO_MORE_IDS;
+                return current;
+            }
+            if (buffer == null) {
+                buffer = new int[BLOCK_SIZE];
+            }
+            block = b;
+            count = decodeBlock(b, buffer);
+            pos = 1;
+            current = buffer[0];
+            return current;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 合取查询：若干谓词的AND，谓词为精确匹配或闭区间范围；不可变，and方法返回新查询
+public class Query {
+    private final List<Predicate> predicates;
+
+    private Query(List<Predicate> predicates) {
+        this.predicates = predicates;
+    }
+
+    public static Query exact(String key, String value) {
+        return new Query(Collections.singletonList(new Predicate(key, value, 0, 0)));
+    }
+
+    public static Query range(String key, long minValue, long maxValue) {
+        return new Query(Collections.singletonList(new Predicate(key, null, minValue, maxValue)));
+    }
+
+    public Query andExact(String key, String value) {
+        return and(new Predicate(key, value, 0, 0));
+    }
+
+    public Query andRange(String key, long minValue, long maxValue) {
+        return and(new Predicate(key, null, minValue, maxValue));
+    }
+
+    private Query and(Predicate predicate) {
+        List<Predicate> combined = new ArrayList<>(predicates);
+        combined.add(predicate);
+        return new Query(Collections.unmodifiableList(combined));
+    }
+
+    public List<Predicate> getPredicates() {
+        return predicates;
+    }
+
+    // 规范化的键：谓词键排序后拼接，谓词顺序不同的相同查询得到相同的键
+    String key() {
+        List<String> keys = new ArrayList<>(predicates.size());
+        for (Predicate predicate : predicates) {
+            keys.add(predicate.key());
+        }
+        Collections.sort(keys);
+        return String.join("&", keys);
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+
+    public static class Predicate {
+        private final String field;
+        private final String value; // 精确匹配的取值，范围谓词为null
+        private final long minValue;
+        private final long maxValue;
+
+        private Predicate(String field, String value, long minValue, long maxValue) {
+            this.field = field;
+            this.value = value;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getMinValue() {
+            return minValue;
+        }
+
+        public long getMaxValue() {
+            return maxValue;
+        }
+
+        public boolean isRange() {
+            return value == null;
+        }
+
+        String key() {
+            return isRange() ? QueryCache.rangeKey(field, minValue, maxValue) : QueryCache.exactKey(field, value);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package index;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// 查询结果缓存：键为规范化后的查询，值为结果及计算前读取的版本号
+// 命中时要求当前版本号与缓存时相同：精确查询取该取值倒排的版本号，范围查询取相交分片的最大版本号，
+// 因此修改某个字段或某个分片只会使涉及它的查询失效
+// 按估算的内存占用限制总大小，超出时按LRU淘汰
+public class QueryCache {
+    private static final int ENTRY_OVERHEAD = 96; // 链表节点、条目对象、数组头等固定开销的估算值
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries; // 访问顺序，最久未访问的在表头
+    private long usedBytes;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder invalidations; // 找到条目但版本号已变化
+    private final LongAdder evictions;
+
+    QueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.invalidations = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    static String exactKey(String field, String value) {
+        return "e:" + field + ':' + value;
+    }
+
+    static String rangeKey(String field, long minValue, long maxValue) {
+        return "r:" + field + ':' + minValue + ':' + maxValue;
+    }
+
+    // 版本号一致时返回缓存的结果（只读），否则返回null
+    synchronized List<Integer> get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.version != version) {
+            entries.remove(key);
+            usedBytes -= entry.bytes;
+            invalidations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new IdList(entry.ids);
+    }
+
+    // version必须在执行查询之前读取，查询期间发生的修改会使版本号变化，下次命中检查时失效
+    void put(String key, long version, List<Integer> results) {
+        int[] ids = new int[results.size()];
+        int n = 0;
+        for (int id : results) {
+            ids[n++] = id;
+        }
+        Entry entry = new Entry(version, ids, ENTRY_OVERHEAD + 2L * key.length() + 4L * ids.length);
+        if (entry.bytes > maxBytes / 2) {
+            return; // 过大的结果不缓存，避免一次插入清空整个缓存
+        }
+        synchronized (this) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                usedBytes -= old.bytes;
+            }
+            usedBytes += entry.bytes;
+            Iterator<Entry> it = entries.values().iterator();
+            while (usedBytes > maxBytes && it.hasNext()) {
+                usedBytes -= it.next().bytes;
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long total = hits.sum() + misses.sum();
+        return total == 0 ? 0 : (double) hits.sum() / total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private static final class Entry {
+        final long version;
+        final int[] ids;
+        final long bytes;
+
+        Entry(long version, int[] ids, long bytes) {
+            this.version = version;
+            this.ids = ids;
+            this.bytes = bytes;
+        }
+    }
+}
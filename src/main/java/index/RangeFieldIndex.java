@@ -0,0 +1,42 @@
+package index;
+
+import java.util.List;
+
+// 数值型元数据的范围索引
+interface RangeFieldIndex {
+    void add(long value, int fileId);
+
+    void remove(long value, int fileId);
+
+    // 从一个取值的倒排中批量删除升序的ids，用于清除已标记删除的文件
+    default void removeAll(long value, int[] sortedIds, int count) {
+        for (int i = 0; i < count; i++) {
+            remove(value, sortedIds[i]);
+        }
+    }
+
+    List<Integer> search(long minValue, long maxValue);
+
+    // 按值升序访问[minValue, maxValue]内的每个(值, 文件ID)，批量查询用一次扫描服务多个重叠的范围谓词
+    void scan(long minValue, long maxValue, ValueVisitor visitor);
+
+    // 与[minValue, maxValue]相交的分片的最大版本号，范围内数据变化后必然改变，用于查询缓存失效
+    long version(long minValue, long maxValue);
+
+    // 字段的内存占用，汇总各分片增量维护的计数器
+    MemoryUsage memoryUsage();
+
+    // 每个分片（桶）的内存占用，按起点升序
+    List<MemoryUsage> shardMemoryUsage();
+
+    int shardCount();
+
+    // 各编码方式下的id数与字节数，遍历所有分片（桶）
+    CodecUsage codecUsage();
+
+    void printShards();
+
+    interface ValueVisitor {
+        void visit(long value, int fileId);
+    }
+}
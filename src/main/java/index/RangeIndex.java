@@ -0,0 +1,361 @@
+package index;
+
+import utils.OffHeapArena;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+// 有序范围索引：以分片起点为键的并发跳表，O(log n)定位分片，范围查询只遍历相交的分片
+// 分片的实际归属区间由跳表键决定：[start, 下一个分片的start - 1]，读者按此裁剪，
+// 分裂时先发布右半分片、再替换左半分片，读者在任何时刻都不会漏读或重复读
+// 并发：读者不加结构锁，只持有所读分片的读锁；普通写入持有结构读锁和所写分片的写锁，
+// 不同分片的写入可以并行；新建、分裂、合并、重分区持有结构写锁
+// 倒排链存放在堆外时，被替换的分片在发布新分片后释放，读到已释放分片的读者从该分片的下界重新定位
+class RangeIndex implements RangeFieldIndex {
+    private final int shardSizeThreshold; // 分片大小阈值（不同键的个数）
+    private final int shardIdThreshold; // 分片倒排量阈值（文件ID个数）
+    private final ConcurrentSkipListMap<Long, RangeShard> shards;
+    private final LongAdder totalIds; // 索引内文件ID总数
+    private final StampedLock structureLock; // 分片结构锁
+    private final AtomicLong clock; // 版本时钟：分片修改后以及新分片发布前取新值
+    private final OffHeapArena arena; // 为null时倒排链存放在堆上
+
+    RangeIndex(int shardSizeThreshold, int shardIdThreshold, OffHeapArena arena) {
+        this.arena = arena;
+        this.shardSizeThreshold = shardSizeThreshold;
+        this.shardIdThreshold = shardIdThreshold;
+        this.shards = new ConcurrentSkipListMap<>();
+        this.totalIds = new LongAdder();
+        this.structureLock = new StampedLock();
+        this.clock = new AtomicLong();
+    }
+
+    @Override
+    public void add(long value, int fileId) {
+        long stamp = structureLock.readLock();
+        try {
+            Map.Entry<Long, RangeShard> floor = shards.floorEntry(value);
+            if (floor != null && floor.getValue().contains(value)) {
+                RangeShard shard = floor.getValue();
+                if (shard.add(value, fileId)) {
+                    totalIds.increment();
+                    shard.touch(clock.incrementAndGet());
+                }
+                if (!exceedsThreshold(shard)) {
+                    return;
+                }
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+        // 需要新建或分裂分片：持有结构写锁后重新定位，期间结构可能已被其他写者改变
+        long writeStamp = structureLock.writeLock();
+        try {
+            Map.Entry<Long, RangeShard> floor = shards.floorEntry(value);
+            RangeShard shard = floor == null ? null : floor.getValue();
+            if (shard == null || !shard.contains(value)) {
+                shard = createShard(value, shard);
+            }
+            if (shard.add(value, fileId)) {
+                totalIds.increment();
+                shard.touch(clock.incrementAndGet());
+            }
+            if (exceedsThreshold(shard)) {
+                split(shard);
+            }
+        } finally {
+            structureLock.unlockWrite(writeStamp);
+        }
+    }
+
+    @Override
+    public void remove(long value, int fileId) {
+        long stamp = structureLock.readLock();
+        try {
+            Map.Entry<Long, RangeShard> floor = shards.floorEntry(value);
+            if (floor != null && floor.getValue().contains(value) && floor.getValue().remove(value, fileId)) {
+                totalIds.decrement();
+                floor.getValue().touch(clock.incrementAndGet());
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void removeAll(long value, int[] sortedIds, int count) {
+        long stamp = structureLock.readLock();
+        try {
+            Map.Entry<Long, RangeShard> floor = shards.floorEntry(value);
+            if (floor != null && floor.getValue().contains(value)) {
+                int removed = floor.getValue().removeAll(value, sortedIds, count);
+                if (removed > 0) {
+                    totalIds.add(-removed);
+                    floor.getValue().touch(clock.incrementAndGet());
+                }
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    //片的键数或倒排量大于阈值则分片
+    private boolean exceedsThreshold(RangeShard shard) {
+        return shard.getSize() > shardSizeThreshold || (shard.getIdCount() > shardIdThreshold && shard.getSize() > 1);
+    }
+
+    @Override
+    public List<Integer> search(long minValue, long maxValue) {
+        List<Integer> results = new ArrayList<>();
+        forEachShard(minValue, maxValue, (shard, lower, upper) -> {
+            List<Integer> part = shard.search(lower, upper);
+            if (part == null) {
+                return false;
+            }
+            results.addAll(part);
+            return true;
+        });
+        return results;
+    }
+
+    @Override
+    public void scan(long minValue, long maxValue, ValueVisitor visitor) {
+        forEachShard(minValue, maxValue, (shard, lower, upper) -> shard.scan(lower, upper, visitor));
+    }
+
+    // 依次访问与[minValue, maxValue]相交的分片，范围按跳表键裁剪；分片已被释放时从其下界重新定位，已访问的部分不重复
+    private void forEachShard(long minValue, long maxValue, ShardVisitor visitor) {
+        long from = minValue;
+        while (true) {
+            Long floor = shards.floorKey(from); // 可能覆盖from的第一个分片
+            Iterator<Map.Entry<Long, RangeShard>> it = shards.tailMap(floor == null ? from : floor, true).entrySet().iterator();
+            Map.Entry<Long, RangeShard> current = it.hasNext() ? it.next() : null;
+            boolean restarted = false;
+            while (current != null && current.getKey() <= maxValue) {
+                Map.Entry<Long, RangeShard> next = it.hasNext() ? it.next() : null;
+                long upper = next == null ? maxValue : Math.min(maxValue, next.getKey() - 1); // 按跳表键裁剪
+                long lower = Math.max(from, current.getKey());
+                if (lower <= upper && !visitor.visit(current.getValue(), lower, upper)) {
+                    from = lower;
+                    restarted = true;
+                    break;
+                }
+                current = next;
+            }
+            if (!restarted) {
+                return;
+            }
+        }
+    }
+
+    private interface ShardVisitor {
+        // 分片已被释放时返回false
+        boolean visit(RangeShard shard, long lower, long upper);
+    }
+
+    // 分裂、合并、重分区不改变数据，但新分片的版本号总是取时钟新值，避免范围内的最大版本号回退
+    @Override
+    public long version(long minValue, long maxValue) {
+        long version = 0;
+        Long from = shards.floorKey(minValue);
+        Iterator<Map.Entry<Long, RangeShard>> it = shards.tailMap(from == null ? minValue : from, true).entrySet().iterator();
+        Map.Entry<Long, RangeShard> current = it.hasNext() ? it.next() : null;
+        while (current != null && current.getKey() <= maxValue) {
+            Map.Entry<Long, RangeShard> next = it.hasNext() ? it.next() : null;
+            long upper = next == null ? maxValue : Math.min(maxValue, next.getKey() - 1);
+            if (Math.max(minValue, current.getKey()) <= upper) {
+                version = Math.max(version, current.getValue().getVersion());
+            }
+            current = next;
+        }
+        return version;
+    }
+
+    @Override
+    public MemoryUsage memoryUsage() {
+        long ids = 0;
+        long payload = 0;
+        long overhead = 0;
+        for (RangeShard shard : shards.values()) {
+            MemoryUsage usage = shard.memoryUsage();
+            ids += usage.getIds();
+            payload += usage.getPayloadBytes();
+            overhead += usage.getOverheadBytes() + MemoryUsage.SKIP_LIST_ENTRY + MemoryUsage.BOXED_LONG;
+        }
+        return new MemoryUsage("shards", ids, payload, overhead);
+    }
+
+    @Override
+    public List<MemoryUsage> shardMemoryUsage() {
+        List<MemoryUsage> results = new ArrayList<>();
+        for (RangeShard shard : shards.values()) {
+            results.add(shard.memoryUsage());
+        }
+        return results;
+    }
+
+    @Override
+    public int shardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public CodecUsage codecUsage() {
+        CodecUsage usage = new CodecUsage();
+        for (RangeShard shard : shards.values()) {
+            shard.collectCodecUsage(usage);
+        }
+        return usage;
+    }
+
+    @Override
+    public void printShards() {
+        for (RangeShard shard : shards.values()) {
+            System.out.println("Range shard [" + shard.getStart() + ", " + shard.getEnd() + "], size: " + shard.getSize() + ", ids: " + shard.getIdCount());
+        }
+    }
+
+    // 等深重分区：从fromKey开始取最多maxShards个相邻分片，按实际的键分布把其中的文件ID
+    // 重新切分成若干份，使每个分片的ID数接近全局平均值；返回下一个窗口的起始键，null表示已到末尾
+    // 只需要与写者互斥，新分片先全部发布，再按升序移除多余的旧键，读者始终看到完整的数据
+    Long rebalance(Long fromKey, int maxShards) {
+        long stamp = structureLock.writeLock();
+        try {
+            return rebalanceWindow(fromKey, maxShards);
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    private Long rebalanceWindow(Long fromKey, int maxShards) {
+        long target = Math.max(shardIdThreshold / 8, totalIds.sum() / Math.max(1, shards.size())); // 避免切出过多的小分片
+        List<RangeShard> window = new ArrayList<>();
+        Long nextKey = null;
+        for (Map.Entry<Long, RangeShard> entry : (fromKey == null ? shards : shards.tailMap(fromKey, true)).entrySet()) {
+            if (window.size() == maxShards) {
+                nextKey = entry.getKey();
+                break;
+            }
+            window.add(entry.getValue());
+        }
+        if (window.isEmpty()) {
+            return null;
+        }
+
+        // 收集窗口内的键和倒排链，按跳表键裁剪
+        TreeMap<Long, PostingList> entries = new TreeMap<>();
+        long windowIds = 0;
+        boolean balanced = true;
+        for (int i = 0; i < window.size(); i++) {
+            RangeShard shard = window.get(i);
+            long upper = i + 1 < window.size() ? window.get(i + 1).getStart() - 1 : (nextKey == null ? Long.MAX_VALUE : nextKey - 1);
+            entries.putAll(shard.getIndex().subMap(shard.getStart(), true, upper, true));
+            windowIds += shard.getIdCount();
+            balanced &= shard.getIdCount() <= target * 2 && shard.getIdCount() * 2 >= target;
+        }
+        int pieces = (int) Math.min(entries.size(), Math.max(1, Math.round((double) windowIds / target)));
+        if (balanced && pieces == window.size()) {
+            return nextKey;
+        }
+
+        // 按累计ID数切分
+        List<RangeShard> rebuilt = new ArrayList<>(pieces);
+        long pieceStart = window.get(0).getStart();
+        long lastEnd = window.get(window.size() - 1).getEnd();
+        Long pieceFirstKey = null;
+        long accumulated = 0;
+        int piece = 1;
+        for (Map.Entry<Long, PostingList> entry : entries.entrySet()) {
+            if (pieceFirstKey == null) {
+                pieceFirstKey = entry.getKey();
+            }
+            accumulated += entry.getValue().size();
+            Long next = entries.higherKey(entry.getKey());
+            if (piece < pieces && next != null && accumulated * pieces >= windowIds * piece) {
+                rebuilt.add(new RangeShard(pieceStart, next - 1, arena, entries.subMap(pieceFirstKey, true, entry.getKey(), true)));
+                pieceStart = next;
+                pieceFirstKey = null;
+                piece++;
+            }
+        }
+        SortedMap<Long, PostingList> rest = pieceFirstKey == null ? new TreeMap<Long, PostingList>() : entries.tailMap(pieceFirstKey, true);
+        rebuilt.add(new RangeShard(pieceStart, lastEnd, arena, rest));
+
+        // 发布：先放入所有新分片（同键直接替换），再按升序移除不再使用的旧键
+        Set<Long> newKeys = new HashSet<>();
+        for (RangeShard shard : rebuilt) {
+            newKeys.add(shard.getStart());
+        }
+        for (int i = rebuilt.size() - 1; i >= 0; i--) {
+            rebuilt.get(i).touch(clock.incrementAndGet());
+            shards.put(rebuilt.get(i).getStart(), rebuilt.get(i));
+        }
+        for (RangeShard shard : window) {
+            if (!newKeys.contains(shard.getStart())) {
+                shards.remove(shard.getStart());
+            }
+        }
+        for (RangeShard shard : window) {
+            retire(shard);
+        }
+        return nextKey;
+    }
+
+    long getTotalIds() {
+        return totalIds.sum();
+    }
+
+    // 值不在任何分片内时新建分片，新分片不越过下一个分片的起点；
+    // 与前后分片首尾相接时合并，取代原来的整表排序合并
+    private RangeShard createShard(long value, RangeShard floor) {
+        long end = value + shardSizeThreshold;
+        Long nextKey = shards.higherKey(value);
+        if (nextKey != null && end >= nextKey) {
+            end = nextKey - 1;
+        }
+        RangeShard shard;
+        if (floor != null && floor.getEnd() + 1 >= value) {
+            shard = floor;
+            shard.setEnd(end);
+        } else {
+            shard = new RangeShard(value, end, arena);
+            shard.touch(clock.incrementAndGet());
+            shards.put(value, shard);
+        }
+        if (nextKey != null && end + 1 >= nextKey) {
+            shard = mergeWithNext(shard, shards.get(nextKey));
+        }
+        return shard;
+    }
+
+    // 写时复制合并：先发布合并后的分片，再移除后一个分片
+    private RangeShard mergeWithNext(RangeShard shard, RangeShard next) {
+        RangeShard merged = shard.merge(next);
+        merged.touch(clock.incrementAndGet());
+        shards.put(merged.getStart(), merged);
+        shards.remove(next.getStart());
+        retire(shard);
+        retire(next);
+        return merged;
+    }
+
+    // 写时复制分裂：先发布右半分片，再用左半分片替换原分片
+    private void split(RangeShard shard) {
+        RangeShard[] halves = shard.split();
+        halves[0].touch(clock.incrementAndGet());
+        halves[1].touch(clock.incrementAndGet());
+        shards.put(halves[1].getStart(), halves[1]);
+        shards.put(halves[0].getStart(), halves[0]);
+        retire(shard);
+    }
+
+    // 已从跳表中替换掉的分片：堆外存储时释放其倒排链，堆上存储时留给垃圾回收
+    private void retire(RangeShard shard) {
+        if (arena != null) {
+            shard.retire();
+        }
+    }
+}
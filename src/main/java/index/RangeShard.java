@@ -1,20 +1,49 @@
 package index;
 
-import utils.Varint;
+import utils.OffHeapArena;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+// 范围分片：每个分片一把读写锁；分裂、合并都生成新分片并拷贝倒排链，被替换的旧分片不再被修改
+// 倒排链存放在堆外时，旧分片在被替换后由retire释放，之后拿到读锁的读者看到retired，回到跳表重新定位
 class RangeShard {
-    private long start;
-    private long end;
-    private NavigableMap<Long, byte[]> index;
+    private final long start;
+    private volatile long end;
+    private NavigableMap<Long, PostingList> index;
+    private int idCount; // 分片内文件ID总数（倒排量）
+    private volatile long payloadBytes; // 倒排链编码数据，写锁内增量维护
+    private volatile long postingBytes; // 倒排链对象及数组容量，写锁内增量维护
+    private final ReadWriteLock lock; // 分片读写锁
+    private final AtomicLong version; // 数据版本号，只增不减，用于查询缓存失效
+    private final OffHeapArena arena; // 为null时倒排链存放在堆上
+    private boolean retired; // 已被替换且倒排链已释放，写锁内修改
 
-    public RangeShard(long start, long end) {
+    public RangeShard(long start, long end, OffHeapArena arena) {
         this.start = start;
         this.end = end;
+        this.arena = arena;
         this.index = new TreeMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        this.version = new AtomicLong();
+    }
+
+    // 由已有的键和倒排链构建分片，倒排链深拷贝
+    RangeShard(long start, long end, OffHeapArena arena, SortedMap<Long, PostingList> entries) {
+        this(start, end, arena);
+        for (Map.Entry<Long, PostingList> entry : entries.entrySet()) {
+            putCopy(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void putCopy(long key, PostingList posting) {
+        PostingList copy = posting.copy();
+        index.put(key, copy);
+        idCount += copy.size();
+        payloadBytes += copy.sizeInBytes();
+        postingBytes += copy.retainedBytes();
     }
 
     public boolean contains(long value) {
@@ -25,39 +54,144 @@ class RangeShard {
         return minValue <= end && maxValue >= start;
     }
 
-    public void add(long value, int fileId) {
-        byte[] existing = index.get(value);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+    public boolean add(long value, int fileId) {
+        lock.writeLock().lock();
+        try {
+            PostingList posting = index.get(value);
+            long payload = 0;
+            long retained = 0;
+            if (posting == null) {
+                posting = new PostingList(arena);
+                index.put(value, posting);
+            } else {
+                payload = posting.sizeInBytes();
+                retained = posting.retainedBytes();
+            }
+            boolean added = posting.add(fileId); // 有序追加，无需重写整条倒排链
+            if (added) {
+                idCount++;
+            }
+            payloadBytes += posting.sizeInBytes() - payload;
+            postingBytes += posting.retainedBytes() - retained;
+            return added;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(long value, int fileId) {
+        lock.writeLock().lock();
         try {
-            if (existing != null) {
-                out.write(existing);
+            PostingList posting = index.get(value);
+            if (posting == null) {
+                return false;
+            }
+            long payload = posting.sizeInBytes();
+            long retained = posting.retainedBytes();
+            if (!posting.remove(fileId)) {
+                return false;
+            }
+            idCount--;
+            if (posting.isEmpty()) {
+                index.remove(value);
+                posting.free();
+                payloadBytes -= payload;
+                postingBytes -= retained;
+            } else {
+                payloadBytes += posting.sizeInBytes() - payload;
+                postingBytes += posting.retainedBytes() - retained;
             }
-            Varint.writeUnsignedVarInt(fileId, out);
-        } catch (IOException e) {
-            e.printStackTrace();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        index.put(value, out.toByteArray());
     }
 
-    public void remove(long value, int fileId) {
-        byte[] existing = index.get(value);
-        if (existing != null) {
-            List<Integer> ids = decodeVarint(existing);
-            ids.remove((Integer) fileId);
-            if (ids.isEmpty()) {
+    // 返回实际删除的个数
+    public int removeAll(long value, int[] sortedIds, int count) {
+        lock.writeLock().lock();
+        try {
+            PostingList posting = index.get(value);
+            if (posting == null) {
+                return 0;
+            }
+            long payload = posting.sizeInBytes();
+            long retained = posting.retainedBytes();
+            int removed = posting.removeAll(sortedIds, count);
+            idCount -= removed;
+            if (posting.isEmpty()) {
                 index.remove(value);
+                posting.free();
+                payloadBytes -= payload;
+                postingBytes -= retained;
             } else {
-                index.put(value, encodeVarint(ids));
+                payloadBytes += posting.sizeInBytes() - payload;
+                postingBytes += posting.retainedBytes() - retained;
             }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
+    // 分片已被释放时返回null
     public List<Integer> search(long minValue, long maxValue) {
-        List<Integer> results = new ArrayList<>();
-        for (Map.Entry<Long, byte[]> entry : index.subMap(minValue, true, maxValue, true).entrySet()) {
-            results.addAll(decodeVarint(entry.getValue()));
+        lock.readLock().lock();
+        try {
+            if (retired) {
+                return null;
+            }
+            List<Integer> results = new ArrayList<>();
+            for (PostingList posting : index.subMap(minValue, true, maxValue, true).values()) {
+                results.addAll(posting.toList());
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 分片已被释放时返回false，不访问任何值
+    boolean scan(long minValue, long maxValue, RangeFieldIndex.ValueVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            if (retired) {
+                return false;
+            }
+            for (Map.Entry<Long, PostingList> entry : index.subMap(minValue, true, maxValue, true).entrySet()) {
+                long value = entry.getKey();
+                PostingList.Cursor cursor = entry.getValue().cursor();
+                for (int id = cursor.next(); id != PostingList.NO_MORE_IDS; id = cursor.next()) {
+                    visitor.visit(value, id);
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
         }
-        return results;
+    }
+
+    // 已从跳表中移除后调用：等待读者退出，释放堆外的倒排链
+    void retire() {
+        lock.writeLock().lock();
+        try {
+            retired = true;
+            for (PostingList posting : index.values()) {
+                posting.free();
+            }
+            index = new TreeMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    // 修改完成后由所属索引调用，取版本时钟的新值；并发写者乱序调用时保留较大值
+    void touch(long newVersion) {
+        version.accumulateAndGet(newVersion, Math::max);
     }
 
     public long getStart() {
@@ -72,7 +206,7 @@ class RangeShard {
         this.end = end;
     }
 
-    public NavigableMap<Long, byte[]> getIndex() {
+    public NavigableMap<Long, PostingList> getIndex() {
         return index;
     }
 
@@ -80,51 +214,57 @@ class RangeShard {
         return index.size();
     }
 
-    public void merge(RangeShard other) {
-        for (Map.Entry<Long, byte[]> entry : other.getIndex().entrySet()) {
-            List<Integer> ids = decodeVarint(entry.getValue());
-            for (int fileId : ids) {
-                this.add(entry.getKey(), fileId);
-            }
-        }
-        this.end = other.getEnd();
+    public int getIdCount() {
+        return idCount;
     }
 
-    public RangeShard split() {
-        long middle = (start + end) / 2;
-        RangeShard newShard = new RangeShard(middle + 1, end);
-        this.end = middle;
+    // 读取增量维护的计数器，不加锁；overhead包括倒排链的对象与空余容量、TreeMap节点和装箱的键
+    MemoryUsage memoryUsage() {
+        long payload = payloadBytes;
+        long treeBytes = MemoryUsage.OBJECT_HEADER + 32 + (long) index.size() * (MemoryUsage.TREE_ENTRY + MemoryUsage.BOXED_LONG);
+        return new MemoryUsage("[" + start + ", " + end + "]", idCount, payload, postingBytes - payload + treeBytes);
+    }
 
-        for (Iterator<Map.Entry<Long, byte[]>> it = index.tailMap(middle + 1).entrySet().iterator(); it.hasNext(); ) {
-            Map.Entry<Long, byte[]> entry = it.next();
-            List<Integer> ids = decodeVarint(entry.getValue());
-            for (int fileId : ids) {
-                newShard.add(entry.getKey(), fileId);
+    // 已释放的分片不再有倒排链，什么也不累计
+    void collectCodecUsage(CodecUsage usage) {
+        lock.readLock().lock();
+        try {
+            for (PostingList posting : index.values()) {
+                posting.collectCodecUsage(usage);
             }
-            it.remove();
+        } finally {
+            lock.readLock().unlock();
         }
-
-        return newShard;
     }
 
-    private List<Integer> decodeVarint(byte[] bytes) {
-        List<Integer> ids = new ArrayList<>();
-        int[] offset = {0};
-        while (offset[0] < bytes.length) {
-            ids.add(Varint.readUnsignedVarInt(bytes, offset));
+    // 与后一个相邻分片合并为新分片，两个原分片保持不变
+    public RangeShard merge(RangeShard next) {
+        RangeShard merged = new RangeShard(start, next.getEnd(), arena, index);
+        for (Map.Entry<Long, PostingList> entry : next.getIndex().entrySet()) {
+            merged.putCopy(entry.getKey(), entry.getValue());
         }
-        return ids;
+        return merged;
     }
 
-    private byte[] encodeVarint(List<Integer> ids) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            for (int id : ids) {
-                Varint.writeUnsignedVarInt(id, out);
+    // 按文件ID数量的中位键（等深）分裂为左右两个新分片，原分片保持不变，供读者在发布前继续使用
+    // 调用方保证分片内至少有两个不同的键
+    public RangeShard[] split() {
+        long cut = index.firstKey();
+        int accumulated = 0;
+        for (Map.Entry<Long, PostingList> entry : index.entrySet()) {
+            cut = entry.getKey();
+            accumulated += entry.getValue().size();
+            if (accumulated * 2 >= idCount) {
+                break;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return out.toByteArray();
+        if (cut == index.lastKey()) { // 保证右半分片非空
+            cut = index.lowerKey(cut);
+        }
+
+        // 倒排链整体拷贝到新分片，无需解码重建
+        RangeShard left = new RangeShard(start, cut, arena, index.headMap(cut, true));
+        RangeShard right = new RangeShard(cut + 1, end, arena, index.tailMap(cut, false));
+        return new RangeShard[]{left, right};
     }
 }
@@ -0,0 +1,57 @@
+package index;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 后台段合并：分层存储的精确字段段数超过maxSegments时，每轮合并到不超过maxSegments，轮与轮之间间隔intervalMillis
+// 合并在锁外进行，只在发布结果时短暂持有字段的写锁
+public class SegmentCompactor {
+    private final InvertIndex invertIndex;
+    private final int maxSegments; // 每个字段保留的段数上限
+    private final long intervalMillis;
+    private ScheduledExecutorService executor;
+
+    public SegmentCompactor(InvertIndex invertIndex, int maxSegments, long intervalMillis) {
+        this.invertIndex = invertIndex;
+        this.maxSegments = maxSegments;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "segment-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::compactOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // 执行一轮，返回合并次数
+    public int compactOnce() {
+        int merges = 0;
+        for (String key : invertIndex.tieredKeys()) {
+            merges += invertIndex.compactSegments(key, maxSegments, false);
+        }
+        return merges;
+    }
+
+    // 冻结增量后把每个字段合并为一个段，墓碑全部丢弃
+    public int compactAll() {
+        int merges = 0;
+        for (String key : invertIndex.tieredKeys()) {
+            merges += invertIndex.compactSegments(key, 1, true);
+        }
+        return merges;
+    }
+}
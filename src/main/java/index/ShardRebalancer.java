@@ -0,0 +1,70 @@
+package index;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 后台等深重分区：按实际值分布把范围分片调整为大致相等的文件ID数
+// 限速方式：每个窗口只锁定shardsPerWindow个分片，每轮最多处理windowsPerRound个窗口，轮与轮之间间隔intervalMillis
+public class ShardRebalancer {
+    private final InvertIndex invertIndex;
+    private final int shardsPerWindow; // 每次持有写锁处理的分片数
+    private final int windowsPerRound; // 每个字段每轮处理的窗口数
+    private final long intervalMillis; // 两轮之间的间隔
+    private final Map<String, Long> cursors; // 各字段下一个窗口的起始键
+    private ScheduledExecutorService executor;
+
+    public ShardRebalancer(InvertIndex invertIndex, int shardsPerWindow, int windowsPerRound, long intervalMillis) {
+        this.invertIndex = invertIndex;
+        this.shardsPerWindow = shardsPerWindow;
+        this.windowsPerRound = windowsPerRound;
+        this.intervalMillis = intervalMillis;
+        this.cursors = new HashMap<>();
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::rebalanceOnce, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // 执行一轮：每个字段从上次的位置继续处理至多windowsPerRound个窗口
+    public synchronized void rebalanceOnce() {
+        for (String key : invertIndex.rangeKeys()) {
+            Long cursor = cursors.get(key);
+            for (int i = 0; i < windowsPerRound; i++) {
+                cursor = invertIndex.rebalanceRangeShards(key, cursor, shardsPerWindow);
+                if (cursor == null) {
+                    break;
+                }
+                Thread.yield(); // 窗口之间释放写锁，让等待的写者先执行
+            }
+            cursors.put(key, cursor);
+        }
+    }
+
+    // 同步地对指定字段完整扫描passes遍
+    public synchronized void rebalanceAll(String key, int passes) {
+        for (int pass = 0; pass < passes; pass++) {
+            Long cursor = null;
+            do {
+                cursor = invertIndex.rebalanceRangeShards(key, cursor, shardsPerWindow);
+            } while (cursor != null);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package index;
+
+import FS.INodeFile;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// 持续查询：条件为合取查询加可选的目录路径，文件位于该目录的子树中且满足所有谓词即匹配
+// 写操作使文件开始匹配、不再匹配或匹配时被修改时，在命名空间写锁内把事件放入有界队列，由订阅方取出
+// 队列满时丢弃之后的所有事件并标记溢出，订阅方取完已有事件后会收到IllegalStateException，应关闭后重新订阅
+public class Subscription implements Closeable {
+    private final SubscriptionIndex owner;
+    private final Query query; // 为null时只按路径匹配
+    private final IndexField[] fields; // 与query的谓词一一对应
+    private final String[] path; // 目录路径的各级名称，空数组表示整个命名空间
+    private final BlockingQueue<SubscriptionEvent> events;
+    private volatile boolean overflowed;
+    private volatile boolean closed;
+    int access; // 在谓词索引中登记所用谓词的下标，-1表示按路径或全匹配登记，由SubscriptionIndex维护
+
+    Subscription(SubscriptionIndex owner, Query query, IndexField[] fields, String[] path, int capacity) {
+        this.owner = owner;
+        this.query = query;
+        this.fields = fields;
+        this.path = path;
+        this.events = new LinkedBlockingQueue<>(capacity);
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public String getPath() {
+        return "/" + String.join("/", path);
+    }
+
+    // 取出下一个事件，最多等待timeoutMillis，超时返回null
+    public SubscriptionEvent poll(long timeoutMillis) throws InterruptedException {
+        SubscriptionEvent event = events.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (event == null) {
+            checkOverflow();
+        }
+        return event;
+    }
+
+    // 取出当前所有事件，返回取出的个数
+    public int drainTo(Collection<SubscriptionEvent> out) {
+        int drained = events.drainTo(out);
+        if (drained == 0) {
+            checkOverflow();
+        }
+        return drained;
+    }
+
+    public int getPendingCount() {
+        return events.size();
+    }
+
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+
+    // 文件当前是否满足订阅条件
+    public boolean matches(INodeFile file) {
+        return matches(file, SubscriptionIndex.directoriesOf(file));
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            owner.remove(this);
+        }
+    }
+
+    Query.Predicate predicate(int i) {
+        return query.getPredicates().get(i);
+    }
+
+    IndexField field(int i) {
+        return fields[i];
+    }
+
+    int predicateCount() {
+        return fields.length;
+    }
+
+    String[] pathComponents() {
+        return path;
+    }
+
+    // directories为文件所在目录从根向下的各级名称
+    boolean matches(INodeFile file, String[] directories) {
+        if (directories.length < path.length) {
+            return false;
+        }
+        for (int i = 0; i < path.length; i++) {
+            if (!path[i].equals(directories[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < fields.length; i++) {
+            Query.Predicate predicate = predicate(i);
+            if (predicate.isRange()) {
+                long value = fields[i].rangeValueOf(file);
+                if (value < predicate.getMinValue() || value > predicate.getMaxValue()) {
+                    return false;
+                }
+            } else if (!predicate.getValue().equals(fields[i].valueOf(file))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 返回false表示队列已满，事件被丢弃
+    boolean publish(SubscriptionEvent.Type type, int fileId) {
+        if (overflowed) {
+            return false;
+        }
+        if (!events.offer(new SubscriptionEvent(type, fileId))) {
+            overflowed = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void checkOverflow() {
+        if (overflowed) {
+            throw new IllegalStateException("Subscription " + query + " under " + getPath() + " overflowed, events were dropped");
+        }
+    }
+}
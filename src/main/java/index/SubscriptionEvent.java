@@ -0,0 +1,29 @@
+package index;
+
+// 订阅事件：文件开始满足订阅条件、不再满足，或满足条件时被修改
+public class SubscriptionEvent {
+    public enum Type {
+        ADDED, REMOVED, MODIFIED
+    }
+
+    private final Type type;
+    private final int fileId;
+
+    SubscriptionEvent(Type type, int fileId) {
+        this.type = type;
+        this.fileId = fileId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getFileId() {
+        return fileId;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + fileId;
+    }
+}
@@ -0,0 +1,307 @@
+package index;
+
+import FS.INodeDirectory;
+import FS.INodeFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 订阅的倒排谓词索引：每个订阅只按一个访问谓词登记，优先选当前登记订阅最少的精确谓词，其次是目录路径，再次是第一个范围谓词，都没有则为全匹配
+// 写操作时只取出文件取值命中的订阅再完整求值，不逐个求值全部订阅
+// 精确谓词按字段和取值散列；路径按目录名组成前缀树，沿文件所在目录向下查找；范围谓词每个字段一棵静态区间树，订阅变化时重建
+// 匹配发生在命名空间写锁内，订阅和取消很少，所有方法在this上同步即可
+final class SubscriptionIndex {
+    private final Map<IndexField, Map<String, List<Subscription>>> exact;
+    private final PathNode paths;
+    private final Map<IndexField, List<Subscription>> ranges;
+    private final Map<IndexField, IntervalTree> rangeTrees;
+    private final List<Subscription> matchAll;
+    private volatile int count;
+    private long candidates; // 完整求值的订阅数
+    private long published;
+    private long dropped; // 因队列满丢弃的事件
+
+    SubscriptionIndex() {
+        this.exact = new HashMap<>();
+        this.paths = new PathNode();
+        this.ranges = new HashMap<>();
+        this.rangeTrees = new HashMap<>();
+        this.matchAll = new ArrayList<>();
+    }
+
+    synchronized Subscription add(Query query, IndexField[] fields, String[] path, int capacity) {
+        Subscription subscription = new Subscription(this, query, fields, path, capacity);
+        subscription.access = chooseAccess(subscription);
+        if (subscription.access >= 0) {
+            Query.Predicate predicate = subscription.predicate(subscription.access);
+            IndexField field = subscription.field(subscription.access);
+            if (predicate.isRange()) {
+                ranges.computeIfAbsent(field, k -> new ArrayList<>()).add(subscription);
+                rebuild(field);
+            } else {
+                exact.computeIfAbsent(field, k -> new HashMap<>()).computeIfAbsent(predicate.getValue(), k -> new ArrayList<>()).add(subscription);
+            }
+        } else if (path.length > 0) {
+            PathNode node = paths;
+            for (String name : path) {
+                node = node.children.computeIfAbsent(name, k -> new PathNode());
+            }
+            node.subscriptions.add(subscription);
+        } else {
+            matchAll.add(subscription);
+        }
+        count++;
+        return subscription;
+    }
+
+    synchronized void remove(Subscription subscription) {
+        if (subscription.access >= 0) {
+            Query.Predicate predicate = subscription.predicate(subscription.access);
+            IndexField field = subscription.field(subscription.access);
+            if (predicate.isRange()) {
+                ranges.get(field).remove(subscription);
+                rebuild(field);
+            } else {
+                Map<String, List<Subscription>> values = exact.get(field);
+                List<Subscription> bucket = values.get(predicate.getValue());
+                bucket.remove(subscription);
+                if (bucket.isEmpty()) {
+                    values.remove(predicate.getValue());
+                    if (values.isEmpty()) {
+                        exact.remove(field);
+                    }
+                }
+            }
+        } else if (subscription.pathComponents().length > 0) {
+            PathNode node = paths;
+            for (String name : subscription.pathComponents()) {
+                node = node.children.get(name);
+            }
+            node.subscriptions.remove(subscription); // 空的前缀树结点保留，目录数有限
+        } else {
+            matchAll.remove(subscription);
+        }
+        count--;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // 文件当前满足的订阅
+    synchronized List<Subscription> match(INodeFile file) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        String[] directories = directoriesOf(file);
+        List<Subscription> matched = new ArrayList<>();
+        for (Map.Entry<IndexField, Map<String, List<Subscription>>> entry : exact.entrySet()) {
+            List<Subscription> bucket = entry.getValue().get(entry.getKey().valueOf(file));
+            if (bucket != null) {
+                verify(bucket, file, directories, matched);
+            }
+        }
+        PathNode node = paths;
+        for (int i = 0; i < directories.length && node != null; i++) {
+            node = node.children.get(directories[i]);
+            if (node != null) {
+                verify(node.subscriptions, file, directories, matched);
+            }
+        }
+        for (Map.Entry<IndexField, IntervalTree> entry : rangeTrees.entrySet()) {
+            List<Subscription> stabbed = new ArrayList<>();
+            entry.getValue().stab(entry.getKey().rangeValueOf(file), stabbed);
+            verify(stabbed, file, directories, matched);
+        }
+        verify(matchAll, file, directories, matched);
+        return matched;
+    }
+
+    void added(INodeFile file) {
+        for (Subscription subscription : match(file)) {
+            publish(subscription, SubscriptionEvent.Type.ADDED, file.id);
+        }
+    }
+
+    void removed(INodeFile file) {
+        for (Subscription subscription : match(file)) {
+            publish(subscription, SubscriptionEvent.Type.REMOVED, file.id);
+        }
+    }
+
+    // before为修改前满足的订阅
+    void updated(INodeFile file, List<Subscription> before) {
+        List<Subscription> after = match(file);
+        if (before.isEmpty() && after.isEmpty()) {
+            return;
+        }
+        Set<Subscription> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+        remaining.addAll(after);
+        for (Subscription subscription : before) {
+            publish(subscription, remaining.remove(subscription) ? SubscriptionEvent.Type.MODIFIED : SubscriptionEvent.Type.REMOVED, file.id);
+        }
+        for (Subscription subscription : remaining) {
+            publish(subscription, SubscriptionEvent.Type.ADDED, file.id);
+        }
+    }
+
+    synchronized long getCandidateCount() {
+        return candidates;
+    }
+
+    synchronized long getPublishedCount() {
+        return published;
+    }
+
+    synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    // 文件所在目录从根向下的各级名称，不含根目录
+    static String[] directoriesOf(INodeFile file) {
+        String[] names = new String[Math.max(0, file.getDepth() - 1)];
+        INodeDirectory dir = file.getParent();
+        for (int i = names.length - 1; i >= 0; i--) {
+            names[i] = dir.getName();
+            dir = dir.getParent();
+        }
+        return names;
+    }
+
+    private synchronized void publish(Subscription subscription, SubscriptionEvent.Type type, int fileId) {
+        if (subscription.publish(type, fileId)) {
+            published++;
+        } else {
+            dropped++;
+        }
+    }
+
+    private void verify(List<Subscription> subscriptions, INodeFile file, String[] directories, List<Subscription> matched) {
+        candidates += subscriptions.size();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.matches(file, directories)) {
+                matched.add(subscription);
+            }
+        }
+    }
+
+    private int chooseAccess(Subscription subscription) {
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        for (int i = 0; i < subscription.predicateCount(); i++) {
+            Query.Predicate predicate = subscription.predicate(i);
+            if (!predicate.isRange()) {
+                Map<String, List<Subscription>> values = exact.get(subscription.field(i));
+                List<Subscription> bucket = values == null ? null : values.get(predicate.getValue());
+                int size = bucket == null ? 0 : bucket.size();
+                if (size < bestSize) {
+                    best = i;
+                    bestSize = size;
+                }
+            }
+        }
+        if (best >= 0 || subscription.pathComponents().length > 0) {
+            return best;
+        }
+        return subscription.predicateCount() > 0 ? 0 : -1;
+    }
+
+    private void rebuild(IndexField field) {
+        List<Subscription> subscriptions = ranges.get(field);
+        if (subscriptions.isEmpty()) {
+            ranges.remove(field);
+            rangeTrees.remove(field);
+        } else {
+            rangeTrees.put(field, IntervalTree.build(subscriptions));
+        }
+    }
+
+    private static final class PathNode {
+        final Map<String, PathNode> children = new HashMap<>();
+        final List<Subscription> subscriptions = new ArrayList<>();
+    }
+
+    // 静态中心区间树：每个结点保存包含中心点的区间，分别按下界升序和上界降序排列；
+    // 查询点在中心左侧时只需扫描下界不超过它的区间，右侧同理，再递归到一侧子树
+    private static final class IntervalTree {
+        final long center;
+        final Subscription[] byMin;
+        final Subscription[] byMax;
+        final IntervalTree left; // 上界小于center的区间
+        final IntervalTree right; // 下界大于center的区间
+
+        private IntervalTree(long center, Subscription[] byMin, Subscription[] byMax, IntervalTree left, IntervalTree right) {
+            this.center = center;
+            this.byMin = byMin;
+            this.byMax = byMax;
+            this.left = left;
+            this.right = right;
+        }
+
+        static IntervalTree build(List<Subscription> subscriptions) {
+            if (subscriptions.isEmpty()) {
+                return null;
+            }
+            long[] midpoints = new long[subscriptions.size()];
+            for (int i = 0; i < midpoints.length; i++) {
+                long min = min(subscriptions.get(i));
+                long max = max(subscriptions.get(i));
+                midpoints[i] = (min >> 1) + (max >> 1) + (min & max & 1); // 向下取整的平均值，不会溢出
+            }
+            Arrays.sort(midpoints);
+            long center = midpoints[midpoints.length / 2]; // 中点的中位数，至少被一个区间包含，保证递归收敛
+            List<Subscription> here = new ArrayList<>();
+            List<Subscription> below = new ArrayList<>();
+            List<Subscription> above = new ArrayList<>();
+            for (Subscription subscription : subscriptions) {
+                if (max(subscription) < center) {
+                    below.add(subscription);
+                } else if (min(subscription) > center) {
+                    above.add(subscription);
+                } else {
+                    here.add(subscription);
+                }
+            }
+            Subscription[] byMin = here.toArray(new Subscription[0]);
+            Arrays.sort(byMin, Comparator.comparingLong(IntervalTree::min));
+            Subscription[] byMax = here.toArray(new Subscription[0]);
+            Arrays.sort(byMax, (a, b) -> Long.compare(max(b), max(a)));
+            return new IntervalTree(center, byMin, byMax, build(below), build(above));
+        }
+
+        void stab(long value, List<Subscription> out) {
+            if (value < center) {
+                for (int i = 0; i < byMin.length && min(byMin[i]) <= value; i++) {
+                    out.add(byMin[i]);
+                }
+                if (left != null) {
+                    left.stab(value, out);
+                }
+            } else if (value > center) {
+                for (int i = 0; i < byMax.length && max(byMax[i]) >= value; i++) {
+                    out.add(byMax[i]);
+                }
+                if (right != null) {
+                    right.stab(value, out);
+                }
+            } else {
+                Collections.addAll(out, byMin);
+            }
+        }
+
+        private static long min(Subscription subscription) {
+            return subscription.predicate(subscription.access).getMinValue();
+        }
+
+        private static long max(Subscription subscription) {
+            return subscription.predicate(subscription.access).getMaxValue();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package index;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 分层（LSM）精确匹配索引：写入只追加到可变的内存增量（memtable），删除记为墓碑，不改动已有的倒排链
+// 增量累计memtableLimit条记录后冻结为不可变段：段内每个取值的新增id为压缩的PostingList，墓碑为升序int[]
+// 查询按id归并增量和所有段，同一id以最新的记录为准；段由SegmentCompactor在后台两两合并，合并到最老的段时丢弃墓碑
+// 读写锁只保护增量和段数组的替换，段一经发布不再修改，合并在锁外进行；倒排链在堆上
+class TieredPostingIndex implements ExactFieldIndex {
+    private final int memtableLimit; // 增量冻结为段的记录数
+    private final ReadWriteLock lock;
+    private Map<String, MemPosting> memtable; // 写锁内修改
+    private int memtableOps;
+    private volatile Segment[] segments; // 下标0最老，写时复制
+    private final Map<String, Long> versions; // 各取值的版本号，每次写入递增
+    private final Object compaction; // 同一时刻只进行一次合并
+    private final AtomicLong mergedIds; // 合并时重写的id与墓碑总数，衡量写放大
+
+    TieredPostingIndex(int memtableLimit) {
+        this.memtableLimit = memtableLimit;
+        this.lock = new ReentrantReadWriteLock();
+        this.memtable = new HashMap<>();
+        this.segments = new Segment[0];
+        this.versions = new ConcurrentHashMap<>();
+        this.compaction = new Object();
+        this.mergedIds = new AtomicLong();
+    }
+
+    @Override
+    public void add(String value, int fileId) {
+        record(value, fileId);
+    }
+
+    @Override
+    public void remove(String value, int fileId) {
+        record(value, ~fileId);
+    }
+
+    private void record(String value, int op) {
+        lock.writeLock().lock();
+        try {
+            memtable.computeIfAbsent(value, key -> new MemPosting()).append(op);
+            versions.merge(value, 1L, Long::sum);
+            if (++memtableOps >= memtableLimit) {
+                freeze();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 写锁内调用：把增量转换为新的最新段
+    private void freeze() {
+        Map<String, SegmentPosting> postings = new HashMap<>();
+        for (Map.Entry<String, MemPosting> entry : memtable.entrySet()) {
+            int[][] resolved = entry.getValue().resolve();
+            postings.put(entry.getKey(), new SegmentPosting(PostingList.of(resolved[0], resolved[0].length), resolved[1]));
+        }
+        Segment[] next = Arrays.copyOf(segments, segments.length + 1);
+        next[segments.length] = new Segment(postings);
+        segments = next;
+        memtable = new HashMap<>();
+        memtableOps = 0;
+    }
+
+    // 立即冻结增量，合并前调用使所有记录都进入段
+    void flush() {
+        lock.writeLock().lock();
+        try {
+            if (memtableOps > 0) {
+                freeze();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> search(String value) {
+        return new IdList(searchIds(value));
+    }
+
+    @Override
+    public int[] searchIds(String value) {
+        Segment[] snapshot;
+        int[][] recent = null;
+        lock.readLock().lock();
+        try {
+            snapshot = segments;
+            MemPosting mem = memtable.get(value);
+            if (mem != null) {
+                recent = mem.resolve();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Source> sources = new ArrayList<>(snapshot.length + 1); // 从新到旧
+        if (recent != null) {
+            sources.add(new Source(PostingList.of(recent[0], recent[0].length), recent[1]));
+        }
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            SegmentPosting posting = snapshot[i].postings.get(value);
+            if (posting != null) {
+                sources.add(new Source(posting.ids, posting.tombstones));
+            }
+        }
+        if (sources.isEmpty()) {
+            return new int[0];
+        }
+        if (sources.size() == 1) { // 只有一个来源时墓碑不会遮住其中的id
+            return sources.get(0).ids.toArray();
+        }
+        IntBuffer live = new IntBuffer();
+        merge(sources, live, null);
+        return live.toArray();
+    }
+
+    // 按id升序归并多个来源（从新到旧），同一id以最新来源中的记录为准：新增写入live，墓碑写入tombstones（为null时丢弃）
+    // 来源按(头部id, 下标)组成最小堆，同一id最先出堆的是最新的来源；每个id的代价为O(log 来源数)
+    private static void merge(List<Source> sources, IntBuffer live, IntBuffer tombstones) {
+        Source[] heap = new Source[sources.size()];
+        int size = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            source.order = i;
+            if (source.head() != PostingList.NO_MORE_IDS) {
+                heap[size++] = source;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, size, i);
+        }
+        while (size > 0) {
+            int min = heap[0].head();
+            if (heap[0].nextId == min) {
+                live.add(min);
+            } else if (tombstones != null) {
+                tombstones.add(min);
+            }
+            while (size > 0 && heap[0].head() == min) {
+                heap[0].skip(min);
+                if (heap[0].head() == PostingList.NO_MORE_IDS) {
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, size, 0);
+            }
+        }
+    }
+
+    private static void siftDown(Source[] heap, int size, int i) {
+        Source source = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].before(heap[child])) {
+                child++;
+            }
+            if (!heap[child].before(source)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = source;
+    }
+
+    // 段数超过maxSegments时，反复合并相邻两段中id数之和最小的一对，返回合并次数
+    // 段数组只在两处替换：freeze在末尾追加新段，合并在compaction上串行进行，因此合并期间两段的下标pick不变
+    // 发布时仍按对象核对这两段，不变式被打破时抛出异常而不是拼接错误的段
+    int compact(int maxSegments) {
+        synchronized (compaction) {
+            int merges = 0;
+            while (true) {
+                Segment[] current = segments;
+                if (current.length <= Math.max(1, maxSegments)) {
+                    return merges;
+                }
+                int pick = 0;
+                for (int i = 1; i + 1 < current.length; i++) {
+                    if (current[i].idCount + current[i + 1].idCount < current[pick].idCount + current[pick + 1].idCount) {
+                        pick = i;
+                    }
+                }
+                Segment merged = merge(current[pick], current[pick + 1], pick == 0);
+                lock.writeLock().lock();
+                try {
+                    Segment[] latest = segments;
+                    if (latest[pick] != current[pick] || latest[pick + 1] != current[pick + 1]) {
+                        throw new IllegalStateException("Segments moved during compaction at " + pick);
+                    }
+                    Segment[] next = new Segment[latest.length - 1];
+                    System.arraycopy(latest, 0, next, 0, pick);
+                    next[pick] = merged;
+                    System.arraycopy(latest, pick + 2, next, pick + 1, latest.length - pick - 2);
+                    segments = next;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                mergedIds.addAndGet(merged.idCount);
+                merges++;
+            }
+        }
+    }
+
+    private static Segment merge(Segment older, Segment newer, boolean oldest) {
+        Set<String> values = new HashSet<>(older.postings.keySet());
+        values.addAll(newer.postings.keySet());
+        Map<String, SegmentPosting> postings = new HashMap<>();
+        for (String value : values) {
+            List<Source> sources = new ArrayList<>(2);
+            SegmentPosting posting = newer.postings.get(value);
+            if (posting != null) {
+                sources.add(new Source(posting.ids, posting.tombstones));
+            }
+            posting = older.postings.get(value);
+            if (posting != null) {
+                sources.add(new Source(posting.ids, posting.tombstones));
+            }
+            IntBuffer live = new IntBuffer();
+            IntBuffer tombstones = oldest ? null : new IntBuffer(); // 没有更老的段需要遮住时墓碑可以丢弃
+            merge(sources, live, tombstones);
+            int[] tombstoneIds = tombstones == null ? new int[0] : tombstones.toArray();
+            if (live.size > 0 || tombstoneIds.length > 0) {
+                postings.put(value, new SegmentPosting(PostingList.of(live.ids, live.size), tombstoneIds));
+            }
+        }
+        return new Segment(postings);
+    }
+
+    int segmentCount() {
+        return segments.length;
+    }
+
+    long getMergedIds() {
+        return mergedIds.get();
+    }
+
+    @Override
+    public long version(String value) {
+        Long version = versions.get(value);
+        return version == null ? 0 : version;
+    }
+
+    // 段中的id数包含已被更新的段遮住、尚未合并掉的部分
+    @Override
+    public MemoryUsage memoryUsage() {
+        long ids = 0;
+        long payload = 0;
+        long overhead = 0;
+        for (Segment segment : segments) {
+            for (Map.Entry<String, SegmentPosting> entry : segment.postings.entrySet()) {
+                SegmentPosting posting = entry.getValue();
+                ids += posting.ids.size();
+                payload += posting.ids.sizeInBytes() + 4L * posting.tombstones.length;
+                overhead += posting.ids.retainedBytes() - posting.ids.sizeInBytes() + MemoryUsage.ARRAY_HEADER + entryBytes(entry.getKey());
+            }
+        }
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, MemPosting> entry : memtable.entrySet()) {
+                payload += 4L * entry.getValue().size;
+                overhead += 4L * (entry.getValue().ops.length - entry.getValue().size) + MemoryUsage.ARRAY_HEADER + entryBytes(entry.getKey());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new MemoryUsage("segments", ids, payload, overhead);
+    }
+
+    @Override
+    public List<MemoryUsage> largestValues(int n) {
+        Map<String, long[]> totals = new HashMap<>(); // 取值 -> {id数, 编码字节, 其他字节}
+        for (Segment segment : segments) {
+            for (Map.Entry<String, SegmentPosting> entry : segment.postings.entrySet()) {
+                SegmentPosting posting = entry.getValue();
+                long[] total = totals.computeIfAbsent(entry.getKey(), key -> new long[3]);
+                total[0] += posting.ids.size();
+                total[1] += posting.ids.sizeInBytes() + 4L * posting.tombstones.length;
+                total[2] += posting.ids.retainedBytes() - posting.ids.sizeInBytes() + MemoryUsage.ARRAY_HEADER + entryBytes(entry.getKey());
+            }
+        }
+        PriorityQueue<MemoryUsage> top = new PriorityQueue<>(Comparator.comparingLong(MemoryUsage::getTotalBytes));
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            top.add(new MemoryUsage(entry.getKey(), total[0], total[1], total[2]));
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<MemoryUsage> results = new ArrayList<>(top);
+        results.sort(Comparator.comparingLong(MemoryUsage::getTotalBytes).reversed());
+        return results;
+    }
+
+    @Override
+    public CodecUsage codecUsage() {
+        CodecUsage usage = new CodecUsage();
+        for (Segment segment : segments) {
+            for (SegmentPosting posting : segment.postings.values()) {
+                posting.ids.collectCodecUsage(usage);
+            }
+        }
+        return usage;
+    }
+
+    // 出现在任一段或增量中的取值数，包括已被全部删除、尚未合并掉的取值
+    @Override
+    public int valueCount() {
+        return values().size();
+    }
+
+    @Override
+    public Set<String> values() {
+        Set<String> values = new HashSet<>();
+        for (Segment segment : segments) {
+            values.addAll(segment.postings.keySet());
+        }
+        lock.readLock().lock();
+        try {
+            values.addAll(memtable.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return values;
+    }
+
+    private static long entryBytes(String value) {
+        return MemoryUsage.HASH_ENTRY + MemoryUsage.stringBytes(value);
+    }
+
+    // 增量中一个取值的记录，按写入顺序追加，删除记为~id
+    private static final class MemPosting {
+        int[] ops = new int[4];
+        int size;
+
+        void append(int op) {
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+            }
+            ops[size++] = op;
+        }
+
+        // 每个id只保留最后一条记录，返回升序的新增id和墓碑
+        int[][] resolve() {
+            long[] keyed = new long[size]; // 高32位为id，低32位为写入顺序
+            for (int i = 0; i < size; i++) {
+                int id = ops[i] >= 0 ? ops[i] : ~ops[i];
+                keyed[i] = (long) id << 32 | i;
+            }
+            Arrays.sort(keyed);
+            IntBuffer adds = new IntBuffer();
+            IntBuffer tombstones = new IntBuffer();
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && keyed[i + 1] >>> 32 == keyed[i] >>> 32) {
+                    continue; // 同一id后面还有更新的记录
+                }
+                int op = ops[(int) keyed[i]];
+                if (op >= 0) {
+                    adds.add(op);
+                } else {
+                    tombstones.add(~op);
+                }
+            }
+            return new int[][]{adds.toArray(), tombstones.toArray()};
+        }
+    }
+
+    private static final class Segment {
+        final Map<String, SegmentPosting> postings;
+        final long idCount; // 新增id与墓碑总数
+
+        Segment(Map<String, SegmentPosting> postings) {
+            this.postings = postings;
+            long count = 0;
+            for (SegmentPosting posting : postings.values()) {
+                count += posting.ids.size() + posting.tombstones.length;
+            }
+            this.idCount = count;
+        }
+    }
+
+    private static final class SegmentPosting {
+        final PostingList ids;
+        final int[] tombstones; // 升序
+
+        SegmentPosting(PostingList ids, int[] tombstones) {
+            this.ids = ids;
+            this.tombstones = tombstones;
+        }
+    }
+
+    // 归并的一路输入：新增id的游标和墓碑数组，当前头部为两者中较小的id
+    private static final class Source {
+        final PostingList ids;
+        final PostingList.Cursor cursor;
+        final int[] tombstones;
+        int nextId;
+        int tombstone; // 下一个墓碑的下标
+        int order; // 在本次归并中的下标，越小越新
+
+        Source(PostingList ids, int[] tombstones) {
+            this.ids = ids;
+            this.cursor = ids.cursor();
+            this.tombstones = tombstones;
+            this.nextId = cursor.next();
+        }
+
+        int head() {
+            return tombstone < tombstones.length ? Math.min(nextId, tombstones[tombstone]) : nextId;
+        }
+
+        boolean before(Source other) {
+            int head = head();
+            int otherHead = other.head();
+            return head < otherHead || (head == otherHead && order < other.order);
+        }
+
+        void skip(int id) {
+            if (nextId == id) {
+                nextId = cursor.next();
+            }
+            if (tombstone < tombstones.length && tombstones[tombstone] == id) {
+                tombstone++;
+            }
+        }
+    }
+
+    private static final class IntBuffer {
+        int[] ids = new int[16];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
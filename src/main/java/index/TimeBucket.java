@@ -0,0 +1,187 @@
+package index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 时间桶：覆盖[start, start + span - 1]，按时间升序保存(时间, 文件ID)，时间相同时按写入顺序
+// 每个桶一把读写锁；压缩生成的新桶拷贝数据，被替换的旧桶不再被修改
+class TimeBucket {
+    private final long start;
+    private final long span;
+    private long[] times;
+    private int[] ids;
+    private int size;
+    private final ReadWriteLock lock;
+    private final AtomicLong version; // 数据版本号，只增不减，用于查询缓存失效
+
+    TimeBucket(long start, long span) {
+        this(start, span, new long[8], new int[8], 0);
+    }
+
+    private TimeBucket(long start, long span, long[] times, int[] ids, int size) {
+        this.start = start;
+        this.span = span;
+        this.times = times;
+        this.ids = ids;
+        this.size = size;
+        this.lock = new ReentrantReadWriteLock();
+        this.version = new AtomicLong();
+    }
+
+    // (时间, 文件ID)已存在时什么也不做，与倒排链的add一致，在线构建重放旁路日志时可能重复加入
+    void add(long time, int fileId) {
+        lock.writeLock().lock();
+        try {
+            if (size > 0 && times[size - 1] >= time) {
+                for (int pos = upperBound(time) - 1; pos >= 0 && times[pos] == time; pos--) {
+                    if (ids[pos] == fileId) {
+                        return;
+                    }
+                }
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int pos = size;
+            if (size > 0 && times[size - 1] > time) { // 乱序到达时插入到对应位置
+                pos = upperBound(time);
+                System.arraycopy(times, pos, times, pos + 1, size - pos);
+                System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            }
+            times[pos] = time;
+            ids[pos] = fileId;
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean remove(long time, int fileId) {
+        lock.writeLock().lock();
+        try {
+            for (int pos = lowerBound(time); pos < size && times[pos] == time; pos++) {
+                if (ids[pos] == fileId) {
+                    System.arraycopy(times, pos + 1, times, pos, size - pos - 1);
+                    System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // 收集时间落在[minValue, maxValue]内的文件ID，整桶命中时不做比较
+    void collect(long minValue, long maxValue, List<Integer> results) {
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return;
+            }
+            int from = minValue <= times[0] ? 0 : lowerBound(minValue);
+            int to = maxValue >= times[size - 1] ? size : upperBound(maxValue);
+            for (int i = from; i < to; i++) {
+                results.add(ids[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void scan(long minValue, long maxValue, RangeFieldIndex.ValueVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int i = lowerBound(minValue); i < size && times[i] <= maxValue; i++) {
+                visitor.visit(times[i], ids[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 合并若干时间上相邻且升序的细粒度桶，直接拼接即保持有序
+    static TimeBucket merge(long start, long span, List<TimeBucket> parts) {
+        int total = 0;
+        for (TimeBucket part : parts) {
+            total += part.size;
+        }
+        long[] times = new long[Math.max(total, 1)];
+        int[] ids = new int[Math.max(total, 1)];
+        int n = 0;
+        for (TimeBucket part : parts) {
+            System.arraycopy(part.times, 0, times, n, part.size);
+            System.arraycopy(part.ids, 0, ids, n, part.size);
+            n += part.size;
+        }
+        return new TimeBucket(start, span, times, ids, n);
+    }
+
+    long getVersion() {
+        return version.get();
+    }
+
+    // 修改完成后由所属索引调用，取版本时钟的新值；并发写者乱序调用时保留较大值
+    void touch(long newVersion) {
+        version.accumulateAndGet(newVersion, Math::max);
+    }
+
+    // 数组长度与size的快照，不加锁；payload为已使用的(时间, ID)对，overhead为对象头和数组空余容量
+    MemoryUsage memoryUsage() {
+        int n = size;
+        long payload = n * 12L;
+        long retained = MemoryUsage.OBJECT_HEADER + 48 + 2L * MemoryUsage.ARRAY_HEADER + times.length * 8L + ids.length * 4L;
+        return new MemoryUsage("[" + start + ", " + getEnd() + "]", n, payload, retained - payload);
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return start + span - 1;
+    }
+
+    long getSpan() {
+        return span;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    // 第一个时间>=time的位置
+    private int lowerBound(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // 第一个时间>time的位置
+    private int upperBound(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
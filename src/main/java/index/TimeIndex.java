@@ -0,0 +1,219 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+// 时间分区索引：创建/修改时间几乎单调递增，按分钟对齐的桶只做尾部追加，
+// 较旧的桶逐级压缩为小时桶、天桶；各级粒度互相整除，桶之间不会重叠
+// 与RangeIndex相同，桶的归属区间由跳表键决定，压缩时先发布粗桶再依次移除细桶；
+// 写入已有桶只持有结构读锁和桶锁，新建桶和压缩持有结构写锁，读者不加结构锁
+class TimeIndex implements RangeFieldIndex {
+    static final long MINUTE = 60 * 1000L;
+    static final long HOUR = 60 * MINUTE;
+    static final long DAY = 24 * HOUR;
+    private static final long[] GRANULARITY = {MINUTE, HOUR, DAY}; // 各级桶粒度
+    private static final long[] COMPACT_AGE = {0, 2 * HOUR, 2 * DAY}; // 早于最新时间该时长的桶压缩到对应粒度
+
+    private final ConcurrentSkipListMap<Long, TimeBucket> buckets;
+    private final AtomicLong latest; // 已写入的最大时间，作为压缩的参考时钟
+    private final StampedLock structureLock; // 桶结构锁
+    private final AtomicLong clock; // 版本时钟：桶修改后以及压缩生成的新桶发布前取新值
+
+    TimeIndex() {
+        this.buckets = new ConcurrentSkipListMap<>();
+        this.latest = new AtomicLong(Long.MIN_VALUE);
+        this.structureLock = new StampedLock();
+        this.clock = new AtomicLong();
+    }
+
+    @Override
+    public void add(long time, int fileId) {
+        latest.accumulateAndGet(time, Math::max);
+        long stamp = structureLock.readLock();
+        try {
+            Map.Entry<Long, TimeBucket> floor = buckets.floorEntry(time);
+            if (floor != null && time <= floor.getValue().getEnd()) {
+                floor.getValue().add(time, fileId);
+                floor.getValue().touch(clock.incrementAndGet());
+                return;
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+        long writeStamp = structureLock.writeLock();
+        try {
+            Map.Entry<Long, TimeBucket> floor = buckets.floorEntry(time);
+            TimeBucket bucket = floor == null ? null : floor.getValue();
+            if (bucket == null || time > bucket.getEnd()) {
+                long start = time - Math.floorMod(time, MINUTE);
+                bucket = new TimeBucket(start, MINUTE);
+                buckets.put(start, bucket);
+                bucket.add(time, fileId);
+                bucket.touch(clock.incrementAndGet());
+                compact(); // 每开启一个新的分钟桶检查一次压缩；先加入再压缩，写入旧时段的id随桶一起并入粗粒度桶
+                return;
+            }
+            bucket.add(time, fileId);
+            bucket.touch(clock.incrementAndGet());
+        } finally {
+            structureLock.unlockWrite(writeStamp);
+        }
+    }
+
+    @Override
+    public void remove(long time, int fileId) {
+        long stamp = structureLock.readLock();
+        try {
+            Map.Entry<Long, TimeBucket> floor = buckets.floorEntry(time);
+            if (floor != null && time <= floor.getValue().getEnd() && floor.getValue().remove(time, fileId)) {
+                floor.getValue().touch(clock.incrementAndGet());
+            }
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Integer> search(long minValue, long maxValue) {
+        List<Integer> results = new ArrayList<>();
+        Long from = buckets.floorKey(minValue);
+        Iterator<Map.Entry<Long, TimeBucket>> it = buckets.tailMap(from == null ? minValue : from, true).entrySet().iterator();
+        Map.Entry<Long, TimeBucket> current = it.hasNext() ? it.next() : null;
+        while (current != null && current.getKey() <= maxValue) {
+            Map.Entry<Long, TimeBucket> next = it.hasNext() ? it.next() : null;
+            long upper = next == null ? maxValue : Math.min(maxValue, next.getKey() - 1); // 按跳表键裁剪
+            current.getValue().collect(Math.max(minValue, current.getKey()), upper, results);
+            current = next;
+        }
+        return results;
+    }
+
+    @Override
+    public void scan(long minValue, long maxValue, ValueVisitor visitor) {
+        Long from = buckets.floorKey(minValue);
+        Iterator<Map.Entry<Long, TimeBucket>> it = buckets.tailMap(from == null ? minValue : from, true).entrySet().iterator();
+        Map.Entry<Long, TimeBucket> current = it.hasNext() ? it.next() : null;
+        while (current != null && current.getKey() <= maxValue) {
+            Map.Entry<Long, TimeBucket> next = it.hasNext() ? it.next() : null;
+            long upper = next == null ? maxValue : Math.min(maxValue, next.getKey() - 1);
+            long lower = Math.max(minValue, current.getKey());
+            if (lower <= upper) {
+                current.getValue().scan(lower, upper, visitor);
+            }
+            current = next;
+        }
+    }
+
+    // 最近windowMillis毫秒内的文件
+    List<Integer> searchRecent(long now, long windowMillis) {
+        return search(now - windowMillis, Long.MAX_VALUE);
+    }
+
+    // 与RangeIndex相同：相交桶的最大版本号，压缩生成的新桶取时钟新值
+    @Override
+    public long version(long minValue, long maxValue) {
+        long version = 0;
+        Long from = buckets.floorKey(minValue);
+        Iterator<Map.Entry<Long, TimeBucket>> it = buckets.tailMap(from == null ? minValue : from, true).entrySet().iterator();
+        Map.Entry<Long, TimeBucket> current = it.hasNext() ? it.next() : null;
+        while (current != null && current.getKey() <= maxValue) {
+            Map.Entry<Long, TimeBucket> next = it.hasNext() ? it.next() : null;
+            long upper = next == null ? maxValue : Math.min(maxValue, next.getKey() - 1);
+            if (Math.max(minValue, current.getKey()) <= upper) {
+                version = Math.max(version, current.getValue().getVersion());
+            }
+            current = next;
+        }
+        return version;
+    }
+
+    @Override
+    public MemoryUsage memoryUsage() {
+        long ids = 0;
+        long payload = 0;
+        long overhead = 0;
+        for (TimeBucket bucket : buckets.values()) {
+            MemoryUsage usage = bucket.memoryUsage();
+            ids += usage.getIds();
+            payload += usage.getPayloadBytes();
+            overhead += usage.getOverheadBytes() + MemoryUsage.SKIP_LIST_ENTRY + MemoryUsage.BOXED_LONG;
+        }
+        return new MemoryUsage("buckets", ids, payload, overhead);
+    }
+
+    @Override
+    public List<MemoryUsage> shardMemoryUsage() {
+        List<MemoryUsage> results = new ArrayList<>();
+        for (TimeBucket bucket : buckets.values()) {
+            results.add(bucket.memoryUsage());
+        }
+        return results;
+    }
+
+    @Override
+    public int shardCount() {
+        return buckets.size();
+    }
+
+    // 时间桶中的ID是未编码的int数组，计为ARRAY
+    @Override
+    public CodecUsage codecUsage() {
+        CodecUsage usage = new CodecUsage();
+        for (TimeBucket bucket : buckets.values()) {
+            MemoryUsage memory = bucket.memoryUsage();
+            usage.add(PostingCodec.ARRAY, memory.getIds(), memory.getIds() * 4);
+        }
+        return usage;
+    }
+
+    @Override
+    public void printShards() {
+        for (TimeBucket bucket : buckets.values()) {
+            System.out.println("Time bucket [" + bucket.getStart() + ", " + bucket.getEnd() + "], size: " + bucket.getSize());
+        }
+    }
+
+    // 将早于COMPACT_AGE的细粒度桶合并为粗粒度桶，调用方持有结构写锁
+    private void compact() {
+        for (int level = 1; level < GRANULARITY.length; level++) {
+            long granularity = GRANULARITY[level];
+            long cutoff = latest.get() - COMPACT_AGE[level];
+            List<TimeBucket> group = new ArrayList<>();
+            long groupStart = Long.MIN_VALUE;
+            for (TimeBucket bucket : buckets.headMap(cutoff).values()) {
+                long start = bucket.getStart() - Math.floorMod(bucket.getStart(), granularity);
+                if (start + granularity - 1 >= cutoff) {
+                    break; // 所属粗桶尚未完全过期
+                }
+                if (start != groupStart) {
+                    compactGroup(groupStart, granularity, group);
+                    group.clear();
+                    groupStart = start;
+                }
+                if (bucket.getSpan() < granularity) {
+                    group.add(bucket);
+                }
+            }
+            compactGroup(groupStart, granularity, group);
+        }
+    }
+
+    private void compactGroup(long start, long span, List<TimeBucket> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        TimeBucket merged = TimeBucket.merge(start, span, group);
+        merged.touch(clock.incrementAndGet());
+        buckets.put(start, merged);
+        for (TimeBucket bucket : group) {
+            if (bucket.getStart() != start) {
+                buckets.remove(bucket.getStart());
+            }
+        }
+    }
+}
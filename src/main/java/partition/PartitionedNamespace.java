@@ -0,0 +1,218 @@
+package partition;
+
+import FS.FSDirectory;
+import index.IndexField;
+import index.InvertIndex;
+import index.Query;
+import workload.Operation;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// 分区命名空间：按路径的前partitionDepth级把子树分配到N个相互独立的FSDirectory/InvertIndex分区，
+// 每个分区有自己的目录树锁、索引和堆上数据，以及一个执行查询的线程池
+// 真实命名空间的顶层目录很少且大小悬殊，partitionDepth为1时容易倾斜；更浅的目录在每个分区都建一份，
+// 其创建和删除广播到所有分区，其下的子树各自归属一个分区
+// 写操作按路径转发到所属分区，在调用线程上直接执行，不同分区的写入互不阻塞；
+// 查询分发到所有分区的线程池并行执行（scatter-gather），再合并结果
+// inode编号在进程内全局唯一，各分区的结果可以直接拼接；文件不跨分区，合取查询在各分区内求交后合并即可
+public class PartitionedNamespace implements Closeable {
+    private final Partition[] partitions;
+    private final Partitioner partitioner;
+    private final int partitionDepth; // 决定归属的路径级数
+
+    public PartitionedNamespace(int partitionCount, int threadsPerPartition, Partitioner partitioner) {
+        this(partitionCount, threadsPerPartition, partitioner, 1);
+    }
+
+    public PartitionedNamespace(int partitionCount, int threadsPerPartition, Partitioner partitioner, int partitionDepth) {
+        if (partitionCount <= 0 || partitionDepth <= 0) {
+            throw new IllegalArgumentException("Partition count and depth must be positive: " + partitionCount + ", " + partitionDepth);
+        }
+        this.partitioner = partitioner;
+        this.partitionDepth = partitionDepth;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, threadsPerPartition);
+        }
+    }
+
+    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks) {
+        Partition partition = route(path);
+        return partition.fsDirectory.createFile(path, owner, permission, fileName, fileExtension, fileSize, blocks, partition.invertedIndex);
+    }
+
+    public boolean createDirectory(String path, String owner, int permission) {
+        if (depthOf(path) < partitionDepth) {
+            boolean created = false;
+            for (Partition partition : partitions) {
+                created |= partition.fsDirectory.createDirectory(path, owner, permission);
+            }
+            return created;
+        }
+        return route(path).fsDirectory.createDirectory(path, owner, permission);
+    }
+
+    // 浅层路径可能是各分区都有的目录，也可能是只在一个分区中的文件，广播删除
+    public boolean deleteNode(String path) {
+        if (depthOf(path) < partitionDepth) {
+            boolean deleted = false;
+            for (Partition partition : partitions) {
+                deleted |= partition.fsDirectory.deleteNode(path, partition.invertedIndex);
+            }
+            return deleted;
+        }
+        Partition partition = route(path);
+        return partition.fsDirectory.deleteNode(path, partition.invertedIndex);
+    }
+
+    public boolean updateFile(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks) {
+        Partition partition = route(path);
+        return partition.fsDirectory.updateFile(path, newFileName, newFileExtension, newFileSize, newBlocks, partition.invertedIndex);
+    }
+
+    // 执行负载中的一条操作：写操作转发到所属分区，查询分发到所有分区
+    public boolean apply(Operation operation) {
+        switch (operation.getType()) {
+            case SEARCH:
+                return !search(operation.getArgument(0), operation.getArgument(1)).isEmpty();
+            case SEARCH_RANGE:
+                return !searchRange(operation.getArgument(0), Long.parseLong(operation.getArgument(1)), Long.parseLong(operation.getArgument(2))).isEmpty();
+            case CREATE_DIRECTORY:
+                return createDirectory(operation.getPath(), operation.getArgument(1), Integer.parseInt(operation.getArgument(2)));
+            case DELETE:
+                return deleteNode(operation.getPath());
+            default:
+                Partition partition = route(operation.getPath());
+                return operation.apply(partition.fsDirectory, partition.invertedIndex);
+        }
+    }
+
+    public List<Integer> search(String metadata, String value) {
+        return scatterGather(partition -> partition.fsDirectory.search(metadata, value, partition.invertedIndex));
+    }
+
+    public List<Integer> searchRange(String metadata, long minValue, long maxValue) {
+        return scatterGather(partition -> partition.fsDirectory.searchRange(metadata, minValue, maxValue, partition.invertedIndex));
+    }
+
+    // 合取查询，结果升序
+    public List<Integer> search(Query query) {
+        List<Integer> results = scatterGather(partition -> partition.invertedIndex.search(query));
+        results.sort(null);
+        return results;
+    }
+
+    // 在所有分区上并行注册字段并回填，任一分区已存在同名字段则返回false
+    public boolean registerIndexField(IndexField field) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            futures.add(CompletableFuture.supplyAsync(() -> partition.fsDirectory.registerIndexField(field, partition.invertedIndex), partition.executor));
+        }
+        boolean registered = true;
+        for (CompletableFuture<Boolean> future : futures) {
+            registered &= future.join();
+        }
+        return registered;
+    }
+
+    // 路径的前partitionDepth级（不足则为整个路径）决定所属分区
+    public int partitionOf(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = start;
+        for (int level = 0; level < partitionDepth && end >= 0; level++) {
+            end = path.indexOf('/', end + 1);
+        }
+        String prefix = end < 0 ? path.substring(start) : path.substring(start, end);
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("Path has no top-level component: " + path);
+        }
+        return partitioner.partitionOf(prefix, partitions.length);
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    public FSDirectory getDirectory(int partition) {
+        return partitions[partition].fsDirectory;
+    }
+
+    public InvertIndex getIndex(int partition) {
+        return partitions[partition].invertedIndex;
+    }
+
+    @Override
+    public void close() {
+        for (Partition partition : partitions) {
+            partition.executor.shutdown();
+        }
+        for (Partition partition : partitions) {
+            try {
+                partition.executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static int depthOf(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) == '/' && i + 1 < path.length()) {
+                depth++;
+            }
+        }
+        return path.startsWith("/") ? depth : depth + 1;
+    }
+
+    private Partition route(String path) {
+        return partitions[partitionOf(path)];
+    }
+
+    // 最后一个分区在调用线程上执行，其余分区提交给各自的线程池，全部完成后按分区顺序拼接
+    private List<Integer> scatterGather(Function<Partition, List<Integer>> task) {
+        List<CompletableFuture<List<Integer>>> futures = new ArrayList<>(partitions.length - 1);
+        for (int i = 0; i < partitions.length - 1; i++) {
+            Partition partition = partitions[i];
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(partition), partition.executor));
+        }
+        List<Integer> local = task.apply(partitions[partitions.length - 1]);
+        List<List<Integer>> parts = new ArrayList<>(partitions.length);
+        int total = local.size();
+        for (CompletableFuture<List<Integer>> future : futures) {
+            List<Integer> part = future.join();
+            parts.add(part);
+            total += part.size();
+        }
+        parts.add(local);
+        List<Integer> results = new ArrayList<>(total);
+        for (List<Integer> part : parts) {
+            results.addAll(part);
+        }
+        return results;
+    }
+
+    private static class Partition {
+        final FSDirectory fsDirectory;
+        final InvertIndex invertedIndex;
+        final ExecutorService executor;
+
+        Partition(int index, int threads) {
+            this.fsDirectory = new FSDirectory();
+            this.invertedIndex = new InvertIndex();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "partition-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
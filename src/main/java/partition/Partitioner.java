@@ -0,0 +1,27 @@
+package partition;
+
+import java.util.Arrays;
+
+// 路径前缀（去掉开头的/，取前partitionDepth级，如"d1"或"d1/d7"）到分区的映射
+public interface Partitioner {
+    int partitionOf(String prefix, int partitions);
+
+    // 按前缀哈希分配，分布均匀但不保持顺序
+    static Partitioner hash() {
+        return (prefix, partitions) -> Math.floorMod(prefix.hashCode(), partitions);
+    }
+
+    // 按字典序区间分配：小于splitPoints[0]的到0号分区，[splitPoints[i-1], splitPoints[i])到i号分区
+    // 分区数必须为splitPoints.length + 1
+    static Partitioner range(String... splitPoints) {
+        String[] points = splitPoints.clone();
+        Arrays.sort(points);
+        return (prefix, partitions) -> {
+            if (partitions != points.length + 1) {
+                throw new IllegalArgumentException("Range partitioner with " + points.length + " split points needs " + (points.length + 1) + " partitions, got " + partitions);
+            }
+            int pos = Arrays.binarySearch(points, prefix);
+            return pos >= 0 ? pos + 1 : -pos - 1;
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package replication;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+import workload.Operation;
+
+// 变更流中的一条记录：主节点上一次成功的写操作及其全局序号
+// 文本形式为一行：序号、提交时间、inode编号后接操作的轨迹行，均以制表符分隔；轨迹行已转义参数中的制表符和换行
+public class ChangeRecord {
+    private final long sequence;
+    private final long commitMillis; // 主节点提交时的墙钟时间，用于计算副本延迟
+    private final int inodeId; // 创建操作为主节点分配的编号，其余为0
+    private final Operation operation;
+
+    public ChangeRecord(long sequence, long commitMillis, int inodeId, Operation operation) {
+        this.sequence = sequence;
+        this.commitMillis = commitMillis;
+        this.inodeId = inodeId;
+        this.operation = operation;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCommitMillis() {
+        return commitMillis;
+    }
+
+    public int getInodeId() {
+        return inodeId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    // 在副本的目录树和索引上重做，沿用主节点的inode编号和时间
+    public boolean apply(FSDirectory fsDirectory, InvertIndex invertedIndex) {
+        switch (operation.getType()) {
+            case CREATE_FILE:
+                return fsDirectory.replicateCreateFile(inodeId, operation.getTime(), operation.getPath(), operation.getArgument(1), Integer.parseInt(operation.getArgument(2)),
+                        operation.getArgument(3), operation.getArgument(4), Long.parseLong(operation.getArgument(5)), operation.getBlocks(), invertedIndex);
+            case CREATE_DIRECTORY:
+                return fsDirectory.replicateCreateDirectory(inodeId, operation.getTime(), operation.getPath(), operation.getArgument(1), Integer.parseInt(operation.getArgument(2)));
+            case DELETE:
+                return fsDirectory.deleteNode(operation.getPath(), invertedIndex);
+            case UPDATE:
+                return fsDirectory.replicateUpdateFile(operation.getTime(), operation.getPath(), operation.getArgument(1), operation.getArgument(2),
+                        Long.parseLong(operation.getArgument(3)), operation.getBlocks(), invertedIndex);
+            default:
+                throw new IllegalStateException("Not a mutation: " + operation.getType());
+        }
+    }
+
+    public String toLine() {
+        return sequence + "\t" + commitMillis + "\t" + inodeId + "\t" + operation.toLine();
+    }
+
+    public static ChangeRecord parse(String line) {
+        String[] parts = line.split("\t", 4);
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("Malformed change record: " + line);
+        }
+        return new ChangeRecord(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]), Operation.parse(parts[3]));
+    }
+
+    @Override
+    public String toString() {
+        return toLine();
+    }
+}
@@ -0,0 +1,12 @@
+package replication;
+
+import java.util.List;
+
+// 副本读取变更记录的来源：进程内的ChangeStream，或通过网络订阅主节点的RemoteChangeSource
+public interface ChangeSource {
+    // 返回序号大于afterSequence的至多max条记录，按序号升序；暂时没有新记录时最多等待timeoutMillis，超时返回空列表
+    List<ChangeRecord> poll(long afterSequence, int max, long timeoutMillis) throws InterruptedException;
+
+    // 已知的主节点最新序号
+    long getLastSequence();
+}
@@ -0,0 +1,80 @@
+package replication;
+
+import FS.MutationListener;
+import workload.Operation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 主节点的变更流：注册为FSDirectory的MutationListener后，每次成功的写操作在写锁内追加一条记录，序号从1开始连续递增
+// 记录保存在定长的环形缓冲中，只保留最近capacity条；副本读取的位置早于保留范围时抛出IllegalStateException，需要重建
+public class ChangeStream implements MutationListener, ChangeSource {
+    private final ChangeRecord[] ring;
+    private long lastSequence; // 最后一条记录的序号，由this保护
+
+    public ChangeStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.ring = new ChangeRecord[capacity];
+    }
+
+    @Override
+    public void onCreateFile(int id, String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, long time) {
+        append(id, Operation.createFile(0, path, owner, permission, fileName, fileExtension, fileSize, blocks, time));
+    }
+
+    @Override
+    public void onCreateDirectory(int id, String path, String owner, int permission, long time) {
+        append(id, Operation.createDirectory(0, path, owner, permission, time));
+    }
+
+    @Override
+    public void onDelete(String path) {
+        append(0, Operation.delete(0, path));
+    }
+
+    @Override
+    public void onUpdate(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, long time) {
+        append(0, Operation.update(0, path, newFileName, newFileExtension, newFileSize, newBlocks, time));
+    }
+
+    @Override
+    public synchronized List<ChangeRecord> poll(long afterSequence, int max, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (lastSequence <= afterSequence) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return Collections.emptyList();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        if (afterSequence < lastSequence - ring.length) {
+            throw new IllegalStateException("Sequence " + (afterSequence + 1) + " is no longer retained, oldest is " + (lastSequence - ring.length + 1));
+        }
+        int count = (int) Math.min(max, lastSequence - afterSequence);
+        List<ChangeRecord> records = new ArrayList<>(count);
+        for (long sequence = afterSequence + 1; sequence <= afterSequence + count; sequence++) {
+            records.add(ring[(int) (sequence % ring.length)]);
+        }
+        return records;
+    }
+
+    @Override
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    private synchronized void append(int inodeId, Operation operation) {
+        long sequence = lastSequence + 1;
+        ring[(int) (sequence % ring.length)] = new ChangeRecord(sequence, System.currentTimeMillis(), inodeId, operation);
+        lastSequence = sequence;
+        notifyAll();
+    }
+}
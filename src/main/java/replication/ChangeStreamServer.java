@@ -0,0 +1,109 @@
+package replication;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 通过TCP把ChangeStream发送给其他进程中的副本，每个订阅者一个线程
+// 协议为UTF-8文本行：订阅者先发送起始序号（只接收大于它的记录），之后服务端持续发送记录行；
+// 空闲时每隔HEARTBEAT_MILLIS发送一行"#\t最新序号"作为心跳，副本据此计算延迟
+public class ChangeStreamServer implements Closeable {
+    static final String HEARTBEAT = "#";
+    private static final long HEARTBEAT_MILLIS = 100;
+    private static final int BATCH_SIZE = 1024;
+
+    private final ChangeStream stream;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> subscribers;
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    public ChangeStreamServer(ChangeStream stream, InetSocketAddress address) throws IOException {
+        this.stream = stream;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.bind(address);
+        this.subscribers = ConcurrentHashMap.newKeySet();
+        this.acceptor = new Thread(this::runAcceptor, "change-stream-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : subscribers) {
+            socket.close();
+        }
+    }
+
+    private void runAcceptor() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                subscribers.add(socket);
+                Thread sender = new Thread(() -> serve(socket), "change-stream-" + socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String start = reader.readLine();
+            if (start == null) {
+                return;
+            }
+            long sent = Long.parseLong(start.trim());
+            while (!closed) {
+                List<ChangeRecord> records = stream.poll(sent, BATCH_SIZE, HEARTBEAT_MILLIS);
+                if (records.isEmpty()) {
+                    writer.write(HEARTBEAT + "\t" + stream.getLastSequence());
+                    writer.newLine();
+                }
+                for (ChangeRecord record : records) {
+                    writer.write(record.toLine());
+                    writer.newLine();
+                    sent = record.getSequence();
+                }
+                writer.flush();
+            }
+        } catch (SocketException e) {
+            // 订阅者断开
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                e.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.remove(socket);
+        }
+    }
+}
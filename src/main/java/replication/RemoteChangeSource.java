@@ -0,0 +1,98 @@
+package replication;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// 通过ChangeStreamServer订阅另一个进程中主节点的变更流，后台线程把收到的记录放入有界队列，队列满时停止读取形成反压
+// 记录从订阅时的起始序号之后按顺序到达，poll的afterSequence必须是上次取到的最后一个序号
+// 最新序号来自收到的记录和心跳，比主节点实际的最新序号最多落后一个心跳间隔加网络延迟
+public class RemoteChangeSource implements ChangeSource, Closeable {
+    private static final int QUEUE_CAPACITY = 65536;
+
+    private final Socket socket;
+    private final BlockingQueue<ChangeRecord> queue;
+    private final Thread receiver;
+    private volatile long lastSequence;
+    private volatile long taken; // 最后一次取出的序号
+    private volatile Exception failure;
+    private volatile boolean closed;
+
+    public RemoteChangeSource(InetSocketAddress address, long afterSequence) throws IOException {
+        this.socket = new Socket();
+        this.socket.connect(address);
+        this.socket.setTcpNoDelay(true);
+        OutputStream output = socket.getOutputStream();
+        output.write((afterSequence + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.lastSequence = afterSequence;
+        this.taken = afterSequence;
+        this.receiver = new Thread(this::runReceiver, "change-source-" + address);
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+    }
+
+    @Override
+    public List<ChangeRecord> poll(long afterSequence, int max, long timeoutMillis) throws InterruptedException {
+        if (afterSequence != taken) {
+            throw new IllegalStateException("Remote stream is at " + taken + ", cannot rewind to " + afterSequence);
+        }
+        ChangeRecord first = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            if (failure != null) {
+                throw new IllegalStateException("Change stream disconnected", failure);
+            }
+            return Collections.emptyList();
+        }
+        List<ChangeRecord> records = new ArrayList<>(Math.min(max, queue.size() + 1));
+        records.add(first);
+        queue.drainTo(records, max - 1);
+        taken = records.get(records.size() - 1).getSequence();
+        return records;
+    }
+
+    @Override
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+
+    private void runReceiver() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(ChangeStreamServer.HEARTBEAT)) {
+                    lastSequence = Math.max(lastSequence, Long.parseLong(line.substring(ChangeStreamServer.HEARTBEAT.length() + 1)));
+                    continue;
+                }
+                ChangeRecord record = ChangeRecord.parse(line);
+                lastSequence = Math.max(lastSequence, record.getSequence());
+                queue.put(record);
+            }
+            throw new IOException("Change stream closed by primary");
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                failure = e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package replication;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+import index.Query;
+import utils.LatencyHistogram;
+import server.QueryServer;
+import utils.MetricsRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 只读副本：拥有独立的目录树和倒排索引，后台线程从ChangeSource按序号顺序拉取主节点的变更并重做
+// 查询只竞争副本自己的锁，不影响主节点的写入；索引字段不在变更流中，自定义字段需要在副本上单独注册
+// 读取可以指定最大陈旧时间：副本最近一次确认追上主节点的时刻距今超过该值时，先等待追上，仍然超时则抛出IllegalStateException
+// 写入方可以记下主节点写入后的序号，在副本上等待该序号以读到自己的写入
+public class Replica implements Closeable {
+    private static final int BATCH_SIZE = 1024;
+    private static final long POLL_MILLIS = 10; // 空闲时确认追上的间隔，也是空闲副本陈旧时间的上限
+
+    private final String name;
+    private final ChangeSource source;
+    private final FSDirectory fsDirectory;
+    private final InvertIndex invertedIndex;
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram replicationDelay; // 记录从主节点提交到副本应用完成的时间
+    private final Object progress; // 等待applied推进
+    private volatile long applied; // 已应用的最大序号
+    private volatile long caughtUpAt; // 最近一次确认已应用主节点全部记录的时刻
+    private volatile RuntimeException failure; // 变更流中断或无法继续时的原因
+    private volatile boolean closed;
+    private final Thread applier;
+
+    public Replica(String name, ChangeSource source) {
+        this.name = name;
+        this.source = source;
+        this.fsDirectory = new FSDirectory();
+        this.invertedIndex = new InvertIndex();
+        this.metrics = new MetricsRegistry();
+        this.replicationDelay = metrics.histogram("replication.delay");
+        metrics.gauge("replication.appliedSequence", this::getAppliedSequence);
+        metrics.gauge("replication.lag", this::getLag);
+        metrics.gauge("replication.stalenessMillis", this::getStalenessMillis);
+        this.progress = new Object();
+        this.caughtUpAt = System.currentTimeMillis();
+        this.applier = new Thread(this::runApplier, "replica-" + name);
+        this.applier.setDaemon(true);
+        this.applier.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FSDirectory getDirectory() {
+        return fsDirectory;
+    }
+
+    public InvertIndex getIndex() {
+        return invertedIndex;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public LatencyHistogram getReplicationDelay() {
+        return replicationDelay;
+    }
+
+    public long getAppliedSequence() {
+        return applied;
+    }
+
+    // 落后主节点的记录数
+    public long getLag() {
+        return Math.max(0, source.getLastSequence() - applied);
+    }
+
+    // 副本数据可能落后的时间上限：已应用全部已知记录时为0，否则为距最近一次追上的时间
+    public long getStalenessMillis() {
+        if (applied >= source.getLastSequence()) {
+            return 0;
+        }
+        return Math.max(0, System.currentTimeMillis() - caughtUpAt);
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    // 等待副本应用到sequence，超时返回false
+    public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (progress) {
+            while (applied < sequence) {
+                checkFailure();
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(progress, remaining);
+            }
+        }
+        return true;
+    }
+
+    // 不限时等待，被中断时抛出RuntimeException
+    public void awaitSequence(long sequence) {
+        synchronized (progress) {
+            while (applied < sequence) {
+                checkFailure();
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    public List<Integer> search(String metadata, String value, long maxStalenessMillis) {
+        awaitFreshness(maxStalenessMillis);
+        return fsDirectory.search(metadata, value, invertedIndex);
+    }
+
+    public List<Integer> searchRange(String metadata, long minValue, long maxValue, long maxStalenessMillis) {
+        awaitFreshness(maxStalenessMillis);
+        return fsDirectory.searchRange(metadata, minValue, maxValue, invertedIndex);
+    }
+
+    public List<Integer> search(Query query, long maxStalenessMillis) {
+        awaitFreshness(maxStalenessMillis);
+        return invertedIndex.search(query);
+    }
+
+    // 停止拉取，已应用的数据仍可查询
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 陈旧时间超过上限时等待追上当前已知的最新序号，最多等待maxStalenessMillis
+    private void awaitFreshness(long maxStalenessMillis) {
+        checkFailure();
+        if (getStalenessMillis() <= maxStalenessMillis) {
+            return;
+        }
+        try {
+            if (!awaitSequence(source.getLastSequence(), maxStalenessMillis)) {
+                throw new IllegalStateException("Replica " + name + " is " + getStalenessMillis() + " ms stale, lag " + getLag() + " records");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void checkFailure() {
+        RuntimeException current = failure;
+        if (current != null) {
+            throw new IllegalStateException("Replica " + name + " stopped at sequence " + applied, current);
+        }
+    }
+
+    private void runApplier() {
+        try {
+            while (!closed) {
+                long polledAt = System.currentTimeMillis();
+                long known = source.getLastSequence(); // 拉取前已知的最新序号，应用到此即说明在polledAt时已追上
+                List<ChangeRecord> records = source.poll(applied, BATCH_SIZE, POLL_MILLIS);
+                if (!records.isEmpty()) {
+                    applyBatch(records);
+                }
+                if (applied >= known) {
+                    caughtUpAt = polledAt;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+    }
+
+    private void applyBatch(List<ChangeRecord> records) {
+        long expected = applied + 1;
+        for (ChangeRecord record : records) {
+            if (record.getSequence() != expected) {
+                throw new IllegalStateException("Expected sequence " + expected + " but got " + record.getSequence());
+            }
+            if (!record.apply(fsDirectory, invertedIndex)) { // 主节点上成功的变更在副本上失败，说明副本已经分叉
+                throw new IllegalStateException("Replica " + name + " diverged at " + record);
+            }
+            expected++;
+        }
+        long now = System.currentTimeMillis();
+        for (ChangeRecord record : records) {
+            replicationDelay.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - record.getCommitMillis())));
+        }
+        applied = expected - 1;
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    // 作为独立进程运行：订阅主节点的变更流，通过只读的QueryServer提供查询，每5秒输出一次延迟
+    // java -cp target/classes replication.Replica [primaryHost] [changeStreamPort] [queryPort] [workerThreads]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int streamPort = args.length > 1 ? Integer.parseInt(args[1]) : 9190;
+        int queryPort = args.length > 2 ? Integer.parseInt(args[2]) : 9091;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        RemoteChangeSource source = new RemoteChangeSource(new InetSocketAddress(host, streamPort), 0);
+        Replica replica = new Replica(host + ":" + streamPort, source);
+        QueryServer server = new QueryServer(replica.getDirectory(), replica.getIndex(), new InetSocketAddress("127.0.0.1", queryPort), threads);
+        server.setReadOnly(true);
+        server.start();
+        System.out.println("Replica of " + host + ":" + streamPort + " serving queries on 127.0.0.1:" + server.getPort());
+        while (!replica.isFailed()) {
+            Thread.sleep(5000);
+            System.out.println("applied=" + replica.getAppliedSequence() + ", lag=" + replica.getLag() + " records, staleness=" + replica.getStalenessMillis()
+                    + " ms, p99 delay=" + replica.getReplicationDelay().getPercentile(0.99) / 1e6 + " ms");
+        }
+        replica.checkFailure();
+    }
+}
@@ -0,0 +1,164 @@
+package server;
+
+import utils.LatencyHistogram;
+import workload.Operation;
+import workload.WorkloadGenerator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// 通过回环地址压测QueryServer：每个连接一个线程，保持depth个请求在途（闭环），
+// 操作按轮转分给各连接并循环使用；延迟从请求写入本地缓冲算起
+public class LoadClient {
+    private final InetSocketAddress address;
+
+    public LoadClient(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    // 通过一个连接以流水线方式执行初始命名空间的建立
+    public void populate(List<Operation> operations, int depth) throws IOException {
+        try (QueryClient client = new QueryClient(address)) {
+            for (Operation operation : operations) {
+                client.send(operation);
+                if (client.getInFlight() >= depth) {
+                    client.flush();
+                    while (client.getInFlight() > depth / 2) {
+                        client.receive();
+                    }
+                }
+            }
+            client.flush();
+            while (client.getInFlight() > 0) {
+                client.receive();
+            }
+        }
+    }
+
+    public Result run(List<Operation> operations, int connections, int depth, double durationSeconds) throws IOException, InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        LongAdder failures = new LongAdder();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(connections);
+        long deadline = System.nanoTime() + (long) (durationSeconds * 1e9);
+        List<QueryClient> clients = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            clients.add(new QueryClient(address));
+        }
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            QueryClient client = clients.get(c);
+            int offset = c;
+            Thread thread = new Thread(() -> {
+                long[] sentAt = new long[depth]; // 按发送顺序的环形缓冲，响应按请求顺序返回
+                int sent = 0;
+                int received = 0;
+                int next = offset;
+                try {
+                    while (true) {
+                        boolean open = System.nanoTime() < deadline;
+                        while (open && sent - received < depth) {
+                            sentAt[sent % depth] = System.nanoTime();
+                            client.send(operations.get(next));
+                            next = (next + connections) % operations.size();
+                            sent++;
+                        }
+                        client.flush();
+                        if (sent == received) {
+                            break;
+                        }
+                        do { // 把已经到达的响应全部处理完再补发
+                            Response response = client.receive();
+                            latency.record(System.nanoTime() - sentAt[received % depth]);
+                            received++;
+                            if (!response.isOk()) {
+                                failures.increment();
+                            }
+                        } while (sent > received && client.hasBufferedResponse());
+                    }
+                    completed.add(received);
+                } catch (Exception e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    try {
+                        client.close();
+                    } catch (IOException ignored) {
+                    }
+                    done.countDown();
+                }
+            }, "load-client-" + c);
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (error.get() != null) {
+            throw new IOException("Load client failed", error.get());
+        }
+        return new Result(connections, depth, completed.sum(), failures.sum(), elapsed, latency);
+    }
+
+    public static class Result {
+        private final int connections;
+        private final int depth;
+        private final long operations;
+        private final long failures; // 返回失败或错误状态的请求，如重复创建
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+
+        Result(int connections, int depth, long operations, long failures, long elapsedNanos, LatencyHistogram latency) {
+            this.connections = connections;
+            this.depth = depth;
+            this.operations = operations;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        public double getThroughput() {
+            return operations * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return "connections=" + connections + ", depth=" + depth + ", ops=" + operations + ", throughput=" + (long) getThroughput() + " ops/s, failures=" + failures
+                    + ", p50=" + latency.getPercentile(0.5) / 1000.0 + " us, p99=" + latency.getPercentile(0.99) / 1000.0 + " us, max=" + latency.getMax() / 1000.0 + " us";
+        }
+    }
+
+    // java -cp target/classes server.LoadClient [host] [port] [files] [depth] [seconds] [connections...]
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9090;
+        int files = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        double seconds = args.length > 4 ? Double.parseDouble(args[4]) : 5;
+        int[] connectionCounts = {1, 2, 4, 8, 16};
+        if (args.length > 5) {
+            connectionCounts = new int[args.length - 5];
+            for (int i = 5; i < args.length; i++) {
+                connectionCounts[i - 5] = Integer.parseInt(args[i]);
+            }
+        }
+        WorkloadGenerator generator = new WorkloadGenerator(42);
+        LoadClient client = new LoadClient(new InetSocketAddress(host, port));
+        client.populate(generator.populate(files), 256);
+        List<Operation> workload = generator.generate(100000, 1);
+        for (int connections : connectionCounts) {
+            System.out.println(client.run(workload, connections, depth, seconds));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// 二进制协议：每帧以4字节长度开头（不含长度本身）
+// 请求：requestId(4) + opcode(1) + 参数；响应：requestId(4) + status(1) + 结果
+// 字符串为varint长度 + UTF-8字节，数值为8字节大端，块ID列表为varint个数 + 各8字节，
+// 查询结果为varint个数 + 升序id的varint差值；同一连接上的请求可以连续发送（流水线），响应按请求顺序返回
+public class Protocol {
+    public static final byte CREATE_FILE = 1;
+    public static final byte CREATE_DIRECTORY = 2;
+    public static final byte DELETE = 3;
+    public static final byte UPDATE = 4;
+    public static final byte SEARCH = 5;
+    public static final byte SEARCH_RANGE = 6;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_FAILED = 1; // 操作返回false，如路径不存在
+    public static final byte STATUS_ERROR = 2; // 执行出错，结果为错误信息
+
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    private Protocol() {
+    }
+
+    static boolean isRead(byte opcode) {
+        return opcode == SEARCH || opcode == SEARCH_RANGE;
+    }
+
+    // 可增长的帧缓冲，直接在内部数组上回填帧长度，避免拷贝
+    static class Encoder extends ByteArrayOutputStream {
+        private int frameStart = -1;
+
+        Encoder(int capacity) {
+            super(capacity);
+        }
+
+        void beginFrame() {
+            frameStart = count;
+            putInt(0);
+        }
+
+        void endFrame() {
+            int length = count - frameStart - 4;
+            if (length > MAX_FRAME_SIZE) {
+                throw new IllegalArgumentException("Frame too large: " + length);
+            }
+            buf[frameStart] = (byte) (length >>> 24);
+            buf[frameStart + 1] = (byte) (length >>> 16);
+            buf[frameStart + 2] = (byte) (length >>> 8);
+            buf[frameStart + 3] = (byte) length;
+            frameStart = -1;
+        }
+
+        void putByte(int value) {
+            write(value);
+        }
+
+        void putInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        void putVarInt(int value) {
+            while ((value & 0xFFFFFF80) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void putLongs(long[] values) {
+            if (values == null) {
+                putVarInt(0);
+                return;
+            }
+            putVarInt(values.length);
+            for (long value : values) {
+                putLong(value);
+            }
+        }
+
+        // ids必须升序
+        void putIds(int[] ids) {
+            putVarInt(ids.length);
+            int previous = 0;
+            for (int id : ids) {
+                putVarInt(id - previous);
+                previous = id;
+            }
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        while (((b = in.get()) & 0x80) != 0) {
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value | (b << shift);
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = getVarInt(in);
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("String length " + length + " exceeds frame");
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    static long[] getLongs(ByteBuffer in) {
+        int count = getVarInt(in);
+        if (count > in.remaining() / 8) {
+            throw new IllegalArgumentException("Long count " + count + " exceeds frame");
+        }
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.getLong();
+        }
+        return values;
+    }
+
+    static int[] getIds(ByteBuffer in) {
+        int count = getVarInt(in);
+        if (count > in.remaining()) { // 每个id至少一个字节
+            throw new IllegalArgumentException("Id count " + count + " exceeds frame");
+        }
+        int[] ids = new int[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += getVarInt(in);
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    // 查询结果转为升序数组
+    static int[] sortedIds(List<Integer> results) {
+        int[] ids = new int[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = results.get(i);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+}
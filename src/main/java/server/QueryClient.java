@@ -0,0 +1,218 @@
+package server;
+
+import workload.Operation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+// 阻塞式客户端，支持流水线：sendXxx只写入本地缓冲并返回requestId，flush后一起发出，再按发送顺序receive响应
+// 同步方法等价于send + flush + receive；非线程安全，每个线程使用自己的连接
+public class QueryClient implements Closeable {
+    private final SocketChannel channel;
+    private final Protocol.Encoder out;
+    private ByteBuffer in;
+    private final ArrayDeque<Byte> inFlight; // 已发送未收到响应的请求类型，用于解析响应
+    private int nextRequestId;
+
+    public QueryClient(InetSocketAddress address) throws IOException {
+        this.channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.out = new Protocol.Encoder(4096);
+        this.in = ByteBuffer.allocate(64 * 1024);
+        in.flip();
+        this.inFlight = new ArrayDeque<>();
+    }
+
+    public int sendCreateFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks) {
+        int requestId = begin(Protocol.CREATE_FILE);
+        out.putString(path);
+        out.putString(owner);
+        out.putInt(permission);
+        out.putString(fileName);
+        out.putString(fileExtension);
+        out.putLong(fileSize);
+        out.putLongs(blocks);
+        out.endFrame();
+        return requestId;
+    }
+
+    public int sendCreateDirectory(String path, String owner, int permission) {
+        int requestId = begin(Protocol.CREATE_DIRECTORY);
+        out.putString(path);
+        out.putString(owner);
+        out.putInt(permission);
+        out.endFrame();
+        return requestId;
+    }
+
+    public int sendDelete(String path) {
+        int requestId = begin(Protocol.DELETE);
+        out.putString(path);
+        out.endFrame();
+        return requestId;
+    }
+
+    public int sendUpdate(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks) {
+        int requestId = begin(Protocol.UPDATE);
+        out.putString(path);
+        out.putString(newFileName);
+        out.putString(newFileExtension);
+        out.putLong(newFileSize);
+        out.putLongs(newBlocks);
+        out.endFrame();
+        return requestId;
+    }
+
+    public int sendSearch(String metadata, String value) {
+        int requestId = begin(Protocol.SEARCH);
+        out.putString(metadata);
+        out.putString(value);
+        out.endFrame();
+        return requestId;
+    }
+
+    public int sendSearchRange(String metadata, long minValue, long maxValue) {
+        int requestId = begin(Protocol.SEARCH_RANGE);
+        out.putString(metadata);
+        out.putLong(minValue);
+        out.putLong(maxValue);
+        out.endFrame();
+        return requestId;
+    }
+
+    // 发送轨迹中的一条操作，inode时间由服务端的时钟决定
+    public int send(Operation operation) {
+        switch (operation.getType()) {
+            case CREATE_FILE:
+                return sendCreateFile(operation.getPath(), operation.getArgument(1), Integer.parseInt(operation.getArgument(2)), operation.getArgument(3), operation.getArgument(4),
+                        Long.parseLong(operation.getArgument(5)), operation.getBlocks());
+            case CREATE_DIRECTORY:
+                return sendCreateDirectory(operation.getPath(), operation.getArgument(1), Integer.parseInt(operation.getArgument(2)));
+            case DELETE:
+                return sendDelete(operation.getPath());
+            case UPDATE:
+                return sendUpdate(operation.getPath(), operation.getArgument(1), operation.getArgument(2), Long.parseLong(operation.getArgument(3)), operation.getBlocks());
+            case SEARCH:
+                return sendSearch(operation.getArgument(0), operation.getArgument(1));
+            case SEARCH_RANGE:
+                return sendSearchRange(operation.getArgument(0), Long.parseLong(operation.getArgument(1)), Long.parseLong(operation.getArgument(2)));
+            default:
+                throw new IllegalArgumentException("Unknown operation: " + operation.getType());
+        }
+    }
+
+    public void flush() throws IOException {
+        ByteBuffer buffer = out.toByteBuffer();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        out.reset();
+    }
+
+    // 是否已有完整的响应在本地缓冲中，无需再读socket
+    public boolean hasBufferedResponse() {
+        return in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position());
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    // 阻塞直到收到下一个响应
+    public Response receive() throws IOException {
+        if (inFlight.isEmpty()) {
+            throw new IllegalStateException("No request in flight");
+        }
+        while (!hasBufferedResponse()) {
+            if (in.remaining() >= 4 && in.capacity() < 4 + in.getInt(in.position())) {
+                ByteBuffer larger = ByteBuffer.allocate(4 + in.getInt(in.position()));
+                larger.put(in);
+                larger.flip();
+                in = larger;
+            }
+            in.compact();
+            int n = channel.read(in);
+            in.flip();
+            if (n < 0) {
+                throw new IOException("Connection closed by server");
+            }
+        }
+        int length = in.getInt();
+        int end = in.position() + length;
+        byte opcode = inFlight.poll();
+        int requestId = in.getInt();
+        byte status = in.get();
+        Response response;
+        if (status == Protocol.STATUS_ERROR) {
+            response = new Response(requestId, status, null, Protocol.getString(in));
+        } else if (status == Protocol.STATUS_OK && Protocol.isRead(opcode)) {
+            response = new Response(requestId, status, Protocol.getIds(in), null);
+        } else {
+            response = new Response(requestId, status, null, null);
+        }
+        in.position(end);
+        return response;
+    }
+
+    public boolean createFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks) throws IOException {
+        sendCreateFile(path, owner, permission, fileName, fileExtension, fileSize, blocks);
+        return call().isOk();
+    }
+
+    public boolean createDirectory(String path, String owner, int permission) throws IOException {
+        sendCreateDirectory(path, owner, permission);
+        return call().isOk();
+    }
+
+    public boolean delete(String path) throws IOException {
+        sendDelete(path);
+        return call().isOk();
+    }
+
+    public boolean update(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks) throws IOException {
+        sendUpdate(path, newFileName, newFileExtension, newFileSize, newBlocks);
+        return call().isOk();
+    }
+
+    public int[] search(String metadata, String value) throws IOException {
+        sendSearch(metadata, value);
+        return call().getIds();
+    }
+
+    public int[] searchRange(String metadata, long minValue, long maxValue) throws IOException {
+        sendSearchRange(metadata, minValue, maxValue);
+        return call().getIds();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int begin(byte opcode) {
+        int requestId = nextRequestId++;
+        out.beginFrame();
+        out.putInt(requestId);
+        out.putByte(opcode);
+        inFlight.add(opcode);
+        return requestId;
+    }
+
+    // 同步调用：之前流水线发出的请求必须已全部收完
+    private Response call() throws IOException {
+        if (inFlight.size() != 1) {
+            throw new IllegalStateException("Pipelined requests still in flight: " + (inFlight.size() - 1));
+        }
+        flush();
+        Response response = receive();
+        if (response.getStatus() == Protocol.STATUS_ERROR) {
+            throw new IOException("Server error: " + response.getMessage());
+        }
+        return response;
+    }
+}
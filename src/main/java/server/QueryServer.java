@@ -0,0 +1,435 @@
+package server;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+import replication.ChangeStream;
+import replication.ChangeStreamServer;
+import utils.LatencyHistogram;
+import utils.MetricsRegistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 基于NIO Selector的查询服务：一个选择器线程负责所有连接的读写与解帧，请求交给工作线程执行
+// 每轮select收到的请求按连接分组打包成批次；一个连接同一时刻最多只有一个批次在执行，
+// 因此同一连接上流水线发送的请求按顺序执行、按顺序响应；批次执行期间到达的请求留到下一批
+// 批次内先执行各连接在下一个写操作之前的所有查询，键相同的查询只执行一次，再依次执行各连接的一个写操作，
+// 任何写操作之后清空共享结果；不同连接之间本来就没有顺序约定，这样重排不改变语义
+public class QueryServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_PENDING = 1024; // 单个连接排队的请求上限，超过后暂停读取
+
+    private final FSDirectory fsDirectory;
+    private final InvertIndex invertedIndex;
+    private final int workerThreads;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Queue<Connection> completed; // 工作线程执行完批次后交还给选择器线程的连接
+    private final Thread selectorThread;
+    private volatile boolean running;
+    private volatile boolean readOnly; // 只读副本上拒绝写请求
+    private final AtomicInteger connections;
+    private final LongAdder requests;
+    private final LongAdder batches;
+    private final LongAdder sharedSearches; // 因批次内去重而省去的查询
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram requestLatency; // 单个请求的执行时间
+    private final LatencyHistogram batchLatency;
+
+    public QueryServer(FSDirectory fsDirectory, InvertIndex invertedIndex, InetSocketAddress address, int workerThreads) throws IOException {
+        this.fsDirectory = fsDirectory;
+        this.invertedIndex = invertedIndex;
+        this.workerThreads = workerThreads;
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "query-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.completed = new ConcurrentLinkedQueue<>();
+        this.selectorThread = new Thread(this::run, "query-server-selector");
+        selectorThread.setDaemon(true);
+        this.connections = new AtomicInteger();
+        this.requests = new LongAdder();
+        this.batches = new LongAdder();
+        this.sharedSearches = new LongAdder();
+        this.metrics = new MetricsRegistry();
+        this.requestLatency = metrics.histogram("request");
+        this.batchLatency = metrics.histogram("batch");
+        metrics.gauge("connections", connections::get);
+        metrics.gauge("requests", requests::sum);
+        metrics.gauge("batches", batches::sum);
+        metrics.gauge("sharedSearches", sharedSearches::sum);
+    }
+
+    public void start() {
+        running = true;
+        selectorThread.start();
+    }
+
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getSharedSearches() {
+        return sharedSearches.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void run() {
+        List<Connection> ready = new ArrayList<>();
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            Connection finished;
+            while ((finished = completed.poll()) != null) {
+                finished.scheduled = false;
+                if (finished.channel.isOpen()) {
+                    finished.output.add(finished.response);
+                    flush(finished);
+                    if (finished.channel.isOpen()) {
+                        schedule(finished, ready);
+                        if (finished.pending.size() < MAX_PENDING) {
+                            finished.key.interestOps(finished.key.interestOps() | SelectionKey.OP_READ);
+                        }
+                    }
+                }
+                finished.response = null;
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    read(connection);
+                    schedule(connection, ready);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(connection);
+                }
+            }
+            if (!ready.isEmpty()) {
+                dispatch(ready);
+                ready.clear();
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+            connections.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("Accept failed: " + e.getMessage());
+        }
+    }
+
+    // 读取并解出所有完整的帧；帧不合法时关闭连接
+    private void read(Connection connection) {
+        try {
+            int n = connection.channel.read(connection.readBuffer);
+            if (n < 0) {
+                close(connection);
+                return;
+            }
+            ByteBuffer buffer = connection.readBuffer;
+            buffer.flip();
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt(buffer.position());
+                if (length < 5 || length > Protocol.MAX_FRAME_SIZE) {
+                    throw new IllegalArgumentException("Invalid frame length: " + length);
+                }
+                if (buffer.remaining() < 4 + length) {
+                    if (buffer.capacity() < 4 + length) { // 放不下整帧时扩容
+                        ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                        larger.put(buffer);
+                        larger.flip();
+                        connection.readBuffer = buffer = larger;
+                    }
+                    break;
+                }
+                ByteBuffer frame = buffer.slice();
+                frame.position(4);
+                frame.limit(4 + length);
+                connection.pending.add(Request.decode(frame.slice()));
+                buffer.position(buffer.position() + 4 + length);
+            }
+            buffer.compact();
+            if (connection.pending.size() >= MAX_PENDING) {
+                connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        } catch (IOException | RuntimeException e) {
+            close(connection);
+        }
+    }
+
+    private void flush(Connection connection) {
+        try {
+            while (!connection.output.isEmpty()) {
+                ByteBuffer head = connection.output.peek();
+                connection.channel.write(head);
+                if (head.hasRemaining()) {
+                    connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                connection.output.poll();
+            }
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+        connection.pending.clear();
+        connections.decrementAndGet();
+    }
+
+    private void schedule(Connection connection, List<Connection> ready) {
+        if (!connection.scheduled && !connection.pending.isEmpty() && connection.channel.isOpen()) {
+            connection.scheduled = true;
+            ready.add(connection);
+        }
+    }
+
+    // 把就绪的连接分给各工作线程，每个连接取走当前排队的全部请求
+    private void dispatch(List<Connection> ready) {
+        int chunks = Math.min(workerThreads, ready.size());
+        List<List<Connection>> groups = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < ready.size(); i++) {
+            Connection connection = ready.get(i);
+            connection.batch = new ArrayList<>(connection.pending);
+            connection.pending.clear();
+            groups.get(i % chunks).add(connection);
+        }
+        for (List<Connection> group : groups) {
+            workers.execute(() -> execute(group));
+        }
+    }
+
+    private void execute(List<Connection> group) {
+        long start = System.nanoTime();
+        int[] cursors = new int[group.size()];
+        Protocol.Encoder[] encoders = new Protocol.Encoder[group.size()];
+        for (int i = 0; i < encoders.length; i++) {
+            encoders[i] = new Protocol.Encoder(256);
+        }
+        Map<String, int[]> shared = new HashMap<>();
+        boolean remaining = true;
+        while (remaining) {
+            remaining = false;
+            for (int i = 0; i < group.size(); i++) { // 查询阶段
+                List<Request> batch = group.get(i).batch;
+                while (cursors[i] < batch.size() && batch.get(cursors[i]).isRead()) {
+                    executeRead(batch.get(cursors[i]++), shared, encoders[i]);
+                }
+            }
+            for (int i = 0; i < group.size(); i++) { // 写阶段：每个连接最多一个写
+                List<Request> batch = group.get(i).batch;
+                if (cursors[i] < batch.size()) {
+                    executeWrite(batch.get(cursors[i]++), encoders[i]);
+                    shared.clear();
+                    remaining |= cursors[i] < batch.size();
+                }
+            }
+        }
+        for (int i = 0; i < group.size(); i++) {
+            Connection connection = group.get(i);
+            requests.add(connection.batch.size());
+            connection.batch = null;
+            connection.response = encoders[i].toByteBuffer();
+            completed.add(connection);
+        }
+        batches.increment();
+        batchLatency.recordSince(start);
+        selector.wakeup();
+    }
+
+    private void executeRead(Request request, Map<String, int[]> shared, Protocol.Encoder out) {
+        long start = System.nanoTime();
+        String key = request.queryKey();
+        int[] ids = shared.get(key);
+        try {
+            if (ids == null) {
+                ids = Protocol.sortedIds(request.search(fsDirectory, invertedIndex));
+                shared.put(key, ids);
+            } else {
+                sharedSearches.increment();
+            }
+            out.beginFrame();
+            out.putInt(request.requestId);
+            out.putByte(Protocol.STATUS_OK);
+            out.putIds(ids);
+            out.endFrame();
+        } catch (RuntimeException e) {
+            writeError(request, e, out);
+        }
+        requestLatency.recordSince(start);
+    }
+
+    private void executeWrite(Request request, Protocol.Encoder out) {
+        long start = System.nanoTime();
+        try {
+            if (readOnly) {
+                throw new IllegalStateException("Server is read-only");
+            }
+            boolean success = request.write(fsDirectory, invertedIndex);
+            out.beginFrame();
+            out.putInt(request.requestId);
+            out.putByte(success ? Protocol.STATUS_OK : Protocol.STATUS_FAILED);
+            out.endFrame();
+        } catch (RuntimeException e) {
+            writeError(request, e, out);
+        }
+        requestLatency.recordSince(start);
+    }
+
+    private static void writeError(Request request, RuntimeException e, Protocol.Encoder out) {
+        out.beginFrame();
+        out.putInt(request.requestId);
+        out.putByte(Protocol.STATUS_ERROR);
+        out.putString(String.valueOf(e.getMessage()));
+        out.endFrame();
+    }
+
+    // 连接状态：pending、output、scheduled只由选择器线程访问；batch、response在批次执行期间归工作线程所有，
+    // 经由completed队列交还
+    private static class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer readBuffer;
+        final ArrayDeque<Request> pending;
+        final ArrayDeque<ByteBuffer> output;
+        boolean scheduled;
+        List<Request> batch;
+        ByteBuffer response;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            this.pending = new ArrayDeque<>();
+            this.output = new ArrayDeque<>();
+        }
+    }
+
+    // 独立运行：java -cp target/classes server.QueryServer [port] [workerThreads] [changeStreamPort]
+    // 指定changeStreamPort时作为主节点，在该端口向replication.Replica进程发送变更流
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        FSDirectory fsDirectory = new FSDirectory();
+        ChangeStreamServer streamServer = null;
+        if (args.length > 2) {
+            ChangeStream stream = new ChangeStream(1 << 20);
+            fsDirectory.setMutationListener(stream);
+            streamServer = new ChangeStreamServer(stream, new InetSocketAddress("127.0.0.1", Integer.parseInt(args[2])));
+            System.out.println("Change stream listening on 127.0.0.1:" + streamServer.getPort());
+        }
+        QueryServer server = new QueryServer(fsDirectory, new InvertIndex(), new InetSocketAddress("127.0.0.1", port), threads);
+        server.start();
+        System.out.println("Query server listening on 127.0.0.1:" + server.getPort() + " with " + threads + " worker threads");
+        ChangeStreamServer changeStreamServer = streamServer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                if (changeStreamServer != null) {
+                    changeStreamServer.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }));
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,102 @@
+package server;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// 服务端解码后的请求
+class Request {
+    final int requestId;
+    final byte opcode;
+    private String path; // 写操作的路径；查询为字段名
+    private String owner;
+    private int permission;
+    private String fileName;
+    private String fileExtension;
+    private long fileSize;
+    private long[] blocks;
+    private String value; // 精确查询的取值
+    private long minValue;
+    private long maxValue;
+
+    private Request(int requestId, byte opcode) {
+        this.requestId = requestId;
+        this.opcode = opcode;
+    }
+
+    // frame为去掉长度前缀的一帧
+    static Request decode(ByteBuffer frame) {
+        Request request = new Request(frame.getInt(), frame.get());
+        switch (request.opcode) {
+            case Protocol.CREATE_FILE:
+                request.path = Protocol.getString(frame);
+                request.owner = Protocol.getString(frame);
+                request.permission = frame.getInt();
+                request.fileName = Protocol.getString(frame);
+                request.fileExtension = Protocol.getString(frame);
+                request.fileSize = frame.getLong();
+                request.blocks = Protocol.getLongs(frame);
+                break;
+            case Protocol.CREATE_DIRECTORY:
+                request.path = Protocol.getString(frame);
+                request.owner = Protocol.getString(frame);
+                request.permission = frame.getInt();
+                break;
+            case Protocol.DELETE:
+                request.path = Protocol.getString(frame);
+                break;
+            case Protocol.UPDATE:
+                request.path = Protocol.getString(frame);
+                request.fileName = Protocol.getString(frame);
+                request.fileExtension = Protocol.getString(frame);
+                request.fileSize = frame.getLong();
+                request.blocks = Protocol.getLongs(frame);
+                break;
+            case Protocol.SEARCH:
+                request.path = Protocol.getString(frame);
+                request.value = Protocol.getString(frame);
+                break;
+            case Protocol.SEARCH_RANGE:
+                request.path = Protocol.getString(frame);
+                request.minValue = frame.getLong();
+                request.maxValue = frame.getLong();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + request.opcode);
+        }
+        if (frame.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes in frame of request " + request.requestId);
+        }
+        return request;
+    }
+
+    boolean isRead() {
+        return Protocol.isRead(opcode);
+    }
+
+    // 查询的去重键，同一批次内键相同的查询只执行一次
+    String queryKey() {
+        return opcode == Protocol.SEARCH ? path + '=' + value : path + '[' + minValue + ',' + maxValue + ']';
+    }
+
+    List<Integer> search(FSDirectory fsDirectory, InvertIndex invertedIndex) {
+        return opcode == Protocol.SEARCH ? fsDirectory.search(path, value, invertedIndex) : fsDirectory.searchRange(path, minValue, maxValue, invertedIndex);
+    }
+
+    boolean write(FSDirectory fsDirectory, InvertIndex invertedIndex) {
+        switch (opcode) {
+            case Protocol.CREATE_FILE:
+                return fsDirectory.createFile(path, owner, permission, fileName, fileExtension, fileSize, blocks, invertedIndex);
+            case Protocol.CREATE_DIRECTORY:
+                return fsDirectory.createDirectory(path, owner, permission);
+            case Protocol.DELETE:
+                return fsDirectory.deleteNode(path, invertedIndex);
+            case Protocol.UPDATE:
+                return fsDirectory.updateFile(path, fileName, fileExtension, fileSize, blocks, invertedIndex);
+            default:
+                throw new IllegalStateException("Not a write: " + opcode);
+        }
+    }
+}
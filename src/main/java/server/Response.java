@@ -0,0 +1,36 @@
+package server;
+
+// 客户端收到的响应；查询的结果id升序
+public class Response {
+    private final int requestId;
+    private final byte status;
+    private final int[] ids;
+    private final String message;
+
+    Response(int requestId, byte status, int[] ids, String message) {
+        this.requestId = requestId;
+        this.status = status;
+        this.ids = ids;
+        this.message = message;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public byte getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Protocol.STATUS_OK;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,125 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 记录等待与持有时间的可重入读写锁：每个线程每SAMPLE_INTERVAL次最外层获取采样一次，
+// 未采样的获取不调用System.nanoTime，热点路径上只多一次ThreadLocal读取；重入时只按最外层计算
+// 重入深度、采样计数和获取时刻按线程保存在ThreadLocal中（读锁可被多个线程同时持有）
+public class InstrumentedReadWriteLock implements ReadWriteLock {
+    private static final int SAMPLE_INTERVAL = 16; // 2的幂
+    private static final int READ = 0; // ThreadLocal数组中[mode]为重入深度，[mode + 1]为采样时获取成功的时刻
+    private static final int WRITE = 2;
+    private static final int COUNTER = 4; // 采样计数
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final ReentrantReadWriteLock lock;
+    private final LockMetrics metrics;
+    private final ThreadLocal<long[]> holds;
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    public InstrumentedReadWriteLock(LockMetrics metrics) {
+        this.lock = new ReentrantReadWriteLock();
+        this.metrics = metrics;
+        this.holds = ThreadLocal.withInitial(() -> new long[5]);
+        this.readLock = new TimedLock(lock.readLock(), READ);
+        this.writeLock = new TimedLock(lock.writeLock(), WRITE);
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    private class TimedLock implements Lock {
+        private final Lock delegate;
+        private final int mode;
+
+        TimedLock(Lock delegate, int mode) {
+            this.delegate = delegate;
+            this.mode = mode;
+        }
+
+        @Override
+        public void lock() {
+            long[] state = holds.get();
+            long start = sampleStart(state);
+            delegate.lock();
+            acquired(state, start);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            long[] state = holds.get();
+            long start = sampleStart(state);
+            delegate.lockInterruptibly();
+            acquired(state, start);
+        }
+
+        @Override
+        public boolean tryLock() {
+            long[] state = holds.get();
+            long start = sampleStart(state);
+            if (delegate.tryLock()) {
+                acquired(state, start);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long[] state = holds.get();
+            long start = sampleStart(state);
+            if (delegate.tryLock(time, unit)) {
+                acquired(state, start);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void unlock() {
+            long[] state = holds.get();
+            delegate.unlock();
+            if (--state[mode] == 0 && state[mode + 1] != NOT_SAMPLED) {
+                (mode == READ ? metrics.readHold : metrics.writeHold).recordSince(state[mode + 1]);
+            }
+        }
+
+        @Override
+        public Condition newCondition() {
+            return delegate.newCondition();
+        }
+
+        // 最外层获取且轮到采样时返回开始等待的时刻，否则返回NOT_SAMPLED
+        private long sampleStart(long[] state) {
+            if (state[mode] == 0 && (++state[COUNTER] & (SAMPLE_INTERVAL - 1)) == 0) {
+                return System.nanoTime();
+            }
+            return NOT_SAMPLED;
+        }
+
+        private void acquired(long[] state, long start) {
+            if (state[mode]++ > 0) {
+                return;
+            }
+            if (start == NOT_SAMPLED) {
+                state[mode + 1] = NOT_SAMPLED;
+                return;
+            }
+            long now = System.nanoTime();
+            (mode == READ ? metrics.readWait : metrics.writeWait).record(now - start);
+            state[mode + 1] = now;
+        }
+    }
+}
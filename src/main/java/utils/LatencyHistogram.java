@@ -0,0 +1,106 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// 无锁延迟直方图（纳秒）：对数-线性分桶，每个2的幂区间再均分为SUB_BUCKETS个子桶，相对误差约6%
+// 记录时只做一次桶计数的原子自增（最大值只在变大时才写），不分配对象；均值、分位数由读取方遍历桶计算
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAccumulator max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos));
+        max.accumulate(nanos);
+    }
+
+    // 记录从startNanos到现在的耗时
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    // 按桶中点估算的均值
+    public double getMean() {
+        long count = 0;
+        double total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            count += n;
+            total += (double) n * valueOf(i);
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // 分位数，quantile取(0, 1]，返回所在桶的中点
+    public long getPercentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(valueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.reset();
+    }
+
+    // 小于SUB_BUCKETS的值每个值一个桶；否则按最高位所在的指数和其后SUB_BITS位定位
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int mantissa = bucket % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + mantissa) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) / 2;
+    }
+}
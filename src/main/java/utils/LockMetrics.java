@@ -0,0 +1,17 @@
+package utils;
+
+// 读写锁的等待时间与持有时间直方图（按InstrumentedReadWriteLock的采样记录），可被多把锁共享（如同一索引的所有分段锁）
+public class LockMetrics {
+    final LatencyHistogram readWait;
+    final LatencyHistogram readHold;
+    final LatencyHistogram writeWait;
+    final LatencyHistogram writeHold;
+
+    // 直方图以prefix为前缀注册到registry
+    public LockMetrics(MetricsRegistry registry, String prefix) {
+        this.readWait = registry.histogram(prefix + ".readWait");
+        this.readHold = registry.histogram(prefix + ".readHold");
+        this.writeWait = registry.histogram(prefix + ".writeWait");
+        this.writeHold = registry.histogram(prefix + ".writeHold");
+    }
+}
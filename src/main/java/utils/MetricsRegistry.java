@@ -0,0 +1,161 @@
+package utils;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+// 指标注册表：延迟直方图和数值型仪表，以动态MBean的形式通过JMX暴露
+// 直方图属性名为"<名称>.count/.mean/.p50/.p99/.p999/.max"（纳秒），仪表属性名即其名称
+public class MetricsRegistry implements DynamicMBean {
+    private static final String[] STATS = {"count", "mean", "p50", "p99", "p999", "max"};
+
+    private final Map<String, LatencyHistogram> histograms;
+    private final Map<String, Supplier<Number>> gauges;
+    private ObjectName objectName; // 已注册到平台MBeanServer时非空
+
+    public MetricsRegistry() {
+        this.histograms = new ConcurrentSkipListMap<>();
+        this.gauges = new ConcurrentSkipListMap<>();
+    }
+
+    // 同名直方图只创建一次
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    // 仪表在读取时才求值，同名覆盖
+    public void gauge(String name, Supplier<Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    // 注册到平台MBeanServer，name如"metadata:type=FSDirectory"；同名MBean已存在时先注销
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName newName = new ObjectName(name);
+            if (server.isRegistered(newName)) {
+                server.unregisterMBean(newName);
+            }
+            server.registerMBean(this, newName);
+            objectName = newName;
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    // 打印所有有数据的直方图和仪表
+    public void print() {
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            if (count > 0) {
+                System.out.println(entry.getKey() + ": count=" + count + ", p50=" + histogram.getPercentile(0.5) / 1000.0 + " us, p99=" + histogram.getPercentile(0.99) / 1000.0
+                        + " us, p999=" + histogram.getPercentile(0.999) / 1000.0 + " us, max=" + histogram.getMax() / 1000.0 + " us");
+            }
+        }
+        for (Map.Entry<String, Supplier<Number>> entry : gauges.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue().get());
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Supplier<Number> gauge = gauges.get(attribute);
+        if (gauge != null) {
+            return gauge.get();
+        }
+        int dot = attribute.lastIndexOf('.');
+        LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+        if (histogram == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        switch (attribute.substring(dot + 1)) {
+            case "count":
+                return histogram.getCount();
+            case "mean":
+                return histogram.getMean();
+            case "p50":
+                return histogram.getPercentile(0.5);
+            case "p99":
+                return histogram.getPercentile(0.99);
+            case "p999":
+                return histogram.getPercentile(0.999);
+            case "max":
+                return histogram.getMax();
+            default:
+                throw new AttributeNotFoundException(attribute);
+        }
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Read-only attribute: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException ignored) {
+                // 按JMX约定，不存在的属性直接忽略
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("reset".equals(actionName)) {
+            reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    // 字段在运行时注册时会新增属性，每次调用按当前的直方图和仪表生成
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : histograms.keySet()) {
+            for (String stat : STATS) {
+                String type = "mean".equals(stat) ? "double" : "long";
+                attributes.add(new MBeanAttributeInfo(name + "." + stat, type, name + " latency " + stat + " (ns)", true, false, false));
+            }
+        }
+        for (String name : gauges.keySet()) {
+            attributes.add(new MBeanAttributeInfo(name, Number.class.getName(), name, true, false, false));
+        }
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Reset all latency histograms", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "Operation latency and lock metrics", attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{reset}, null);
+    }
+}
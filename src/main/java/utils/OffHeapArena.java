@@ -0,0 +1,169 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// 堆外内存分配器：从固定大小的直接缓冲区（slab）中按2的幂切出内存块，释放的块按大小级别放入空闲栈，供之后同样大小的分配复用
+// 地址为long：高32位是slab编号，低32位是块在slab内的偏移，块不跨slab；超过slab大小的分配单独占用一个直接缓冲区，释放时归还给系统
+// 分配和释放在this上同步；块内数据由调用方通过slab(address)和offset(address)按绝对位置读写，并发控制由调用方负责
+public class OffHeapArena {
+    public static final int MIN_BLOCK_SIZE = 16;
+    public static final int DEFAULT_SLAB_SIZE = 4 << 20;
+
+    private final int slabSize;
+    private volatile ByteBuffer[] slabs; // 写时复制，按编号取slab不加锁
+    private int slabCount;
+    private final ArrayDeque<Integer> freeSlabIds; // 已归还的大块slab编号
+    private final long[][] freeBlocks; // 每个大小级别一个空闲栈
+    private final int[] freeCounts;
+    private int current = -1; // 正在切分的slab
+    private int currentOffset;
+    private long reservedBytes; // 申请的直接内存
+    private long allocatedBytes; // 已分配未释放的块容量
+
+    public OffHeapArena() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    public OffHeapArena(int slabSize) {
+        if (Integer.bitCount(slabSize) != 1 || slabSize < MIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Slab size must be a power of two >= " + MIN_BLOCK_SIZE + ": " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[16];
+        this.freeSlabIds = new ArrayDeque<>();
+        int classes = Integer.numberOfTrailingZeros(slabSize) - Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE) + 1;
+        this.freeBlocks = new long[classes][];
+        this.freeCounts = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            freeBlocks[i] = new long[16];
+        }
+    }
+
+    // 请求size字节时实际分配的块容量
+    public static int capacityFor(int size) {
+        if (size <= MIN_BLOCK_SIZE) {
+            return MIN_BLOCK_SIZE;
+        }
+        if (size > 1 << 30) {
+            throw new IllegalArgumentException("Block too large: " + size);
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    // 分配至少size字节的块，返回地址；块容量为capacityFor(size)
+    public synchronized long allocate(int size) {
+        int capacity = capacityFor(size);
+        allocatedBytes += capacity;
+        if (capacity > slabSize) {
+            return address(addSlab(ByteBuffer.allocateDirect(capacity)), 0);
+        }
+        int sizeClass = sizeClass(capacity);
+        if (freeCounts[sizeClass] > 0) {
+            return freeBlocks[sizeClass][--freeCounts[sizeClass]];
+        }
+        if (current < 0 || currentOffset + capacity > slabSize) {
+            recycleTail();
+            current = addSlab(ByteBuffer.allocateDirect(slabSize));
+            currentOffset = 0;
+        }
+        long address = address(current, currentOffset);
+        currentOffset += capacity;
+        return address;
+    }
+
+    // 释放块，capacity为分配时的块容量
+    public synchronized void free(long address, int capacity) {
+        allocatedBytes -= capacity;
+        if (capacity > slabSize) {
+            int id = (int) (address >>> 32);
+            slabs[id] = null; // 直接缓冲区在被回收时释放内存
+            freeSlabIds.push(id);
+            reservedBytes -= capacity;
+            return;
+        }
+        push(sizeClass(capacity), address);
+    }
+
+    // 分配新块并拷贝原块的前length字节，再释放原块
+    public long reallocate(long address, int capacity, int newSize, int length) {
+        long newAddress = allocate(newSize);
+        copy(address, newAddress, length);
+        free(address, capacity);
+        return newAddress;
+    }
+
+    public void copy(long from, long to, int length) {
+        ByteBuffer source = slab(from).duplicate();
+        source.limit(offset(from) + length).position(offset(from));
+        ByteBuffer target = slab(to).duplicate();
+        target.position(offset(to));
+        target.put(source);
+    }
+
+    public ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    public static int offset(long address) {
+        return (int) address;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized int getSlabCount() {
+        return slabCount - freeSlabIds.size();
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private int sizeClass(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+    }
+
+    private int addSlab(ByteBuffer buffer) {
+        reservedBytes += buffer.capacity();
+        Integer reused = freeSlabIds.poll();
+        int id;
+        if (reused != null) {
+            id = reused;
+        } else {
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabCount * 2);
+            }
+            id = slabCount++;
+        }
+        ByteBuffer[] updated = slabs.clone(); // 重新发布数组，读者通过volatile读看到新slab
+        updated[id] = buffer;
+        slabs = updated;
+        return id;
+    }
+
+    // 当前slab剩余的空间按2的幂切块放入空闲栈；块容量都是MIN_BLOCK_SIZE的倍数，剩余空间也是
+    private void recycleTail() {
+        if (current < 0) {
+            return;
+        }
+        while (slabSize - currentOffset >= MIN_BLOCK_SIZE) {
+            int capacity = Integer.highestOneBit(slabSize - currentOffset);
+            push(sizeClass(capacity), address(current, currentOffset));
+            currentOffset += capacity;
+        }
+    }
+
+    private void push(int sizeClass, long address) {
+        if (freeCounts[sizeClass] == freeBlocks[sizeClass].length) {
+            freeBlocks[sizeClass] = Arrays.copyOf(freeBlocks[sizeClass], freeCounts[sizeClass] * 2);
+        }
+        freeBlocks[sizeClass][freeCounts[sizeClass]++] = address;
+    }
+}
@@ -0,0 +1,28 @@
+package utils;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// 分段读写锁：按键的哈希值映射到固定数量的读写锁之一，不同段上的操作互不阻塞
+public class StripedReadWriteLock {
+    private final ReadWriteLock[] stripes;
+
+    public StripedReadWriteLock(int stripeCount) {
+        this(stripeCount, null);
+    }
+
+    // metrics非空时每段使用记录等待/持有时间的读写锁，各段共享同一组直方图
+    public StripedReadWriteLock(int stripeCount, LockMetrics metrics) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1) << 1); // 向上取2的幂
+        stripes = new ReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = metrics == null ? new ReentrantReadWriteLock() : new InstrumentedReadWriteLock(metrics);
+        }
+    }
+
+    public ReadWriteLock get(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16); // 扰动，避免低位相同的哈希落到同一段
+        return stripes[h & (stripes.length - 1)];
+    }
+}
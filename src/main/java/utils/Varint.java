@@ -2,6 +2,7 @@ package utils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 // Varint 算法
 
@@ -26,4 +27,46 @@ public class Varint {
         }
         return value | (b << i);
     }
+
+    // 将无符号变长整数直接写入字节数组的pos位置，返回写入后的下一个位置（调用方保证容量足够）
+    public static int writeUnsignedVarInt(int value, byte[] buf, int pos) {
+        while ((value & 0xFFFFFF80) != 0L) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) (value & 0x7F);
+        return pos;
+    }
+
+    // 从缓冲区base + offset[0]处读取，用于堆外数据；不改变缓冲区的position
+    public static int readUnsignedVarInt(ByteBuffer buf, int base, int[] offset) {
+        int value = 0;
+        int i = 0;
+        int b;
+        while (((b = buf.get(base + offset[0]++)) & 0x80) != 0) {
+            value |= (b & 0x7F) << i;
+            i += 7;
+        }
+        return value | (b << i);
+    }
+
+    // 写入缓冲区的绝对位置pos，返回写入后的下一个位置
+    public static int writeUnsignedVarInt(int value, ByteBuffer buf, int pos) {
+        while ((value & 0xFFFFFF80) != 0L) {
+            buf.put(pos++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put(pos++, (byte) (value & 0x7F));
+        return pos;
+    }
+
+    // 无符号变长整数编码后占用的字节数
+    public static int unsignedVarIntSize(int value) {
+        int size = 1;
+        while ((value & 0xFFFFFF80) != 0L) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
 }
@@ -0,0 +1,229 @@
+package workload;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+
+
+// 轨迹中的一条操作：offsetNanos为相对轨迹起点的发出时间，time为写入inode的创建/修改时间
+// 序列化为一行以制表符分隔的文本，参数中的反斜杠、制表符和换行转义为\\、\t、\n、\r，块ID以逗号分隔
+public class Operation {
+    public enum Type {
+        CREATE_FILE, CREATE_DIRECTORY, DELETE, UPDATE, SEARCH, SEARCH_RANGE;
+
+        public boolean isRead() {
+            return this == SEARCH || this == SEARCH_RANGE;
+        }
+    }
+
+    private final Type type;
+    private final long offsetNanos;
+    private final String[] args;
+
+    private Operation(Type type, long offsetNanos, String... args) {
+        this.type = type;
+        this.offsetNanos = offsetNanos;
+        this.args = args;
+    }
+
+    public static Operation createFile(long offsetNanos, String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, long time) {
+        return new Operation(Type.CREATE_FILE, offsetNanos, path, owner, String.valueOf(permission), fileName, fileExtension, String.valueOf(fileSize), joinBlocks(blocks), String.valueOf(time));
+    }
+
+    public static Operation createDirectory(long offsetNanos, String path, String owner, int permission, long time) {
+        return new Operation(Type.CREATE_DIRECTORY, offsetNanos, path, owner, String.valueOf(permission), String.valueOf(time));
+    }
+
+    public static Operation delete(long offsetNanos, String path) {
+        return new Operation(Type.DELETE, offsetNanos, path);
+    }
+
+    public static Operation update(long offsetNanos, String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, long time) {
+        return new Operation(Type.UPDATE, offsetNanos, path, newFileName, newFileExtension, String.valueOf(newFileSize), joinBlocks(newBlocks), String.valueOf(time));
+    }
+
+    public static Operation search(long offsetNanos, String metadata, String value) {
+        return new Operation(Type.SEARCH, offsetNanos, metadata, value);
+    }
+
+    public static Operation searchRange(long offsetNanos, String metadata, long minValue, long maxValue) {
+        return new Operation(Type.SEARCH_RANGE, offsetNanos, metadata, String.valueOf(minValue), String.valueOf(maxValue));
+    }
+
+    // 同一操作换一个发出时间，用于把生成的负载按到达过程排期
+    public Operation at(long newOffsetNanos) {
+        return new Operation(type, newOffsetNanos, args);
+    }
+
+    // 写操作写入inode的时间，读操作返回-1
+    public long getTime() {
+        switch (type) {
+            case CREATE_FILE:
+                return Long.parseLong(args[7]);
+            case CREATE_DIRECTORY:
+                return Long.parseLong(args[3]);
+            case UPDATE:
+                return Long.parseLong(args[5]);
+            default:
+                return -1;
+        }
+    }
+
+    // 在给定的目录树和索引上执行，返回是否成功（查询返回是否有结果）
+    public boolean apply(FSDirectory fsDirectory, InvertIndex invertedIndex) {
+        switch (type) {
+            case CREATE_FILE:
+                return fsDirectory.createFile(args[0], args[1], Integer.parseInt(args[2]), args[3], args[4], Long.parseLong(args[5]), getBlocks(), invertedIndex);
+            case CREATE_DIRECTORY:
+                return fsDirectory.createDirectory(args[0], args[1], Integer.parseInt(args[2]));
+            case DELETE:
+                return fsDirectory.deleteNode(args[0], invertedIndex);
+            case UPDATE:
+                return fsDirectory.updateFile(args[0], args[1], args[2], Long.parseLong(args[3]), getBlocks(), invertedIndex);
+            case SEARCH:
+                return !fsDirectory.search(args[0], args[1], invertedIndex).isEmpty();
+            case SEARCH_RANGE:
+                return !fsDirectory.searchRange(args[0], Long.parseLong(args[1]), Long.parseLong(args[2]), invertedIndex).isEmpty();
+            default:
+                throw new IllegalStateException("Unknown operation: " + type);
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public String getPath() {
+        return type.isRead() ? null : args[0];
+    }
+
+    // 按工厂方法的参数顺序取第i个参数的文本形式
+    public String getArgument(int i) {
+        return args[i];
+    }
+
+    // 创建和更新操作的块ID
+    public long[] getBlocks() {
+        switch (type) {
+            case CREATE_FILE:
+                return splitBlocks(args[6]);
+            case UPDATE:
+                return splitBlocks(args[4]);
+            default:
+                return new long[0];
+        }
+    }
+
+    public String toLine() {
+        StringBuilder line = new StringBuilder();
+        line.append(offsetNanos).append('\t').append(type.name());
+        for (String arg : args) {
+            line.append('\t');
+            escape(arg, line);
+        }
+        return line.toString();
+    }
+
+    public static Operation parse(String line) {
+        String[] parts = line.split("\t", -1);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Malformed trace line: " + line);
+        }
+        String[] args = new String[parts.length - 2];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = unescape(parts[i + 2]);
+        }
+        return new Operation(Type.valueOf(parts[1]), Long.parseLong(parts[0]), args);
+    }
+
+    // 转义后的参数不含制表符和换行，按制表符切分、按行读取都不会把一个参数拆开
+    private static void escape(String arg, StringBuilder line) {
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            switch (c) {
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder arg = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c != '\\') {
+                arg.append(c);
+                continue;
+            }
+            if (++i == field.length()) {
+                throw new IllegalArgumentException("Dangling escape in trace field: " + field);
+            }
+            switch (field.charAt(i)) {
+                case '\\':
+                    arg.append('\\');
+                    break;
+                case 't':
+                    arg.append('\t');
+                    break;
+                case 'n':
+                    arg.append('\n');
+                    break;
+                case 'r':
+                    arg.append('\r');
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown escape in trace field: " + field);
+            }
+        }
+        return arg.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toLine();
+    }
+
+    private static String joinBlocks(long[] blocks) {
+        if (blocks == null) {
+            return "";
+        }
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < blocks.length; i++) {
+            if (i > 0) {
+                joined.append(',');
+            }
+            joined.append(blocks[i]);
+        }
+        return joined.toString();
+    }
+
+    private static long[] splitBlocks(String blocks) {
+        if (blocks.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = blocks.split(",");
+        long[] ids = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ids[i] = Long.parseLong(parts[i]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,65 @@
+package workload;
+
+import utils.LatencyHistogram;
+
+import java.util.Map;
+
+// 一次重放的结果：总吞吐量、相对计划的最大滞后、按操作类型的延迟与服务时间分布
+public class ReplayReport {
+    private final long operations;
+    private final long failures; // 执行失败的写操作，如创建已存在的路径
+    private final long elapsedNanos;
+    private final long maxLagNanos;
+    private final Map<Operation.Type, LatencyHistogram> latencies;
+    private final Map<Operation.Type, LatencyHistogram> serviceTimes;
+
+    ReplayReport(long operations, long failures, long elapsedNanos, long maxLagNanos, Map<Operation.Type, LatencyHistogram> latencies, Map<Operation.Type, LatencyHistogram> serviceTimes) {
+        this.operations = operations;
+        this.failures = failures;
+        this.elapsedNanos = elapsedNanos;
+        this.maxLagNanos = maxLagNanos;
+        this.latencies = latencies;
+        this.serviceTimes = serviceTimes;
+    }
+
+    public double getThroughput() {
+        return operations * 1e9 / Math.max(1, elapsedNanos);
+    }
+
+    public LatencyHistogram getLatency(Operation.Type type) {
+        return latencies.get(type);
+    }
+
+    public LatencyHistogram getServiceTime(Operation.Type type) {
+        return serviceTimes.get(type);
+    }
+
+    public long getOperations() {
+        return operations;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    public void print() {
+        System.out.println("Replayed " + operations + " operations in " + elapsedNanos / 1000000.0 + " ms, throughput: " + (long) getThroughput() + " ops/s, failures: " + failures
+                + ", max lag: " + maxLagNanos / 1000000.0 + " ms");
+        for (Map.Entry<Operation.Type, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram latency = entry.getValue();
+            LatencyHistogram service = serviceTimes.get(entry.getKey());
+            if (latency.getCount() > 0) {
+                System.out.println("  " + entry.getKey() + ": count=" + latency.getCount() + ", latency p50=" + latency.getPercentile(0.5) / 1000.0 + " us, p99=" + latency.getPercentile(0.99) / 1000.0
+                        + " us, max=" + latency.getMax() / 1000.0 + " us, service p50=" + service.getPercentile(0.5) / 1000.0 + " us, p99=" + service.getPercentile(0.99) / 1000.0 + " us");
+            }
+        }
+    }
+}
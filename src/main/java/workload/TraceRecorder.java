@@ -0,0 +1,76 @@
+package workload;
+
+import FS.NamespaceListener;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+// 录制FSDirectory上的操作轨迹：注册为监听器后每个操作完成时写一行，时间偏移为完成时刻相对第一个操作
+// 多线程调用时按完成顺序串行写入
+public class TraceRecorder implements NamespaceListener, Closeable {
+    private final BufferedWriter writer;
+    private long startNanos = -1;
+    private long recorded;
+
+    public TraceRecorder(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+    }
+
+    @Override
+    public void onCreateFile(String path, String owner, int permission, String fileName, String fileExtension, long fileSize, long[] blocks, long time) {
+        write(Operation.createFile(offset(), path, owner, permission, fileName, fileExtension, fileSize, blocks, time));
+    }
+
+    @Override
+    public void onCreateDirectory(String path, String owner, int permission, long time) {
+        write(Operation.createDirectory(offset(), path, owner, permission, time));
+    }
+
+    @Override
+    public void onDelete(String path) {
+        write(Operation.delete(offset(), path));
+    }
+
+    @Override
+    public void onUpdate(String path, String newFileName, String newFileExtension, long newFileSize, long[] newBlocks, long time) {
+        write(Operation.update(offset(), path, newFileName, newFileExtension, newFileSize, newBlocks, time));
+    }
+
+    @Override
+    public void onSearch(String metadata, String value) {
+        write(Operation.search(offset(), metadata, value));
+    }
+
+    @Override
+    public void onSearchRange(String metadata, long minValue, long maxValue) {
+        write(Operation.searchRange(offset(), metadata, minValue, maxValue));
+    }
+
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private synchronized long offset() {
+        long now = System.nanoTime();
+        if (startNanos < 0) {
+            startNanos = now;
+        }
+        return now - startNanos;
+    }
+
+    private synchronized void write(Operation operation) {
+        try {
+            writer.write(operation.toLine());
+            writer.newLine();
+            recorded++;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package workload;
+
+import FS.FSDirectory;
+import index.InvertIndex;
+import utils.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// 在给定的目录树和索引上重放轨迹：speed为加速倍数（1为原速），<=0表示不等待、尽快执行
+// 按计划时间开环发出，延迟从计划发出时间算起，执行落后于计划时排队时间计入延迟，避免协调遗漏；
+// 同时单独记录执行本身的服务时间。重放期间目录树的时钟取每条操作记录的inode时间
+public class TraceReplayer {
+    private final FSDirectory fsDirectory;
+    private final InvertIndex invertedIndex;
+    private volatile long operationTime; // 当前操作记录的inode时间
+
+    public TraceReplayer(FSDirectory fsDirectory, InvertIndex invertedIndex) {
+        this.fsDirectory = fsDirectory;
+        this.invertedIndex = invertedIndex;
+    }
+
+    public static List<Operation> read(Path path) throws IOException {
+        List<Operation> operations = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    operations.add(Operation.parse(line));
+                }
+            }
+        }
+        return operations;
+    }
+
+    public static void write(List<Operation> operations, Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Operation operation : operations) {
+                writer.write(operation.toLine());
+                writer.newLine();
+            }
+        }
+    }
+
+    public ReplayReport replay(List<Operation> operations, double speed) {
+        Map<Operation.Type, LatencyHistogram> latencies = new EnumMap<>(Operation.Type.class);
+        Map<Operation.Type, LatencyHistogram> serviceTimes = new EnumMap<>(Operation.Type.class);
+        for (Operation.Type type : Operation.Type.values()) {
+            latencies.put(type, new LatencyHistogram());
+            serviceTimes.put(type, new LatencyHistogram());
+        }
+        long failures = 0;
+        long maxLag = 0;
+        fsDirectory.setClock(() -> operationTime);
+        long start = System.nanoTime();
+        try {
+            for (Operation operation : operations) {
+                long scheduled = speed > 0 ? start + (long) (operation.getOffsetNanos() / speed) : System.nanoTime();
+                long now = System.nanoTime();
+                while (now < scheduled) {
+                    LockSupport.parkNanos(scheduled - now);
+                    now = System.nanoTime();
+                }
+                maxLag = Math.max(maxLag, now - scheduled);
+                long time = operation.getTime();
+                operationTime = time >= 0 ? time : System.currentTimeMillis();
+                if (!operation.apply(fsDirectory, invertedIndex) && !operation.getType().isRead()) {
+                    failures++;
+                }
+                long end = System.nanoTime();
+                latencies.get(operation.getType()).record(end - scheduled);
+                serviceTimes.get(operation.getType()).record(end - now);
+            }
+        } finally {
+            fsDirectory.setClock(null);
+        }
+        return new ReplayReport(operations.size(), failures, System.nanoTime() - start, maxLag, latencies, serviceTimes);
+    }
+}
@@ -0,0 +1,284 @@
+package workload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// 可配置的负载生成器，生成的是操作序列而不直接修改目录树，因此既可以直接执行也可以保存为轨迹
+// 命名空间：目录深度近似泊松分布，父目录按优先连接选择（子目录越多越容易再被选中），扇出呈长尾；
+// 文件按Zipf分布落入目录；属主、扩展名服从Zipf分布，大小服从对数正态分布；
+// 创建时间为突发的到达过程：空闲期间隔较长，突发期内大量文件在毫秒级间隔内连续创建
+// 混合负载：按readRatio在查询与写操作间选择，查询取值与数据同分布，热门值被查得更多，更新偏向最近创建的文件
+public class WorkloadGenerator {
+    private static final String[] DEFAULT_EXTENSIONS = {"jpg", "txt", "log", "pdf", "png", "doc", "csv", "java", "gz", "mp4", "json", "xml", "html", "zip", "py", "mp3"};
+    private static final long BLOCK_SIZE = 4L * 1024 * 1024; // 每块4MB，块数随文件大小增长
+    private static final int MAX_BLOCKS = 64;
+    private static final int RECENT_FILES = 1024; // 更新时按Zipf偏向最近创建的文件
+
+    private final Random random;
+    private int ownerCount = 50;
+    private double ownerSkew = 1.1;
+    private String[] extensions = DEFAULT_EXTENSIONS;
+    private double extensionSkew = 1.0;
+    private double sizeMedian = 16 * 1024;
+    private double sizeSigma = 2.0;
+    private double directoryRatio = 0.1; // 目录数与文件数之比
+    private double meanDepth = 4;
+    private int maxDepth = 10;
+    private double directorySkew = 1.0; // 文件落入目录的Zipf指数
+    private double burstProbability = 0.05; // 每个空闲间隔之后进入突发的概率
+    private int meanBurstSize = 200;
+    private double burstGapMillis = 20;
+    private double idleGapMillis = 60 * 1000;
+    private double readRatio = 0.8;
+    private double[] writeMix = {0.5, 0.3, 0.15, 0.05}; // 创建文件、更新、删除、创建目录
+    private double[] readMix = {0.35, 0.35, 0.2, 0.1}; // ext、owner、size范围、最近修改
+
+    private ZipfSampler owners;
+    private ZipfSampler extensionSampler;
+    private ZipfSampler directorySampler;
+    private final ZipfSampler recentSampler;
+    private int[] directoryOrder; // Zipf名次到目录的映射，打乱后热门目录不集中在树的某一层
+    private final List<List<String>> attach; // 每层目录的优先连接表：每个目录出现(1 + 子目录数)次
+    private final List<String> directories;
+    private final List<String> files; // 模型中当前存在的文件路径
+    private int nextDirectoryId;
+    private int nextFileId;
+    private long nextBlockId = 1L << 30; // 块ID全局递增，不与其他文件重复
+    private long time; // 虚拟时钟（毫秒）
+    private int burstRemaining;
+    private long offsetNanos; // 生成操作的发出时间
+
+    public WorkloadGenerator(long seed) {
+        this.random = new Random(seed);
+        this.recentSampler = new ZipfSampler(RECENT_FILES, 1.0);
+        this.attach = new ArrayList<>();
+        this.directories = new ArrayList<>();
+        this.files = new ArrayList<>();
+        this.time = System.currentTimeMillis() - 30 * 24 * 3600 * 1000L;
+        attach.add(new ArrayList<>(Arrays.asList("/")));
+    }
+
+    public WorkloadGenerator owners(int count, double skew) {
+        this.ownerCount = count;
+        this.ownerSkew = skew;
+        return this;
+    }
+
+    public WorkloadGenerator extensions(String[] extensions, double skew) {
+        this.extensions = extensions;
+        this.extensionSkew = skew;
+        return this;
+    }
+
+    public WorkloadGenerator sizes(double median, double sigma) {
+        this.sizeMedian = median;
+        this.sizeSigma = sigma;
+        return this;
+    }
+
+    public WorkloadGenerator tree(double directoryRatio, double meanDepth, int maxDepth, double directorySkew) {
+        this.directoryRatio = directoryRatio;
+        this.meanDepth = meanDepth;
+        this.maxDepth = maxDepth;
+        this.directorySkew = directorySkew;
+        return this;
+    }
+
+    public WorkloadGenerator bursts(double probability, int meanSize, double burstGapMillis, double idleGapMillis) {
+        this.burstProbability = probability;
+        this.meanBurstSize = meanSize;
+        this.burstGapMillis = burstGapMillis;
+        this.idleGapMillis = idleGapMillis;
+        return this;
+    }
+
+    // writeMix：创建文件、更新、删除、创建目录的权重；readMix：ext、owner、size范围、最近修改的权重
+    public WorkloadGenerator mix(double readRatio, double[] writeMix, double[] readMix) {
+        this.readRatio = readRatio;
+        this.writeMix = writeMix.clone();
+        this.readMix = readMix.clone();
+        return this;
+    }
+
+    // 初始命名空间：先建目录再建文件，发出时间均为0
+    public List<Operation> populate(int numFiles) {
+        owners = new ZipfSampler(ownerCount, ownerSkew);
+        extensionSampler = new ZipfSampler(extensions.length, extensionSkew);
+        int numDirectories = Math.max(1, (int) (numFiles * directoryRatio));
+        List<Operation> operations = new ArrayList<>(numDirectories + numFiles);
+        for (int i = 0; i < numDirectories; i++) {
+            operations.add(nextDirectory(0));
+        }
+        directorySampler = new ZipfSampler(directories.size(), directorySkew);
+        directoryOrder = new int[directories.size()];
+        for (int i = 0; i < directoryOrder.length; i++) {
+            int j = random.nextInt(i + 1);
+            directoryOrder[i] = directoryOrder[j];
+            directoryOrder[j] = i;
+        }
+        for (int i = 0; i < numFiles; i++) {
+            operations.add(nextFile(0));
+        }
+        return operations;
+    }
+
+    // 在populate之后生成numOps个混合操作，到达间隔服从指数分布，平均速率为opsPerSecond
+    public List<Operation> generate(int numOps, double opsPerSecond) {
+        if (owners == null) {
+            throw new IllegalStateException("populate must be called first");
+        }
+        List<Operation> operations = new ArrayList<>(numOps);
+        for (int i = 0; i < numOps; i++) {
+            offsetNanos += (long) (exponential(1e9 / opsPerSecond));
+            operations.add(nextOperation(offsetNanos));
+        }
+        return operations;
+    }
+
+    private Operation nextOperation(long offset) {
+        if (random.nextDouble() < readRatio || files.isEmpty()) {
+            switch (choose(readMix)) {
+                case 0:
+                    return Operation.search(offset, "ext", extensions[extensionSampler.sample(random)]);
+                case 1:
+                    return Operation.search(offset, "owner", owner());
+                case 2:
+                    long min = fileSize();
+                    return Operation.searchRange(offset, "size", min, min + (long) (min * 4 * random.nextDouble()));
+                default:
+                    long window = (long) exponential(3600 * 1000.0);
+                    return Operation.searchRange(offset, "mod", time - window, time);
+            }
+        }
+        switch (choose(writeMix)) {
+            case 0:
+                return nextFile(offset);
+            case 1:
+                String path = files.get(Math.max(0, files.size() - 1 - recentSampler.sample(random)));
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                String fileName = name.substring(0, name.indexOf('.'));
+                long size = fileSize();
+                return Operation.update(offset, path, fileName, name.substring(name.indexOf('.') + 1), size, blocks(size), advanceTime());
+            case 2:
+                int index = random.nextInt(files.size());
+                String deleted = files.get(index);
+                files.set(index, files.get(files.size() - 1)); // 交换删除
+                files.remove(files.size() - 1);
+                return Operation.delete(offset, deleted);
+            default:
+                return nextDirectory(offset);
+        }
+    }
+
+    private Operation nextDirectory(long offset) {
+        int depth = Math.min(maxDepth, 1 + poisson(meanDepth - 1));
+        while (attach.size() < depth) { // 上一层还没有目录时挂到已有的最深一层
+            depth--;
+        }
+        List<String> parents = attach.get(depth - 1);
+        String parent = parents.get(random.nextInt(parents.size()));
+        parents.add(parent);
+        String path = child(parent, "d" + nextDirectoryId++);
+        if (attach.size() == depth) {
+            attach.add(new ArrayList<>());
+        }
+        attach.get(depth).add(path);
+        directories.add(path);
+        return Operation.createDirectory(offset, path, owner(), 755, advanceTime());
+    }
+
+    private Operation nextFile(long offset) {
+        String directory;
+        int rank = directorySampler.sample(random);
+        if (rank < directoryOrder.length && random.nextDouble() < 0.9) {
+            directory = directories.get(directoryOrder[rank]);
+        } else {
+            directory = directories.get(random.nextInt(directories.size())); // 之后新建的目录也会有文件
+        }
+        String fileName = "f" + nextFileId++;
+        String extension = extensions[extensionSampler.sample(random)];
+        String path = child(directory, fileName + "." + extension);
+        files.add(path);
+        long size = fileSize();
+        double p = random.nextDouble();
+        int permission = p < 0.85 ? 644 : p < 0.95 ? 600 : 755;
+        return Operation.createFile(offset, path, owner(), permission, fileName, extension, size, blocks(size), advanceTime());
+    }
+
+    // 虚拟时钟前进一个到达间隔：突发期内毫秒级，空闲期按idleGapMillis
+    private long advanceTime() {
+        double gap;
+        if (burstRemaining > 0) {
+            burstRemaining--;
+            gap = exponential(burstGapMillis);
+        } else {
+            if (random.nextDouble() < burstProbability) {
+                burstRemaining = (int) exponential(meanBurstSize);
+            }
+            gap = exponential(idleGapMillis);
+        }
+        time += (long) gap;
+        return time;
+    }
+
+    private String owner() {
+        return "user" + owners.sample(random);
+    }
+
+    private long fileSize() {
+        return Math.max(0, (long) Math.exp(Math.log(sizeMedian) + sizeSigma * random.nextGaussian()));
+    }
+
+    private long[] blocks(long size) {
+        int count = (int) Math.min(MAX_BLOCKS, Math.max(1, (size + BLOCK_SIZE - 1) / BLOCK_SIZE));
+        long[] blocks = new long[count];
+        for (int k = 0; k < count; k++) {
+            blocks[k] = nextBlockId++;
+        }
+        return blocks;
+    }
+
+    private static String child(String parent, String name) {
+        return parent.equals("/") ? "/" + name : parent + "/" + name;
+    }
+
+    private int choose(double[] weights) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < weights.length - 1; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private double exponential(double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    private int poisson(double mean) {
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int k = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public int getDirectoryCount() {
+        return directories.size();
+    }
+}
@@ -0,0 +1,33 @@
+package workload;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Zipf分布采样：第k名（从0开始）的概率正比于1/(k+1)^exponent，预先计算累积分布，采样为一次二分查找
+public class ZipfSampler {
+    private final double[] cdf;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    public int sample(Random random) {
+        int pos = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(pos >= 0 ? pos : -pos - 1, cdf.length - 1);
+    }
+
+    public int size() {
+        return cdf.length;
+    }
+}